@@ -0,0 +1,105 @@
+package frc.robot.subsystems;
+
+import frc.robot.inter.ReplayLoggerDevice;
+import frc.robot.util.replay.BackpressurePolicy;
+import frc.robot.util.replay.ByteCounter;
+import frc.robot.util.replay.DiscardChannel;
+import frc.robot.util.replay.ReplayCodec;
+import frc.robot.util.replay.ReplayLogRate;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ * @purpose what {@link ReplayLoggerSubsystem#log(boolean)} costs the scheduler thread for one lidar.
+ * The log goes nowhere so this is sampling, encoding and framing (plus the ring handoff when async),
+ * {@link frc.robot.util.replay.ReplayWriterBenchmark} has the disk side
+ * @apiNote one op is one tick with one record, so the "Time" benchmark is ns per record and the bytes
+ * counter of the "Bandwidth" one is MB/s of log written
+ */
+@State(Scope.Thread)
+public class ReplayLoggerBenchmark {
+
+  static final int kScansPerSet = 64;
+
+  @Param({ "RAW", "FLOAT32", "DELTA_VARINT_MM" })
+  public ReplayCodec codec;
+
+  @Param({ "90", "360", "1440" })
+  public int scanSize;
+
+  // "SYNC" writes on the calling thread, anything else is the BackpressurePolicy of the async writer
+  @Param({ "SYNC", "DROP_OLDEST" })
+  public String writer;
+
+  double[][] scans;
+  int next;
+  ReplayLoggerSubsystem logger;
+
+  @Setup
+  public void setup() {
+    scans = TestUtils.generateFakeScans(kScansPerSet, scanSize);
+
+    ReplayLoggerDevice lidar = new ReplayLoggerDevice() {
+      @Override
+      public double[] getData() {
+        next = (next + 1) % kScansPerSet;
+        return scans[next];
+      }
+
+      @Override
+      public String getName() {
+        return "lidar";
+      }
+
+      @Override
+      public ReplayCodec getCodec() {
+        return codec;
+      }
+
+      @Override
+      public ReplayLogRate getLogRate() {
+        return ReplayLogRate.everyTick();
+      }
+    };
+
+    logger =
+      new ReplayLoggerSubsystem(
+        new ReplayLoggerDevice[] { lidar },
+        "bench",
+        1,
+        writer.equals("SYNC") ? null : BackpressurePolicy.valueOf(writer),
+        new DiscardChannel()
+      );
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    logger.close();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public void logTime() {
+    logger.log(true);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void logBandwidth(ByteCounter counter) {
+    logger.log(true);
+    counter.bytes += logger.frameBuffer.limit();
+  }
+}
@@ -0,0 +1,71 @@
+package frc.robot.util.lidar;
+
+import frc.robot.extern_libs.lidar.LidarScan;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ * @purpose the cost of matching one scan against the Crescendo walls. One op is one scan, it has to stay well
+ * under the A1's ~100ms period (and {@link frc.robot.Constants.MatchingConstants#kMatchBudgetNanos}) on the roboRIO
+ * @apiNote the scans are taken from spots all over the field with 1cm of noise, and the guess is off by
+ * offsetMeters and a few degrees like odometry drift would be
+ */
+@State(Scope.Thread)
+public class ScanMatcherBenchmark {
+
+  static final int kScansPerSet = 16;
+
+  @Param({ "360", "720", "1440" })
+  public int scanSize;
+
+  @Param({ "0.05", "0.25" })
+  public double offsetMeters;
+
+  ScanMatcher matcher;
+  LidarScan[] scans;
+  int next;
+
+  @Setup
+  public void setup() {
+    FieldWallModel walls = FieldWallModel.crescendo();
+    matcher = new ScanMatcher(walls);
+    scans = new LidarScan[kScansPerSet];
+    for (int i = 0; i < kScansPerSet; i++) {
+      double x = 1 + TestUtils.randomInstance.nextDouble() * 14.5;
+      double y = 1 + TestUtils.randomInstance.nextDouble() * 6.2;
+      double heading = TestUtils.randomInstance.nextDouble() * 2 * Math.PI;
+      scans[i] =
+        TestUtils.generateWallScan(walls, scanSize, x, y, heading, 0.01);
+      scans[i].setPose(
+          x + offsetMeters,
+          y - offsetMeters,
+          heading + offsetMeters / 5
+        );
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public double matchTime() {
+    next = (next + 1) % kScansPerSet;
+    matcher.match(scans[next]);
+    return matcher.getX();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public FieldWallModel buildWallModel() {
+    return FieldWallModel.crescendo();
+  }
+}
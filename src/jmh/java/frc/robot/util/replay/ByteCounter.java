@@ -0,0 +1,24 @@
+package frc.robot.util.replay;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * @author godbrigero
+ * @purpose counts the bytes a throughput benchmark moved. JMH reports it next to the ops as a rate,
+ * so with an output unit of microseconds "bytes" reads directly as MB/s
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ByteCounter {
+
+  public long bytes;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    bytes = 0;
+  }
+}
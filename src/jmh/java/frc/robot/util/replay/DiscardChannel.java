@@ -0,0 +1,30 @@
+package frc.robot.util.replay;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * @author godbrigero
+ * @purpose a channel that throws everything away, for measuring the cost of building records without the disk
+ */
+public class DiscardChannel implements WritableByteChannel {
+
+  boolean open = true;
+
+  @Override
+  public int write(ByteBuffer src) {
+    int length = src.remaining();
+    src.position(src.limit());
+    return length;
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() {
+    open = false;
+  }
+}
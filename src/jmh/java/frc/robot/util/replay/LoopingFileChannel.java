@@ -0,0 +1,44 @@
+package frc.robot.util.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * @author godbrigero
+ * @purpose a real file for the benchmarks to write to that goes back to the start once it hits a size,
+ * so a long run measures the disk without filling it
+ */
+public class LoopingFileChannel implements WritableByteChannel {
+
+  final FileChannel channel;
+  final long maxBytes;
+
+  public LoopingFileChannel(File file, long maxBytes) throws IOException {
+    this.channel = new RandomAccessFile(file, "rw").getChannel();
+    this.channel.truncate(0);
+    this.maxBytes = maxBytes;
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    if (channel.position() + src.remaining() > maxBytes) {
+      channel.position(0);
+    }
+
+    return channel.write(src);
+  }
+
+  @Override
+  public boolean isOpen() {
+    return channel.isOpen();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
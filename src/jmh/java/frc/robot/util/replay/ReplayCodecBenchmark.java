@@ -0,0 +1,99 @@
+package frc.robot.util.replay;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ * @purpose the cost of every {@link ReplayCodec} on its own. One op is one scan, the "Time" benchmarks
+ * give ns per record and the "Bandwidth" ones MB/s of raw doubles (the bytes counter)
+ */
+@State(Scope.Thread)
+public class ReplayCodecBenchmark {
+
+  static final int kScansPerSet = 64;
+
+  @Param({ "RAW", "FLOAT32", "DELTA_VARINT_MM" })
+  public ReplayCodec codec;
+
+  @Param({ "90", "360", "1440" })
+  public int scanSize;
+
+  SampleBuffer[] scans;
+  ByteBuffer[] encoded;
+  ByteBuffer out;
+  SampleBuffer decoded = new SampleBuffer();
+  int next;
+
+  @Setup
+  public void setup() {
+    double[][] fakeScans = TestUtils.generateFakeScans(kScansPerSet, scanSize);
+    scans = new SampleBuffer[kScansPerSet];
+    encoded = new ByteBuffer[kScansPerSet];
+    for (int i = 0; i < kScansPerSet; i++) {
+      scans[i] = new SampleBuffer();
+      scans[i].set(fakeScans[i]);
+
+      encoded[i] = ByteBuffer.allocate(codec.maxEncodedBytes(scanSize));
+      codec.encode(scans[i], encoded[i]);
+      encoded[i].flip();
+    }
+
+    out = ByteBuffer.allocate(codec.maxEncodedBytes(scanSize));
+    decoded.ensureCapacity(scanSize);
+  }
+
+  int nextScan() {
+    next = (next + 1) % kScansPerSet;
+    return next;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public int encodeTime() {
+    out.clear();
+    codec.encode(scans[nextScan()], out);
+    return out.position();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int encodeBandwidth(ByteCounter counter) {
+    out.clear();
+    codec.encode(scans[nextScan()], out);
+    counter.bytes += scanSize * Double.BYTES;
+    return out.position();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public SampleBuffer decodeTime() {
+    ByteBuffer in = encoded[nextScan()];
+    in.rewind();
+    codec.decode(in, scanSize, decoded);
+    return decoded;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public SampleBuffer decodeBandwidth(ByteCounter counter) {
+    ByteBuffer in = encoded[nextScan()];
+    in.rewind();
+    codec.decode(in, scanSize, decoded);
+    counter.bytes += scanSize * Double.BYTES;
+    return decoded;
+  }
+}
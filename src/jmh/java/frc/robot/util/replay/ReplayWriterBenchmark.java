@@ -0,0 +1,135 @@
+package frc.robot.util.replay;
+
+import frc.robot.Constants.ReplayLoggerConstants;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ * @purpose the cost of getting one finished block (one tick with one scan) to disk with each kind of writer.
+ * For the async ones this is only the cost the scheduler thread sees, the handoff into the ring
+ */
+@State(Scope.Thread)
+public class ReplayWriterBenchmark {
+
+  static final long kMaxFileBytes = 64L * 1024 * 1024;
+
+  @Param({ "file", "segments", "asyncFile", "asyncSegments" })
+  public String writer;
+
+  @Param({ "90", "360", "1440" })
+  public int scanSize;
+
+  File directory;
+  WritableByteChannel channel;
+  AsyncReplayWriter asyncWriter;
+  ByteBuffer frame;
+
+  @Setup
+  public void setup() throws IOException {
+    ReplayLogHeader header = new ReplayLogHeader(
+      new String[] { "lidar" },
+      new byte[] { ReplayLogFormat.kTypeDoubleArray },
+      new ReplayCodec[] { ReplayCodec.RAW }
+    );
+
+    SampleBuffer scan = new SampleBuffer();
+    scan.set(TestUtils.getLidarScanFake(scanSize));
+    frame = ByteBuffer.allocate(
+      ReplayLogFormat.kBlockHeaderBytes +
+      ReplayLogFormat.maxRecordSize(scan, ReplayCodec.RAW)
+    );
+    int blockStart = ReplayLogFormat.beginBlock(frame);
+    ReplayLogFormat.putRecord(frame, 0, 0, scan, ReplayCodec.RAW);
+    ReplayLogFormat.finishBlock(frame, blockStart, new CRC32C());
+    frame.flip();
+
+    directory = new File("build/jmh-logs");
+    directory.mkdirs();
+    if (writer.equals("file") || writer.equals("asyncFile")) {
+      channel = new LoopingFileChannel(
+        new File(directory, "bench.rlog"),
+        kMaxFileBytes
+      );
+    } else {
+      channel = new SegmentedLogStorage(
+        directory,
+        "bench",
+        ReplayLoggerConstants.kSegmentBytes,
+        kMaxFileBytes,
+        header
+      );
+    }
+
+    if (writer.startsWith("async")) {
+      asyncWriter = new AsyncReplayWriter(
+        channel,
+        ReplayLoggerConstants.kRingCapacity,
+        ReplayLoggerConstants.kInitialFrameBytes,
+        ReplayLoggerConstants.kWriterBlockBytes,
+        ReplayLoggerConstants.kWriterFlushIntervalMs,
+        ReplayLoggerConstants.kSyncIntervalMs,
+        BackpressurePolicy.BLOCK
+      );
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (asyncWriter != null) {
+      asyncWriter.close();
+    } else {
+      channel.close();
+    }
+
+    for (File segment : SegmentedLogStorage.listSegments(directory, "bench")) {
+      segment.delete();
+    }
+
+    new File(directory, "bench.rlog").delete();
+  }
+
+  int write() throws IOException {
+    frame.rewind();
+    int length = frame.remaining();
+    if (asyncWriter != null) {
+      asyncWriter.offer(frame);
+    } else {
+      while (frame.hasRemaining()) {
+        channel.write(frame);
+      }
+    }
+
+    return length;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public int writeTime() throws IOException {
+    return write();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int writeBandwidth(ByteCounter counter) throws IOException {
+    int length = write();
+    counter.bytes += length;
+    return length;
+  }
+}
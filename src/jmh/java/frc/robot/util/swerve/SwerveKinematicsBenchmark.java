@@ -0,0 +1,203 @@
+package frc.robot.util.swerve;
+
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import frc.robot.Constants.SwerveConstants;
+import frc.robot.util.MathFunc;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ * @purpose what turning one stick input into four module speeds and angles costs, {@link SwerveKinematics}
+ * against the math SwerveSubsystem.drive used to do inline and against WPILib's {@link SwerveDriveKinematics}
+ * @apiNote one op is one drive call's worth: kinematics, desaturating and flipping the modules that are closer
+ * the other way round. Run with the gc profiler (the default here) to see what each allocates per call
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SwerveKinematicsBenchmark {
+
+  static final int kInputs = 1024;
+
+  double[] xs = new double[kInputs];
+  double[] ys = new double[kInputs];
+  double[] rs = new double[kInputs];
+  // where the turn encoders are, in turns
+  double[] encoders = new double[4];
+  int next;
+
+  SwerveKinematics kinematics;
+  SwerveDriveKinematics wpilibKinematics;
+  Rotation2d[] wpilibEncoders = new Rotation2d[4];
+
+  @Setup
+  public void setup() {
+    for (int i = 0; i < kInputs; i++) {
+      xs[i] = TestUtils.randomInstance.nextDouble() * 2 - 1;
+      ys[i] = TestUtils.randomInstance.nextDouble() * 2 - 1;
+      rs[i] = TestUtils.randomInstance.nextDouble() * 2 - 1;
+    }
+
+    for (int i = 0; i < 4; i++) {
+      encoders[i] = TestUtils.randomInstance.nextDouble() - 0.5;
+      wpilibEncoders[i] = new Rotation2d(encoders[i] * 2 * Math.PI);
+    }
+
+    kinematics = SwerveKinematics.fromConstants();
+    double l = SwerveConstants.kDriveBaseLength / 2;
+    double w = SwerveConstants.kDriveBaseWidth / 2;
+    wpilibKinematics =
+      new SwerveDriveKinematics(
+        new Translation2d(l, w),
+        new Translation2d(l, -w),
+        new Translation2d(-l, w),
+        new Translation2d(-l, -w)
+      );
+  }
+
+  @Benchmark
+  public double swerveKinematics() {
+    next = (next + 1) % kInputs;
+    kinematics.calculate(xs[next], ys[next], rs[next], 1.0);
+
+    double sum = 0;
+    for (int i = 0; i < 4; i++) {
+      double speed = kinematics.getSpeed(i);
+      double angle = kinematics.getAngle(i);
+      double difference = Math.abs(angle - encoders[i]);
+      if (difference >= 0.25 && difference <= 0.75) {
+        speed = -speed;
+        angle = MathFunc.putWithinHalfToHalf(angle + 0.5);
+      }
+
+      sum += speed + angle;
+    }
+
+    return sum;
+  }
+
+  /**
+   * @apiNote with the second order correction and the steering rates, what drive does with kDiscretize on
+   */
+  @Benchmark
+  public double swerveKinematicsDiscretized() {
+    next = (next + 1) % kInputs;
+    kinematics.calculate(
+      xs[next],
+      ys[next],
+      rs[next],
+      1.0,
+      SwerveConstants.kMaxSpeedMetersPerSecond,
+      SwerveConstants.kLoopPeriodSeconds
+    );
+
+    double sum = 0;
+    for (int i = 0; i < 4; i++) {
+      sum +=
+        kinematics.getSpeed(i) +
+        kinematics.getAngle(i) +
+        kinematics.getAngleVelocity(i);
+    }
+
+    return sum;
+  }
+
+  @Benchmark
+  public double inlineDriveMath() {
+    next = (next + 1) % kInputs;
+    double x = xs[next];
+    double y = ys[next];
+    double r = rs[next];
+
+    final double L = SwerveConstants.kDriveBaseLength / 2;
+    final double W = SwerveConstants.kDriveBaseWidth / 2;
+    final double R = Math.sqrt((L * L) + (W * W));
+
+    double a = x - r * (L / R);
+    double b = x + r * (L / R);
+    double c = y - r * (W / R);
+    double d = y + r * (W / R);
+
+    double frontLeftSpeed = Math.sqrt((b * b) + (d * d));
+    double frontRightSpeed = Math.sqrt((b * b) + (c * c));
+    double rearLeftSpeed = Math.sqrt((a * a) + (d * d));
+    double rearRightSpeed = Math.sqrt((a * a) + (c * c));
+
+    double denominator = MathFunc.max(
+      Math.abs(frontLeftSpeed),
+      Math.abs(frontRightSpeed),
+      Math.abs(rearLeftSpeed),
+      Math.abs(rearRightSpeed),
+      1.0
+    );
+
+    double[] speeds = {
+      frontLeftSpeed / denominator,
+      frontRightSpeed / denominator,
+      rearLeftSpeed / denominator,
+      rearRightSpeed / denominator,
+    };
+    double[] angles = {
+      Math.atan2(b, d) / Math.PI / 2,
+      Math.atan2(b, c) / Math.PI / 2,
+      Math.atan2(a, d) / Math.PI / 2,
+      Math.atan2(a, c) / Math.PI / 2,
+    };
+
+    double sum = 0;
+    for (int i = 0; i < 4; i++) {
+      double[] optimized = optimize(speeds[i], angles[i], encoders[i]);
+      sum += optimized[0] + optimized[1];
+    }
+
+    return sum;
+  }
+
+  /**
+   * @apiNote SwerveModule.optimize as it was, a new array every call
+   */
+  static double[] optimize(double speed, double angle, double encoderAngle) {
+    encoderAngle = MathFunc.putWithinHalfToHalf(encoderAngle);
+    if (
+      Math.abs(angle - encoderAngle) < 0.25 ||
+      Math.abs(angle - encoderAngle) > 0.75
+    ) {
+      return new double[] { speed, angle };
+    }
+
+    return new double[] { -speed, MathFunc.putWithinHalfToHalf(angle + 0.5) };
+  }
+
+  @Benchmark
+  public double wpilibKinematics() {
+    next = (next + 1) % kInputs;
+    // WPILib is x forward, y left and counter clockwise
+    SwerveModuleState[] states = wpilibKinematics.toSwerveModuleStates(
+      new ChassisSpeeds(ys[next], -xs[next], -rs[next])
+    );
+    SwerveDriveKinematics.desaturateWheelSpeeds(states, 1.0);
+
+    double sum = 0;
+    for (int i = 0; i < 4; i++) {
+      SwerveModuleState state = SwerveModuleState.optimize(
+        states[i],
+        wpilibEncoders[i]
+      );
+      sum += state.speedMetersPerSecond + state.angle.getRadians();
+    }
+
+    return sum;
+  }
+}
@@ -34,6 +34,8 @@ public final class Constants {
 
     public static final boolean kSwerveEnabled = true;
     public static final boolean kArmEnabled = true;
+    public static final boolean kLocalizationEnabled = true;
+    public static final boolean kLidarEnabled = true;
   }
 
   public static class ArmConstants {
@@ -153,6 +155,14 @@ public final class Constants {
 
     public static final boolean kFieldRelative = true;
     public static final boolean kOptimizeAngles = true;
+    //integrates the motion over the loop so turning while driving does not drift the robot off its line
+    public static final boolean kDiscretize = true;
+    public static final double kLoopPeriodSeconds = 0.02;
+    //setpoint generator, see frc.robot.util.swerve.SwerveSetpointGenerator. TEMP WE NEED TO MEASURE THESE
+    public static final double kMaxAccelerationMetersPerSecondSquared = 6;
+    public static final double kMaxSteerTurnsPerSecond = 1.5;
+    public static final double kSteerFreeSpeed = 0.05; //modules slower than this (of full output) may steer as far as they like
+    public static final int kSetpointIterations = 10; //bisection steps, the most kinematics calls per loop is this + 2
     public static final double kDirectionP = 1;
     public static final double kDirectionI = 0;
     public static final double kDirectionD = 1;
@@ -163,13 +173,28 @@ public final class Constants {
     public static final double kDriveI = 0;
     public static final double kDriveD = 0;
     public static final double kDriveIZ = 0;
-    public static final double kDriveFF = 0;
     public static final double kDriveMinOutput = -1;
     public static final double kDriveMaxOutput = 1;
+    //closed loop velocity driving on the SPARK MAX, open loop percent output if false. Off until kDriveP, the
+    //feedforward below and kDriveGearRatio are characterized
+    public static final boolean kClosedLoopDrive = false;
+    //feedforward for the drive velocity, volts, volts per m/s and volts per m/s^2. TEMP WE NEED TO CHARACTERIZE THIS
+    public static final double kDriveS = 0.15;
+    public static final double kDriveV = 12.0 / 4.5; //12V gets kMaxSpeedMetersPerSecond
+    public static final double kDriveA = 0;
+    //motor turns per wheel turn. TEMP WE NEED TO CHECK THIS, 8.14 (MK4 L1) fits kMaxSpeedMetersPerSecond
+    public static final double kDriveGearRatio = 8.14;
+    //meters the wheel rolls per motor turn and meters per second per motor RPM, set on the drive encoders
+    public static final double kDrivePositionConversionFactor =
+      Math.PI * kWheelDiameterMeters / kDriveGearRatio;
+    public static final double kDriveVelocityConversionFactor =
+      kDrivePositionConversionFactor / 60.0;
     //multiplies the output speed of all of the drive motors, ALWAYS (0, 1).
     public static final double kDefaultSpeedMultiplier = 0.5;
     public static final double kIntakeSpeedMultiplier = 0.5;
     public static final double kDriveMaxRPM = 5700;
+    //how fast the robot goes at full output. TEMP WE NEED TO MEASURE THIS
+    public static final double kMaxSpeedMetersPerSecond = 4.5;
     public static final int kDriveCurrentLimit = 20;
 
     //PID values for the turning
@@ -178,6 +203,8 @@ public final class Constants {
     public static final double kTurnD = 0.12;
     public static final double kTurnIZ = 0;
     public static final double kTurnFF = 0;
+    //volts per module turn per second added to the turn PID, so modules keep up while the robot spins. TEMP 0 UNTIL TUNED
+    public static final double kTurnVelocityFF = 0;
     public static final double kTurnMinOutput = -1;
     public static final double kTurnMaxOutput = 1;
     public static final int kTurnCurrentLimit = 10;
@@ -186,6 +213,159 @@ public final class Constants {
     public static final double kTurnConversionFactor = 7.0 / 150.0;
   }
 
+  public static class TippingConstants {
+
+    // see frc.robot.util.swerve.TipLimiter. TEMP WE NEED TO MEASURE THE CENTER OF GRAVITY
+    public static final double kStowedCenterOfGravityMeters = 0.25; // off the floor, arm at kArmFlatPosition
+    public static final double kRaisedCenterOfGravityMeters = 0.45; // arm at kArmScoringPosition
+    public static final double kSafetyFactor = 0.5; // of the acceleration that would just lift the wheels
+    public static final double kMinAccelerationMetersPerSecondSquared = 1; // so the robot can always still stop
+    public static final double kTiltDeadbandDegrees = 2; // carpet seams and the NavX's own noise
+    public static final double kTiltFilterSeconds = 0.1; // the NavX pitch and roll jump when the robot accelerates
+  }
+
+  public static class ReplayLoggerConstants {
+
+    // async writer, see frc.robot.util.replay.AsyncReplayWriter
+    public static final int kRingCapacity = 256; // frames, rounded up to a power of two
+    public static final int kInitialFrameBytes = 4096; // a 360 point scan is ~2.9kb
+    public static final int kWriterBlockBytes = 64 * 1024;
+    public static final long kWriterFlushIntervalMs = 250;
+    public static final long kSyncIntervalMs = 1000; // most we lose on a brown out
+
+    // segmented storage, see frc.robot.util.replay.SegmentedLogStorage
+    public static final int kSegmentBytes = 16 * 1024 * 1024;
+    public static final long kDiskBudgetBytes = 256L * 1024 * 1024; // keep well under the roboRIO's free space
+
+    // live streaming, see frc.robot.util.replay.ReplayStreamer
+    public static final int kStreamPort = 5810; // 5800-5810 are open on the field network
+    public static final int kStreamRingCapacity = 64; // ~1.5s of ticks before the oldest get dropped
+    public static final int kStreamMaxClients = 4;
+    public static final long kStreamHeaderIntervalMs = 1000; // udp only, so a viewer started late can decode
+  }
+
+  public static class LidarConstants {
+
+    // the A1 spins at 5-10Hz so this is over 3s of scans, far longer than the loop ever goes without draining
+    public static final int kScanQueueCapacity = 32;
+    // every scan waiting in the queue plus a few being worked on, so the pool never runs dry
+    public static final int kScanPoolSize = kScanQueueCapacity + 8;
+    // the A1 does at most 8000 samples/s, at its slowest 5.5Hz that is ~1450 points a scan
+    public static final int kScanPointCapacity = 1500;
+
+    public static final String kLidarPort = "/dev/ttyUSB0"; // the A1's usb serial adapter on the roboRIO
+
+    // where the lidar sits on the robot, from the robot center. TEMP WE NEED TO MEASURE THIS
+    public static final double kLidarOffsetXMeters = 0;
+    public static final double kLidarOffsetYMeters = 0;
+    public static final double kLidarOffsetHeadingRadians = 0;
+
+    // de-skewing, see frc.robot.util.lidar.ScanDeskewer
+    public static final int kPoseHistoryCapacity = 128; // 2.5s of 20ms loops, far longer than a sweep
+    public static final long kDefaultSweepNanos = 150_000_000; // until one is measured
+    // a gap between scans outside of this is a dropped scan, not a sweep
+    public static final long kMinSweepNanos = 90_000_000;
+    public static final long kMaxSweepNanos = 200_000_000;
+
+    // simulated lidar, see frc.robot.extern_libs.lidar.SimulatedLidar. Roughly an A1 in express mode
+    public static final double kSimRateHz = 7;
+    public static final int kSimSamplesPerRevolution = 570; // ~4000 samples/s
+    public static final double kSimMinRangeMeters = 0.15;
+    public static final double kSimNoiseFraction = 0.005; // standard deviation as a share of the distance
+    public static final double kSimDropoutChance = 0.02; // per sample up close, twice that at 6m
+    public static final double kSimRobotRadiusMeters = 0.45;
+    // where the simulated robot starts on the field, odometry starts at the corner otherwise
+    public static final double kSimStartXMeters = 2;
+    public static final double kSimStartYMeters = 4;
+    public static final double kSimStartHeadingRadians = 0;
+  }
+
+  public static class FilterConstants {
+
+    // see frc.robot.util.lidar.filter.ScanFilterPipeline
+    public static final int kFilterQueueCapacity = 8; // the lidar's pool has to cover this queue and its own
+    public static final short kMinQuality = 10; // the A1 reports 0-63, reflections and edges come back weak
+    // lidar frame angle ranges (start, end, radians clockwise) where the robot's own frame is in view. TEMP WE NEED TO MEASURE THIS
+    public static final double[] kSelfMaskRadians = {};
+    public static final double kSelfMaskMaxMeters = 0.5; // only masked this close, anything further is seen past the frame
+    public static final int kOutlierWindow = 5; // points, odd, so a lone spike is outvoted by its neighbours
+    public static final double kOutlierMaxRatio = 0.15; // off the window's median by more than this share is thrown out
+    public static final double kDownsampleRadians = Math.toRadians(1); // the closest point of every bin is kept
+  }
+
+  public static class MappingConstants {
+
+    // occupancy grid, see frc.robot.util.lidar.OccupancyGrid
+    public static final double kGridResolutionMeters = 0.05; // 331 x 165 cells over the field
+    public static final byte kLogOddsHit = 12; // log odds are fixed point, 1 unit ~ 0.1
+    public static final byte kLogOddsMiss = 3; // smaller than a hit so a robot driving past does not erase a wall
+    public static final byte kLogOddsClamp = 100; // so a cell can change its mind in ~10 scans
+    public static final byte kOccupiedLogOdds = 20; // ~88%
+    public static final double kMaxRangeMeters = 12; // the A1's rated range
+
+    // background mapper, see frc.robot.util.lidar.LidarMapper
+    public static final int kMapperQueueCapacity = 8;
+    public static final int kMapSnapshotTicks = 40; // 1s
+  }
+
+  public static class MatchingConstants {
+
+    // nearest wall lookup, see frc.robot.util.lidar.FieldWallModel
+    public static final double kWallGridResolutionMeters = 0.05;
+    public static final double kWallGridMarginMeters = 1.0; // points a bit past the walls still find one
+
+    // scan matching, see frc.robot.util.lidar.ScanMatcher
+    public static final int kMaxIterations = 20;
+    public static final double kMaxCorrespondenceMeters = 0.3; // further than this from a wall is a robot or a person
+    public static final double kConvergedMeters = 0.001;
+    public static final double kConvergedRadians = 0.0005;
+    public static final int kMinInliers = 60;
+    public static final double kMaxRmseMeters = 0.05;
+    // the weakest direction has to be held by at least this share of the points, one wall alone is not enough
+    public static final double kMinConstraint = 0.05;
+    public static final long kMatchBudgetNanos = 50_000_000; // half the A1's 10Hz period
+
+    // background matcher, see frc.robot.util.lidar.LidarLocalizer
+    public static final int kLocalizerQueueCapacity = 4;
+    public static final double kLidarStdDevMeters = 0.05;
+    public static final double kLidarStdDevRadians = 0.02;
+  }
+
+  public static class ObstacleConstants {
+
+    // see frc.robot.util.lidar.SectorMap
+    public static final int kSectorCount = 36; // 10 degrees each
+    public static final double kSelfDistanceMeters = 0.2; // anything closer is the robot itself. TEMP CHECK ON THE ROBOT
+    public static final double kRobotRadiusMeters = 0.3; // lidar to the bumper sides, a circle so the corners can poke past it
+    public static final double kStopMarginMeters = 0.15; // how far short of an obstacle to stop
+    public static final double kMaxDecelerationMetersPerSecondSquared = 5;
+    public static final double kReactionSeconds = 0.15; // a sweep plus a few loops before the robot starts braking
+    public static final long kMaxScanAgeNanos = 300_000_000; // older than this and the lidar is not limiting anything
+  }
+
+  public static class OpponentConstants {
+
+    // clustering, see frc.robot.util.lidar.ScanClusterer
+    public static final double kStaticMarginMeters = 0.15; // points this close to (or past) a wall are the wall
+    public static final double kClusterDistanceMeters = 0.2; // points closer than this are the same object
+    public static final int kMinClusterPoints = 4;
+    public static final double kMaxClusterSizeMeters = 1.3; // corner to corner of a robot with bumpers
+    public static final double kCenterDepthMeters = 0.35; // the lidar only sees the near side, the center is behind it
+    public static final int kClusterBuckets = 4096; // hash grid, a power of 2
+
+    // tracking, see frc.robot.util.lidar.OpponentTracker
+    public static final int kMaxTracks = 12; // 5 other robots plus room for the odd field element
+    public static final double kGateMeters = 0.75; // a detection further than this from a track starts a new one
+    public static final int kConfirmHits = 3; // detections in a row before a track is published
+    public static final long kMaxCoastNanos = 500_000_000; // a track not seen for this long is dropped
+    public static final double kAccelerationStdDev = 4; // m/s^2, how hard a robot can change what it is doing
+    public static final double kInitialSpeedStdDev = 2; // m/s, a new track could be going any way
+    public static final double kMeasurementStdDevMeters = 0.1;
+
+    // background detector, see frc.robot.util.lidar.OpponentDetector
+    public static final int kDetectorQueueCapacity = 4;
+  }
+
   public static class VisionConstants {
 
     // All units are in meters
@@ -226,5 +406,9 @@ public final class Constants {
 
     public static final double kBlueAmpXPosition = 0; //TEMP WE NEED TO FIND THIS IN METERS
     public static final double kBlueAmpYPosition = 0;
+
+    // 2024 Crescendo, inside of the alliance walls and the guardrails
+    public static final double kFieldLengthMeters = 16.541;
+    public static final double kFieldWidthMeters = 8.211;
   }
 }
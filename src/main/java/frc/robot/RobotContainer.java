@@ -5,7 +5,10 @@
 package frc.robot;
 
 import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.XboxController;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
@@ -15,11 +18,16 @@ import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
 import edu.wpi.first.wpilibj2.command.button.JoystickButton;
 import edu.wpi.first.wpilibj2.command.button.Trigger;
+import ev3dev.sensors.slamtec.RPLidarA1ServiceException;
+import frc.robot.Constants.LidarConstants;
 import frc.robot.Constants.OperatorConstants;
 import frc.robot.Constants.RobotContainerConstants;
 import frc.robot.Constants.VisionConstants;
 import frc.robot.commands.*;
 import frc.robot.error.LimitException;
+import frc.robot.extern_libs.lidar.RPLidar;
+import frc.robot.extern_libs.lidar.SimulatedLidar;
+import frc.robot.inter.LidarInterface;
 import frc.robot.subsystems.*;
 import frc.robot.util.PinCommunication;
 import frc.robot.util.controller.FlightModule;
@@ -28,6 +36,9 @@ import frc.robot.util.controller.FlightStick.AxisEnum;
 import frc.robot.util.controller.LogitechController;
 import frc.robot.util.controller.LogitechController.ButtonEnum;
 import frc.robot.util.identity.Identity;
+import frc.robot.util.lidar.FieldWallModel;
+import frc.robot.util.lidar.LidarLocalizer;
+import frc.robot.util.lidar.filter.ScanFilterPipeline;
 
 /**
  * This class is where the bulk of the robot should be declared. Since Command-based is a
@@ -39,10 +50,10 @@ public class RobotContainer {
 
   // The robot's subsystems and commands are defined here...
   private final VisionSubsystem m_vision = new VisionSubsystem("limelight");
-  // private final LocalizationSubsystem localizationSubsystem = new LocalizationSubsystem(
-  //   null
-  // );
   private final SwerveSubsystem m_swerveSubsystem = new SwerveSubsystem();
+  // null if disabled in RobotContainerConstants (or the lidar could not be started)
+  private LocalizationSubsystem m_localizationSubsystem;
+  private LidarSubsystem m_lidarSubsystem;
   private final ArmSubsystem m_armSubsystem = new ArmSubsystem();
   private final IntakeSubsystem m_intake = new IntakeSubsystem();
   private ClimbArmSubsystem m_climbArmSubsystem = new ClimbArmSubsystem(
@@ -107,11 +118,61 @@ public class RobotContainer {
     }
     // if the arm is enabled, lets
     if (RobotContainerConstants.kArmEnabled) {
+      // the swerve accelerates slower with the arm up so it does not tip
+      m_swerveSubsystem.setArm(m_armSubsystem.getArmInterface());
       m_armSubsystem.setDefaultCommand(
         new RunCommand(() -> m_armSubsystem.updateFF(), m_armSubsystem)
       );
     }
 
+    // the localization and the lidar both build on the swerve's odometry
+    if (RobotContainerConstants.kSwerveEnabled) {
+      // the simulated lidar casts from the odometry, which has to be somewhere on the field
+      Pose2d simStart = new Pose2d(
+        LidarConstants.kSimStartXMeters,
+        LidarConstants.kSimStartYMeters,
+        new Rotation2d(LidarConstants.kSimStartHeadingRadians)
+      );
+      if (RobotBase.isSimulation()) {
+        m_swerveSubsystem.resetOdometry(simStart);
+      }
+
+      if (RobotContainerConstants.kLocalizationEnabled) {
+        m_localizationSubsystem =
+          new LocalizationSubsystem(
+            m_vision,
+            m_swerveSubsystem.getModules(),
+            m_swerveSubsystem.getGyro(),
+            new LidarLocalizer(
+              FieldWallModel.crescendo(),
+              m_swerveSubsystem.getPoseHistory()
+            )
+          );
+        if (RobotBase.isSimulation()) {
+          m_localizationSubsystem.resetPosition(simStart);
+        }
+
+        m_localizationSubsystem.setDefaultCommand(
+          new RunCommand(
+            () -> m_localizationSubsystem.updatePosition(),
+            m_localizationSubsystem
+          )
+        );
+      }
+
+      if (RobotContainerConstants.kLidarEnabled) {
+        LidarInterface lidar = createLidar();
+        if (lidar != null) {
+          m_lidarSubsystem =
+            new LidarSubsystem(
+              lidar,
+              m_swerveSubsystem,
+              m_localizationSubsystem
+            );
+        }
+      }
+    }
+
     // try {
     //   climbArmSubsystem =
     //     new ClimbArmSubsystem(
@@ -287,19 +348,6 @@ public class RobotContainer {
     //  .toggleOnTrue(new ClimbArmCommand(climbArmSubsystem, 10, 0, "Climb Arm"));
 
     // m_chooser.addOption("Auton", new ExampleCommand(m_exampleSubsystem));
-
-    // localizationSubsystem.setDefaultCommand(
-    //   new RunCommand(
-    //     () -> {
-    //       localizationSubsystem.updatePosition();
-    //       Pose2d pos = localizationSubsystem.getPosition();
-    //       System.out.println(
-    //         pos.getX() + " | " + pos.getY() + " | " + pos.getRotation()
-    //       );
-    //     },
-    //     localizationSubsystem
-    //   )
-    // );
   }
 
   private void configureDriverLogitech() {
@@ -364,6 +412,36 @@ public class RobotContainer {
       );
   }
 
+  /**
+   * @apiNote starts the lidar and puts the filter pipeline in front of it. In simulation the lidar is a
+   * {@link SimulatedLidar} casting from the swerve's odometry, so the same code runs in simulateJava
+   * @return what the {@link LidarSubsystem} drains, null if the lidar could not be started
+   */
+  LidarInterface createLidar() {
+    if (RobotBase.isSimulation()) {
+      SimulatedLidar lidar = new SimulatedLidar(
+        m_swerveSubsystem.getPoseHistory()
+      );
+      lidar.start();
+      return new ScanFilterPipeline(lidar);
+    }
+
+    try {
+      RPLidar lidar = new RPLidar(LidarConstants.kLidarPort);
+      lidar.startLidar();
+      return new ScanFilterPipeline(lidar);
+    } catch (RPLidarA1ServiceException | RuntimeException e) {
+      DriverStation.reportError(
+        "Could not start the lidar on " +
+        LidarConstants.kLidarPort +
+        ": " +
+        e.getMessage(),
+        false
+      );
+      return null;
+    }
+  }
+
   /**
    * Use this to pass the autonomous command to the main {@link Robot} class.
    *
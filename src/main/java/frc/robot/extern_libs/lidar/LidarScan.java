@@ -0,0 +1,260 @@
+package frc.robot.extern_libs.lidar;
+
+import ev3dev.sensors.slamtec.model.Scan;
+import ev3dev.sensors.slamtec.model.ScanDistance;
+import frc.robot.inter.ReplayLoggerDevice;
+import frc.robot.util.replay.ReplayCodec;
+import frc.robot.util.replay.SampleBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author godbrigero
+ * @purpose one lidar revolution as parallel primitive arrays (angle, distance, quality) so everything
+ * downstream walks plain arrays instead of a list of objects. Instances come from a {@link LidarScanPool}
+ * and go back with {@link #release()} so steady state scanning allocates nothing.
+ * @apiNote angles are in radians in the lidar's own frame (clockwise from its front, the way the A1 reports
+ * them) and distances in meters. Only the first {@link #size()} entries of the arrays are valid
+ */
+public class LidarScan implements ReplayLoggerDevice {
+
+  static final float kCentimetersPerMeter = 100f;
+  static final float kRadiansPerDegree = (float) (Math.PI / 180.0);
+  // angles are logged so that the codec's millimeter step lands on 1/64 of a degree, the A1's own resolution,
+  // instead of the 1 mrad (about 1/17 of a degree) a plain radian value would be rounded to
+  public static final double kLoggedAnglePerRadian = 180.0 / Math.PI * 64 / 1000;
+
+  final LidarScanPool pool;
+
+  float[] angles;
+  float[] distances;
+  short[] qualities;
+  int size;
+  long timestampNanos;
+  boolean logged;
+  // where the lidar was on the field when the scan was taken, NaN until set
+  double poseX = Double.NaN;
+  double poseY = Double.NaN;
+  double poseHeading = Double.NaN;
+
+  /**
+   * @param capacity the amount of points preallocated, grows if a bigger scan comes in
+   */
+  public LidarScan(int capacity) {
+    this(capacity, null);
+  }
+
+  LidarScan(int capacity, LidarScanPool pool) {
+    this.angles = new float[capacity];
+    this.distances = new float[capacity];
+    this.qualities = new short[capacity];
+    this.pool = pool;
+  }
+
+  public void ensureCapacity(int capacity) {
+    if (angles.length >= capacity) {
+      return;
+    }
+
+    int newCapacity = Math.max(capacity, angles.length * 2);
+    angles = Arrays.copyOf(angles, newCapacity);
+    distances = Arrays.copyOf(distances, newCapacity);
+    qualities = Arrays.copyOf(qualities, newCapacity);
+  }
+
+  /**
+   * @apiNote empties the scan and stamps it, fill it with {@link #add}
+   * @param timestampNanos when the scan finished, from {@link System#nanoTime()}
+   */
+  public void clear(long timestampNanos) {
+    this.size = 0;
+    this.timestampNanos = timestampNanos;
+    this.logged = false;
+    this.poseX = Double.NaN;
+    this.poseY = Double.NaN;
+    this.poseHeading = Double.NaN;
+  }
+
+  /**
+   * @apiNote where the lidar itself (not the robot center) was on the field when this scan was taken
+   * @param x meters
+   * @param y meters
+   * @param heading radians, counter clockwise like the rest of the field
+   */
+  public void setPose(double x, double y, double heading) {
+    this.poseX = x;
+    this.poseY = y;
+    this.poseHeading = heading;
+  }
+
+  /**
+   * @return false if {@link #setPose} was never called since the last clear
+   */
+  public boolean hasPose() {
+    return !Double.isNaN(poseHeading);
+  }
+
+  public double getPoseX() {
+    return poseX;
+  }
+
+  public double getPoseY() {
+    return poseY;
+  }
+
+  public double getPoseHeading() {
+    return poseHeading;
+  }
+
+  /**
+   * @param angle radians
+   * @param distance meters
+   * @param quality signal strength as the lidar reports it
+   */
+  public void add(float angle, float distance, short quality) {
+    ensureCapacity(size + 1);
+    angles[size] = angle;
+    distances[size] = distance;
+    qualities[size] = quality;
+    size++;
+  }
+
+  /**
+   * @apiNote converts a RPLidar4J scan (whole degrees, centimeters) into this one
+   * @param scan the scan from the driver
+   * @param timestampNanos when it finished, from {@link System#nanoTime()}
+   */
+  public void set(Scan scan, long timestampNanos) {
+    List<ScanDistance> points = scan.getDistances();
+    int count = points.size();
+    clear(timestampNanos);
+    ensureCapacity(count);
+
+    // index loop, the driver hands us an unmodifiable ArrayList so this does not make an iterator
+    for (int i = 0; i < count; i++) {
+      ScanDistance point = points.get(i);
+      angles[i] = point.getAngle() * kRadiansPerDegree;
+      distances[i] = point.getDistance() / kCentimetersPerMeter;
+      qualities[i] = (short) point.getQuality();
+    }
+
+    size = count;
+  }
+
+  /**
+   * @apiNote copies every point, the timestamp and the pose of other, for keeping the newest scan around after releasing it
+   */
+  public void copyFrom(LidarScan other) {
+    clear(other.timestampNanos);
+    ensureCapacity(other.size);
+    System.arraycopy(other.angles, 0, angles, 0, other.size);
+    System.arraycopy(other.distances, 0, distances, 0, other.size);
+    System.arraycopy(other.qualities, 0, qualities, 0, other.size);
+    size = other.size;
+    setPose(other.poseX, other.poseY, other.poseHeading);
+  }
+
+  /**
+   * @apiNote gives the scan back to its pool, do not touch it after this. Does nothing if it was not from a pool
+   */
+  public void release() {
+    if (pool != null) {
+      pool.release(this);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @apiNote for after compacting the backing arrays in place, can only shrink the scan
+   * @param size the amount of points left at the front of the arrays
+   */
+  public void setSize(int size) {
+    this.size = Math.min(size, this.size);
+  }
+
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+
+  /**
+   * @return radians
+   */
+  public float getAngle(int index) {
+    return angles[index];
+  }
+
+  /**
+   * @return meters
+   */
+  public float getDistance(int index) {
+    return distances[index];
+  }
+
+  public short getQuality(int index) {
+    return qualities[index];
+  }
+
+  /**
+   * @return the backing array of angles in radians, only the first {@link #size()} are valid
+   */
+  public float[] angles() {
+    return angles;
+  }
+
+  /**
+   * @return the backing array of distances in meters, only the first {@link #size()} are valid
+   */
+  public float[] distances() {
+    return distances;
+  }
+
+  /**
+   * @return the backing array of qualities, only the first {@link #size()} are valid
+   */
+  public short[] qualities() {
+    return qualities;
+  }
+
+  @Override
+  public String getName() {
+    return "lidar";
+  }
+
+  @Override
+  public ReplayCodec getCodec() {
+    return ReplayCodec.DELTA_VARINT_MM;
+  }
+
+  /**
+   * @apiNote writes the distances and then the angles (size() of each), quality is not logged. The angles are
+   * scaled by {@link #kLoggedAnglePerRadian}, read them back with {@link #loggedAngleToRadians(double)}.
+   * A scan is only written once, the next call returns false until it is cleared or set again
+   */
+  @Override
+  public boolean fillData(SampleBuffer out) {
+    if (logged || size == 0) {
+      return false;
+    }
+
+    out.setSize(size * 2);
+    double[] values = out.array();
+    for (int i = 0; i < size; i++) {
+      values[i] = distances[i];
+      values[size + i] = angles[i] * kLoggedAnglePerRadian;
+    }
+
+    logged = true;
+    return true;
+  }
+
+  /**
+   * @param logged an angle as {@link #fillData(SampleBuffer)} wrote it
+   * @return radians
+   */
+  public static double loggedAngleToRadians(double logged) {
+    return logged / kLoggedAnglePerRadian;
+  }
+}
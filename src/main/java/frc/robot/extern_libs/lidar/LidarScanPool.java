@@ -0,0 +1,52 @@
+package frc.robot.extern_libs.lidar;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author godbrigero
+ * @purpose keeps a fixed set of {@link LidarScan}s around so the driver thread never allocates one per revolution.
+ * @apiNote only one thread may {@link #acquire()} (the lidar's driver thread), any thread may release
+ */
+public class LidarScanPool {
+
+  final ScanQueue<LidarScan> free;
+  final int pointCapacity;
+  final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param size the amount of scans made up front
+   * @param pointCapacity the amount of points each scan is made with
+   */
+  public LidarScanPool(int size, int pointCapacity) {
+    this.free = new ScanQueue<>(size);
+    this.pointCapacity = pointCapacity;
+    for (int i = 0; i < size; i++) {
+      free.offer(0, new LidarScan(pointCapacity, this));
+    }
+  }
+
+  /**
+   * @return a scan from the pool, or a new one if every scan is in use (counted in {@link #getMisses()})
+   */
+  public LidarScan acquire() {
+    LidarScan scan = free.poll();
+    if (scan == null) {
+      misses.incrementAndGet();
+      return new LidarScan(pointCapacity, this);
+    }
+
+    return scan;
+  }
+
+  void release(LidarScan scan) {
+    // if the pool is full the scan is simply left to the GC
+    free.offer(0, scan);
+  }
+
+  /**
+   * @return the amount of times the pool was empty and a scan had to be allocated, should stay 0
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+}
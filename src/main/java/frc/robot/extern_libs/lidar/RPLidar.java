@@ -4,16 +4,24 @@ import ev3dev.sensors.slamtec.RPLidarA1;
 import ev3dev.sensors.slamtec.RPLidarA1ServiceException;
 import ev3dev.sensors.slamtec.RPLidarProviderListener;
 import ev3dev.sensors.slamtec.model.Scan;
-import java.util.HashMap;
+import frc.robot.Constants.LidarConstants;
+import frc.robot.inter.LidarInterface;
 
 /**
  * @author godbrigero
- * @purpose for now this has no use... but later...
+ * @purpose wraps the RPLidar4J driver. Scans come in on the driver's own thread, get converted once into
+ * a pooled {@link LidarScan} and are handed to the robot loop through a lock free {@link ScanQueue}, see {@link #drainScans}
  */
-public class RPLidar {
+public class RPLidar implements LidarInterface {
 
   final RPLidarA1 lidar;
-  final HashMap<Long, Scan> args = new HashMap<>();
+  final LidarScanPool pool = new LidarScanPool(
+    LidarConstants.kScanPoolSize,
+    LidarConstants.kScanPointCapacity
+  );
+  final ScanQueue<LidarScan> scans = new ScanQueue<>(
+    LidarConstants.kScanQueueCapacity
+  );
 
   public RPLidar(String connectonPort) throws RPLidarA1ServiceException {
     this.lidar = new RPLidarA1(connectonPort);
@@ -23,7 +31,13 @@ public class RPLidar {
       new RPLidarProviderListener() {
         @Override
         public void scanFinished(Scan arg0) {
-          args.put(System.currentTimeMillis(), arg0);
+          // monotonic, currentTimeMillis can jump when the roboRIO syncs its clock with the DS
+          long now = System.nanoTime();
+          LidarScan scan = pool.acquire();
+          scan.set(arg0, now);
+          if (!scans.offer(now, scan)) {
+            scan.release();
+          }
         }
       }
     );
@@ -44,11 +58,30 @@ public class RPLidar {
   }
 
   /**
-   * @return if no scans have income since the last scan get, will return null. Otherwise it will return a map of MS and scans since last req of scan get.
+   * @apiNote call from the robot loop only. Allocates nothing as long as the consumer is kept around.
+   * The consumer owns every scan it gets and has to {@link LidarScan#release()} it when done, {@link LidarScan#copyFrom}
+   * first if it needs to be kept
+   * @param consumer gets every scan since the last drain, oldest first, with its {@link System#nanoTime()} timestamp
+   * @return the amount of scans drained
    */
-  public HashMap<Long, Scan> getLastScans() {
-    HashMap<Long, Scan> tmp = args;
-    args.clear();
-    return tmp;
+  @Override
+  public int drainScans(ScanQueue.ScanConsumer<LidarScan> consumer) {
+    return scans.drain(consumer);
+  }
+
+  /**
+   * @return the amount of scans lost because no one drained them in time
+   */
+  @Override
+  public long getDroppedScans() {
+    return scans.getDroppedScans();
+  }
+
+  /**
+   * @return the amount of times the scan pool ran dry, should stay 0 if scans are released
+   */
+  @Override
+  public long getPoolMisses() {
+    return pool.getMisses();
   }
 }
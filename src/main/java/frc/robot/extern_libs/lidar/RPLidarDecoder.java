@@ -0,0 +1,345 @@
+package frc.robot.extern_libs.lidar;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author godbrigero
+ * @purpose decodes what an RPLidar A1 sends over serial, straight from a {@link ByteBuffer} into pooled
+ * {@link LidarScan}s. Handles the standard scan (5 bytes a sample) and the express scan (84 byte packets of
+ * 32 samples) responses, nothing is allocated per sample or per packet.
+ * @apiNote one thread only (the serial reader). Every whole revolution goes to the consumer which owns it and has to
+ * {@link LidarScan#release()} it. Bad bytes (line noise, starting mid frame) are skipped one at a time until
+ * the frames line up again, see {@link #getSkippedBytes()}. The samples before the first start of a revolution
+ * are dropped, that scan is not whole
+ */
+public class RPLidarDecoder {
+
+  public static final byte kSyncByte = (byte) 0xA5;
+  public static final byte kSyncByte2 = (byte) 0x5A;
+
+  // requests, see the Slamtec RPLidar protocol document
+  public static final byte[] kStopRequest = { kSyncByte, 0x25 };
+  public static final byte[] kScanRequest = { kSyncByte, 0x20 };
+  // working mode 0 (legacy express), the last byte is the xor of all before it
+  public static final byte[] kExpressScanRequest = {
+    kSyncByte,
+    (byte) 0x82,
+    0x05,
+    0,
+    0,
+    0,
+    0,
+    0,
+    0x22,
+  };
+
+  static final int kDescriptorBytes = 7;
+  static final int kStandardType = 0x81;
+  static final int kExpressType = 0x82;
+  static final int kStandardSampleBytes = 5;
+  static final int kExpressPacketBytes = 84;
+  static final int kExpressCabins = 16;
+  // the SDK gives every express sample with a return this quality
+  static final short kExpressQuality = 0x2F;
+  static final int kFullCircleQ16 = 360 << 16;
+
+  static final float kRadiansPerQ6 = (float) (Math.PI / 180.0 / 64.0);
+  static final float kMetersPerQ2 = 1f / 4000f;
+
+  enum Mode {
+    DESCRIPTOR,
+    STANDARD,
+    EXPRESS,
+  }
+
+  final LidarScanPool pool;
+  final ScanQueue.ScanConsumer<LidarScan> consumer;
+
+  Mode mode = Mode.DESCRIPTOR;
+  // the revolution being filled, null until the first start is seen
+  LidarScan current;
+  // an express packet's samples need the next packet's start angle, so each one waits here for it
+  final byte[] previousPacket = new byte[kExpressPacketBytes];
+  boolean hasPreviousPacket;
+
+  long skippedBytes;
+  long scans;
+
+  /**
+   * @param pool where the scans come from, this decoder is its only acquirer
+   * @param consumer gets every whole revolution with the timestamp of the read that finished it
+   */
+  public RPLidarDecoder(
+    LidarScanPool pool,
+    ScanQueue.ScanConsumer<LidarScan> consumer
+  ) {
+    this.pool = pool;
+    this.consumer = consumer;
+  }
+
+  /**
+   * @apiNote decodes every whole frame in the buffer and leaves the position at the first byte of the last,
+   * partial one. {@link ByteBuffer#compact()} it and read more in after
+   * @param in the bytes from the lidar, between position and limit
+   * @param timestampNanos when they were read, from {@link System#nanoTime()}
+   * @return the amount of revolutions handed to the consumer
+   */
+  public int decode(ByteBuffer in, long timestampNanos) {
+    long scansBefore = scans;
+
+    while (true) {
+      int position = in.position();
+      int remaining = in.remaining();
+
+      if (mode == Mode.DESCRIPTOR) {
+        if (remaining < kDescriptorBytes) {
+          break;
+        }
+
+        if (
+          in.get(position) != kSyncByte || in.get(position + 1) != kSyncByte2
+        ) {
+          skip(in);
+          continue;
+        }
+
+        int type = in.get(position + 6) & 0xFF;
+        if (type == kStandardType) {
+          mode = Mode.STANDARD;
+        } else if (type == kExpressType) {
+          mode = Mode.EXPRESS;
+          hasPreviousPacket = false;
+        } else {
+          // an answer to some other request, it is not ours to read
+          skip(in);
+          continue;
+        }
+
+        in.position(position + kDescriptorBytes);
+      } else if (mode == Mode.STANDARD) {
+        if (remaining < kStandardSampleBytes) {
+          break;
+        }
+
+        if (!decodeStandard(in, position, timestampNanos)) {
+          skip(in);
+          continue;
+        }
+
+        in.position(position + kStandardSampleBytes);
+      } else {
+        if (remaining < kExpressPacketBytes) {
+          break;
+        }
+
+        if (!decodeExpress(in, position, timestampNanos)) {
+          hasPreviousPacket = false;
+          skip(in);
+          continue;
+        }
+
+        in.position(position + kExpressPacketBytes);
+      }
+    }
+
+    return (int) (scans - scansBefore);
+  }
+
+  void skip(ByteBuffer in) {
+    in.position(in.position() + 1);
+    skippedBytes++;
+  }
+
+  /**
+   * @return false if the bytes at position are not a sample
+   */
+  boolean decodeStandard(ByteBuffer in, int position, long timestampNanos) {
+    int b0 = in.get(position) & 0xFF;
+    int b1 = in.get(position + 1) & 0xFF;
+    boolean start = (b0 & 0x1) != 0;
+    boolean notStart = (b0 & 0x2) != 0;
+    // the start bit and its inverse have to disagree and the check bit is always 1
+    if (start == notStart || (b1 & 0x1) == 0) {
+      return false;
+    }
+
+    int angleQ6 = (b1 >> 1) | ((in.get(position + 2) & 0xFF) << 7);
+    int distanceQ2 =
+      (in.get(position + 3) & 0xFF) | ((in.get(position + 4) & 0xFF) << 8);
+
+    addSample(
+      start,
+      angleQ6,
+      distanceQ2,
+      (short) (b0 >> 2),
+      timestampNanos
+    );
+    return true;
+  }
+
+  /**
+   * @return false if the bytes at position are not a packet (bad sync nibbles or checksum)
+   */
+  boolean decodeExpress(ByteBuffer in, int position, long timestampNanos) {
+    int b0 = in.get(position) & 0xFF;
+    int b1 = in.get(position + 1) & 0xFF;
+    if ((b0 >> 4) != 0xA || (b1 >> 4) != 0x5) {
+      return false;
+    }
+
+    int checksum = 0;
+    for (int i = 2; i < kExpressPacketBytes; i++) {
+      checksum ^= in.get(position + i);
+    }
+
+    if ((checksum & 0xFF) != ((b0 & 0xF) | ((b1 & 0xF) << 4))) {
+      return false;
+    }
+
+    int startWord = readShort(in, position + 2);
+    // the lidar just (re)started measuring, the packet before this one is from another run
+    if ((startWord & 0x8000) != 0) {
+      hasPreviousPacket = false;
+    }
+
+    if (hasPreviousPacket) {
+      decodeCabins(startWord & 0x7FFF, timestampNanos);
+    }
+
+    in.get(position, previousPacket);
+    hasPreviousPacket = true;
+    return true;
+  }
+
+  /**
+   * @apiNote spreads the previous packet's 32 samples between its start angle and this one's, like the Slamtec SDK does
+   */
+  void decodeCabins(int nextStartQ6, long timestampNanos) {
+    int startQ8 = (readShort(previousPacket, 2) & 0x7FFF) << 2;
+    int nextStartQ8 = nextStartQ6 << 2;
+    int differenceQ8 = nextStartQ8 - startQ8;
+    if (startQ8 > nextStartQ8) {
+      differenceQ8 += 360 << 8;
+    }
+
+    int incrementQ16 = differenceQ8 << 3;
+    int angleQ16 = startQ8 << 8;
+
+    for (int cabin = 0; cabin < kExpressCabins; cabin++) {
+      int offset = 4 + cabin * 5;
+      int first = readShort(previousPacket, offset);
+      int second = readShort(previousPacket, offset + 2);
+      int offsets = previousPacket[offset + 4] & 0xFF;
+
+      // 6 bit angle corrections in 1/8 degree, split over the low bits of the distances and a shared byte
+      int firstOffsetQ3 = (offsets & 0xF) | ((first & 0x3) << 4);
+      int secondOffsetQ3 = (offsets >> 4) | ((second & 0x3) << 4);
+
+      angleQ16 =
+        addExpressSample(
+          angleQ16,
+          incrementQ16,
+          first,
+          firstOffsetQ3,
+          timestampNanos
+        );
+      angleQ16 =
+        addExpressSample(
+          angleQ16,
+          incrementQ16,
+          second,
+          secondOffsetQ3,
+          timestampNanos
+        );
+    }
+  }
+
+  /**
+   * @return the nominal angle of the next sample
+   */
+  int addExpressSample(
+    int angleQ16,
+    int incrementQ16,
+    int distanceWord,
+    int offsetQ3,
+    long timestampNanos
+  ) {
+    int angleQ6 = (angleQ16 - (offsetQ3 << 13)) >> 10;
+    if (angleQ6 < 0) {
+      angleQ6 += 360 << 6;
+    } else if (angleQ6 >= 360 << 6) {
+      angleQ6 -= 360 << 6;
+    }
+
+    // a new revolution starts with the sample whose step crosses 0 degrees
+    boolean start = (angleQ16 + incrementQ16) % kFullCircleQ16 < incrementQ16;
+    int distanceQ2 = distanceWord & 0xFFFC;
+
+    addSample(
+      start,
+      angleQ6,
+      distanceQ2,
+      distanceQ2 != 0 ? kExpressQuality : 0,
+      timestampNanos
+    );
+    return angleQ16 + incrementQ16;
+  }
+
+  void addSample(
+    boolean start,
+    int angleQ6,
+    int distanceQ2,
+    short quality,
+    long timestampNanos
+  ) {
+    if (start) {
+      if (current != null) {
+        current.timestampNanos = timestampNanos;
+        scans++;
+        consumer.accept(timestampNanos, current);
+      }
+
+      current = pool.acquire();
+      current.clear(timestampNanos);
+    }
+
+    if (current != null) {
+      current.add(angleQ6 * kRadiansPerQ6, distanceQ2 * kMetersPerQ2, quality);
+    }
+  }
+
+  static int readShort(ByteBuffer in, int position) {
+    return (in.get(position) & 0xFF) | ((in.get(position + 1) & 0xFF) << 8);
+  }
+
+  static int readShort(byte[] bytes, int position) {
+    return (bytes[position] & 0xFF) | ((bytes[position + 1] & 0xFF) << 8);
+  }
+
+  /**
+   * @apiNote forget everything and wait for a new response descriptor, for after sending a new request.
+   * The revolution being filled goes back to the pool
+   */
+  public void reset() {
+    mode = Mode.DESCRIPTOR;
+    hasPreviousPacket = false;
+    if (current != null) {
+      current.release();
+      current = null;
+    }
+  }
+
+  /**
+   * @return the amount of bytes thrown away to get back in line with the frames, should barely move
+   */
+  public long getSkippedBytes() {
+    return skippedBytes;
+  }
+
+  /**
+   * @return the amount of whole revolutions decoded
+   */
+  public long getScans() {
+    return scans;
+  }
+}
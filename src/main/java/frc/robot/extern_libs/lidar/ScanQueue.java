@@ -0,0 +1,146 @@
+package frc.robot.extern_libs.lidar;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author godbrigero
+ * @purpose bounded lock free queue that hands scans from the lidar's listener thread(s) to the robot loop.
+ * Any number of threads can offer, only one thread (the robot loop) can drain.
+ * @apiNote every slot has a sequence number that says whose turn it is. A producer claims a slot with one
+ * compare and set on the tail and publishes it by bumping the slot's sequence, so the consumer sees the
+ * scan and its timestamp whole or not at all and nothing is allocated on either side
+ */
+public class ScanQueue<T> {
+
+  /**
+   * @apiNote gets every scan of a drain, keep one around instead of making a new lambda per call
+   */
+  public interface ScanConsumer<T> {
+    void accept(long timestampNanos, T scan);
+  }
+
+  final Object[] items;
+  final long[] timestamps;
+  final AtomicLongArray sequences;
+  final int mask;
+
+  final AtomicLong tail = new AtomicLong();
+  final AtomicLong droppedScans = new AtomicLong();
+  // only the consumer touches this
+  long head;
+
+  /**
+   * @param capacity the amount of scans that can be waiting, rounded up to a power of two
+   */
+  public ScanQueue(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    this.items = new Object[size];
+    this.timestamps = new long[size];
+    this.sequences = new AtomicLongArray(size);
+    for (int i = 0; i < size; i++) {
+      sequences.set(i, i);
+    }
+
+    this.mask = size - 1;
+  }
+
+  /**
+   * @apiNote safe from any thread
+   * @param timestampNanos when the scan finished, from {@link System#nanoTime()}
+   * @param scan the scan, must not be changed after this
+   * @return false if the queue was full and the scan was dropped, only happens if no one drained for a long time
+   */
+  public boolean offer(long timestampNanos, T scan) {
+    long position;
+    while (true) {
+      position = tail.get();
+      long difference = sequences.get((int) (position & mask)) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+      } else if (difference < 0) {
+        droppedScans.incrementAndGet();
+        return false;
+      }
+      // else another producer got this slot first, try the next one
+    }
+
+    int slot = (int) (position & mask);
+    items[slot] = scan;
+    timestamps[slot] = timestampNanos;
+    // the volatile write publishes the two plain writes above
+    sequences.set(slot, position + 1);
+    return true;
+  }
+
+  /**
+   * @apiNote CONSUMER ONLY. Hands every scan that is ready to consumer, oldest first
+   * @return the amount of scans drained
+   */
+  @SuppressWarnings("unchecked")
+  public int drain(ScanConsumer<T> consumer) {
+    int drained = 0;
+    while (true) {
+      int slot = (int) (head & mask);
+      if (sequences.get(slot) != head + 1) {
+        return drained;
+      }
+
+      T scan = (T) items[slot];
+      long timestamp = timestamps[slot];
+      items[slot] = null;
+      // hand the slot back to the producers one lap later
+      sequences.set(slot, head + items.length);
+      head++;
+
+      consumer.accept(timestamp, scan);
+      drained++;
+    }
+  }
+
+  /**
+   * @apiNote CONSUMER ONLY. Takes the oldest scan without its timestamp
+   * @return the scan or null if there is none ready
+   */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    int slot = (int) (head & mask);
+    if (sequences.get(slot) != head + 1) {
+      return null;
+    }
+
+    T scan = (T) items[slot];
+    items[slot] = null;
+    sequences.set(slot, head + items.length);
+    head++;
+    return scan;
+  }
+
+  /**
+   * @return roughly the amount of scans waiting, exact only on the consumer thread with no producer running
+   */
+  public int size() {
+    return (int) Math.max(tail.get() - head, 0);
+  }
+
+  public int capacity() {
+    return items.length;
+  }
+
+  /**
+   * @return the amount of scans thrown away because the queue was full
+   */
+  public long getDroppedScans() {
+    return droppedScans.get();
+  }
+}
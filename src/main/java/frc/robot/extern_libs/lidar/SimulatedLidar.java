@@ -0,0 +1,241 @@
+package frc.robot.extern_libs.lidar;
+
+import frc.robot.Constants.LidarConstants;
+import frc.robot.Constants.MappingConstants;
+import frc.robot.inter.LidarInterface;
+import frc.robot.util.lidar.FieldWallModel;
+import frc.robot.util.lidar.PoseHistory;
+import java.io.Closeable;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author godbrigero
+ * @purpose a stand in for {@link RPLidar} in simulation and tests. Ray casts against the field walls and
+ * other robots from wherever the simulated robot is, with the A1's resolution, range noise and missing returns.
+ * @apiNote every sample is cast from the pose the robot had at that sample's moment (from a {@link PoseHistory}),
+ * so a driving robot gets the same smeared scans the real lidar gives. {@link #start()} runs it on its own thread at
+ * the configured rate like the driver, or call {@link #generateScan} directly for a deterministic scan
+ */
+public class SimulatedLidar implements LidarInterface, Closeable {
+
+  final FieldWallModel walls;
+  final PoseHistory history;
+  final double rateHz;
+  final int samplesPerRevolution;
+  final double noiseFraction;
+  final double dropoutChance;
+  final Random random;
+
+  final LidarScanPool pool = new LidarScanPool(
+    LidarConstants.kScanPoolSize,
+    LidarConstants.kScanPointCapacity
+  );
+  final ScanQueue<LidarScan> scans = new ScanQueue<>(
+    LidarConstants.kScanQueueCapacity
+  );
+
+  // x, y pairs, replaced whole so the lidar thread never sees half an update
+  volatile double[] robots = new double[0];
+  final double[] pose = new double[3];
+  Thread thread;
+  volatile boolean running;
+
+  /**
+   * @apiNote an A1 in express mode on the Crescendo field, see the kSim constants in {@link LidarConstants}
+   * @param history where the robot (center) is, the lidar sits at the offset in {@link LidarConstants}
+   */
+  public SimulatedLidar(PoseHistory history) {
+    this(
+      FieldWallModel.crescendo(),
+      history,
+      LidarConstants.kSimRateHz,
+      LidarConstants.kSimSamplesPerRevolution,
+      LidarConstants.kSimNoiseFraction,
+      LidarConstants.kSimDropoutChance,
+      new Random()
+    );
+  }
+
+  /**
+   * @param walls what to ray cast against
+   * @param history where the robot (center) is, the lidar sits at the offset in {@link LidarConstants}
+   * @param rateHz revolutions a second
+   * @param samplesPerRevolution the angular resolution
+   * @param noiseFraction the standard deviation of the range noise as a share of the distance
+   * @param dropoutChance the chance a sample right next to the lidar has no return, it grows with distance
+   * @param random seed it for scans that are the same every run
+   */
+  public SimulatedLidar(
+    FieldWallModel walls,
+    PoseHistory history,
+    double rateHz,
+    int samplesPerRevolution,
+    double noiseFraction,
+    double dropoutChance,
+    Random random
+  ) {
+    this.walls = walls;
+    this.history = history;
+    this.rateHz = rateHz;
+    this.samplesPerRevolution = samplesPerRevolution;
+    this.noiseFraction = noiseFraction;
+    this.dropoutChance = dropoutChance;
+    this.random = random;
+  }
+
+  /**
+   * @apiNote other robots as circles of {@link LidarConstants#kSimRobotRadiusMeters}, safe from any thread
+   * @param positions x, y of every robot in meters
+   */
+  public void setRobots(double[] positions) {
+    this.robots = positions.clone();
+  }
+
+  /**
+   * @apiNote starts sending a scan every revolution, drain them with {@link #drainScans}
+   */
+  public void start() {
+    if (running) {
+      return;
+    }
+
+    running = true;
+    thread = new Thread(this::run, "SimulatedLidar");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  void run() {
+    long period = (long) (1e9 / rateHz);
+    long next = System.nanoTime() + period;
+    while (running) {
+      long wait = next - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+        continue;
+      }
+
+      LidarScan scan = pool.acquire();
+      generateScan(scan, next);
+      if (!scans.offer(next, scan)) {
+        scan.release();
+      }
+
+      next += period;
+    }
+  }
+
+  /**
+   * @apiNote not thread safe, do not call while {@link #start()}ed. Casts one revolution that ended at endNanos,
+   * points with no return have distance 0 like the real lidar
+   * @param scan gets cleared and filled
+   * @return false if the history is empty and the scan was left empty
+   */
+  public boolean generateScan(LidarScan scan, long endNanos) {
+    scan.clear(endNanos);
+    if (history.getNewestTimestampNanos() == 0) {
+      return false;
+    }
+
+    double step = 2 * Math.PI / samplesPerRevolution;
+    double startAngle = random.nextDouble() * step;
+    double sweepNanos = 1e9 / rateHz;
+    double[] others = robots;
+
+    for (int i = 0; i < samplesPerRevolution; i++) {
+      double angle = startAngle + i * step;
+      long time = endNanos - (long) ((1 - angle / (2 * Math.PI)) * sweepNanos);
+      history.getPose(time, pose);
+
+      double cos = Math.cos(pose[2]);
+      double sin = Math.sin(pose[2]);
+      double x =
+        pose[0] +
+        cos * LidarConstants.kLidarOffsetXMeters -
+        sin * LidarConstants.kLidarOffsetYMeters;
+      double y =
+        pose[1] +
+        sin * LidarConstants.kLidarOffsetXMeters +
+        cos * LidarConstants.kLidarOffsetYMeters;
+      // lidar angles go clockwise
+      double fieldAngle =
+        pose[2] + LidarConstants.kLidarOffsetHeadingRadians - angle;
+
+      double distance = castRay(x, y, fieldAngle, others);
+      boolean dropped =
+        distance >= MappingConstants.kMaxRangeMeters ||
+        distance < LidarConstants.kSimMinRangeMeters ||
+        random.nextDouble() < dropoutChance * (1 + distance / 6);
+
+      scan.add(
+        (float) angle,
+        dropped
+          ? 0
+          : (float) (distance * (1 + random.nextGaussian() * noiseFraction)),
+        dropped ? 0 : RPLidarDecoder.kExpressQuality
+      );
+    }
+
+    return true;
+  }
+
+  double castRay(double x, double y, double angle, double[] others) {
+    double closest = walls.castRay(
+      x,
+      y,
+      angle,
+      MappingConstants.kMaxRangeMeters
+    );
+    double dx = Math.cos(angle);
+    double dy = Math.sin(angle);
+    double radius = LidarConstants.kSimRobotRadiusMeters;
+
+    for (int i = 0; i + 1 < others.length; i += 2) {
+      // the ray (x, y) + t * d against the circle, nearest root
+      double ox = others[i] - x;
+      double oy = others[i + 1] - y;
+      double along = ox * dx + oy * dy;
+      double across = ox * ox + oy * oy - along * along;
+      if (along <= 0 || across > radius * radius) {
+        continue;
+      }
+
+      double t = along - Math.sqrt(radius * radius - across);
+      if (t >= 0 && t < closest) {
+        closest = t;
+      }
+    }
+
+    return closest;
+  }
+
+  @Override
+  public int drainScans(ScanQueue.ScanConsumer<LidarScan> consumer) {
+    return scans.drain(consumer);
+  }
+
+  @Override
+  public long getDroppedScans() {
+    return scans.getDroppedScans();
+  }
+
+  @Override
+  public long getPoolMisses() {
+    return pool.getMisses();
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    if (thread == null) {
+      return;
+    }
+
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package frc.robot.inter;
+
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.ScanQueue;
+
+/**
+ * @author godbrigero
+ * @purpose anything that hands out lidar scans, the real lidar or a simulated one, so mapping, logging and
+ * obstacle code does not care which it gets
+ */
+public interface LidarInterface {
+  /**
+   * @apiNote call from the robot loop only. The consumer owns every scan it gets and has to {@link LidarScan#release()} it
+   * @param consumer gets every scan since the last drain, oldest first, with its {@link System#nanoTime()} timestamp
+   * @return the amount of scans drained
+   */
+  int drainScans(ScanQueue.ScanConsumer<LidarScan> consumer);
+
+  /**
+   * @return the amount of scans lost because no one drained them in time
+   */
+  long getDroppedScans();
+
+  /**
+   * @return the amount of times the scan pool ran dry, should stay 0 if scans are released
+   */
+  long getPoolMisses();
+}
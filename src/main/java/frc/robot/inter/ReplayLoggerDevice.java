@@ -1,5 +1,8 @@
 package frc.robot.inter;
 
+import frc.robot.util.replay.ReplayCodec;
+import frc.robot.util.replay.ReplayLogRate;
+import frc.robot.util.replay.SampleBuffer;
 import java.util.List;
 
 /**
@@ -7,6 +10,27 @@ import java.util.List;
  * @purpose to make the replay logger subsystem able to be used for many devices
  */
 public interface ReplayLoggerDevice {
+  /**
+   * @return the name written into the log header. If null the logger names it "device" + its index
+   */
+  default String getName() {
+    return null;
+  }
+
+  /**
+   * @return how the values get written. Lidar scans should use DELTA_VARINT_MM, anything that needs every bit RAW
+   */
+  default ReplayCodec getCodec() {
+    return ReplayCodec.RAW;
+  }
+
+  /**
+   * @return how often this device gets sampled. If null the ticksPerUpdate of the logger is used
+   */
+  default ReplayLogRate getLogRate() {
+    return null;
+  }
+
   /**
    * @return returns the data OR NULL if data is not available
    */
@@ -21,4 +45,30 @@ public interface ReplayLoggerDevice {
   default List<Double> getData(boolean n) {
     return null;
   }
+
+  /**
+   * @apiNote this is what the logger calls. Override it to write into the buffer without allocating, the default adapts the two getData methods
+   * @param out the reusable buffer of this device. Leave it untouched if there is no new data
+   * @return true if out was filled, false if no data is available
+   */
+  default boolean fillData(SampleBuffer out) {
+    double[] data = getData();
+    if (data != null) {
+      out.set(data);
+      return true;
+    }
+
+    List<Double> dataList = getData(false);
+    if (dataList != null) {
+      out.setSize(dataList.size());
+      double[] array = out.array();
+      for (int j = 0; j < dataList.size(); j++) {
+        array[j] = dataList.get(j);
+      }
+
+      return true;
+    }
+
+    return false;
+  }
 }
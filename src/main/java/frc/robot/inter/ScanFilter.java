@@ -0,0 +1,20 @@
+package frc.robot.inter;
+
+/**
+ * @author godbrigero
+ * @purpose one stage of a lidar filter pipeline, see frc.robot.util.lidar.filter.ScanFilterPipeline
+ * @apiNote works on a scan's backing arrays (angles radians clockwise, distances meters) and compacts the points
+ * it keeps to the front, in order. Called from one thread only, so a stage may keep its own scratch arrays
+ */
+public interface ScanFilter {
+  /**
+   * @return a short name for timing and logging
+   */
+  String getName();
+
+  /**
+   * @param size the amount of valid points at the front of the arrays
+   * @return the amount of points kept, they are now the first that many of the arrays
+   */
+  int filter(float[] angles, float[] distances, short[] qualities, int size);
+}
@@ -0,0 +1,70 @@
+package frc.robot.subsystems;
+
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.ScanQueue;
+import frc.robot.inter.LidarInterface;
+import frc.robot.util.lidar.OpponentDetector;
+
+/**
+ * @author godbrigero
+ * @purpose the one place that drains the lidar. Every loop each new scan goes to the localization (which stamps it
+ * with where the lidar was on the field), the opponent detector and the swerve's obstacle slowdown, then back to its pool
+ * @apiNote the localization is optional, without it scans have no field pose and the opponent detector skips them.
+ * Allocates nothing per scan
+ */
+public class LidarSubsystem extends SubsystemBase {
+
+  final LidarInterface m_lidar;
+  final SwerveSubsystem m_swerveSubsystem;
+  final LocalizationSubsystem m_localizationSubsystem;
+  final OpponentDetector m_opponentDetector = new OpponentDetector();
+
+  // kept so draining does not make a new lambda every time
+  final ScanQueue.ScanConsumer<LidarScan> m_useScan = this::useScan;
+
+  /**
+   * @param lidar what to drain, the filter pipeline in front of the real or simulated lidar
+   * @param swerveSubsystem slows down for what the scans show
+   * @param localizationSubsystem corrects the position with the scans, null if there is none
+   */
+  public LidarSubsystem(
+    LidarInterface lidar,
+    SwerveSubsystem swerveSubsystem,
+    LocalizationSubsystem localizationSubsystem
+  ) {
+    m_lidar = lidar;
+    m_swerveSubsystem = swerveSubsystem;
+    m_localizationSubsystem = localizationSubsystem;
+  }
+
+  @Override
+  public void periodic() {
+    m_lidar.drainScans(m_useScan);
+  }
+
+  void useScan(long timestampNanos, LidarScan scan) {
+    //first, the detector needs the field pose this sets
+    if (m_localizationSubsystem != null) {
+      m_localizationSubsystem.submitLidarScan(scan);
+    }
+
+    m_opponentDetector.submit(scan);
+    m_swerveSubsystem.updateObstacles(scan);
+    scan.release();
+  }
+
+  /**
+   * @return the other robots the lidar is following, for path following and alignment
+   */
+  public OpponentDetector getOpponentDetector() {
+    return m_opponentDetector;
+  }
+
+  /**
+   * @return what gets drained, for its dropped scan counters
+   */
+  public LidarInterface getLidar() {
+    return m_lidar;
+  }
+}
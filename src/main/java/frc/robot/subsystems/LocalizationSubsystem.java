@@ -4,20 +4,29 @@ import com.kauailabs.navx.frc.AHRS;
 
 import edu.wpi.first.apriltag.AprilTagFieldLayout;
 import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.wpilibj.I2C;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.LidarConstants;
+import frc.robot.Constants.MatchingConstants;
 import frc.robot.Constants.VisionConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.ScanQueue;
 import frc.robot.subsystems.SwerveModule;
 import frc.robot.subsystems.VisionSubsystem;
 import frc.robot.subsystems.VisionSubsystem.VisionTarget;
+import frc.robot.util.lidar.LidarLocalizer;
+import frc.robot.util.lidar.PoseHistory;
+import frc.robot.util.lidar.ScanMatch;
 
 import org.photonvision.PhotonUtils;
 
@@ -26,7 +35,23 @@ public class LocalizationSubsystem extends SubsystemBase {
   private Pose2d position;
   private AHRS m_gyro;
   VisionSubsystem m_vision;
-  SwerveDriveOdometry m_odometry;
+  SwerveDrivePoseEstimator m_poseEstimator;
+  LidarLocalizer m_lidarLocalizer;
+
+  // where the lidar sits on the robot, and back
+  final Transform2d m_robotToLidar = new Transform2d(
+    LidarConstants.kLidarOffsetXMeters,
+    LidarConstants.kLidarOffsetYMeters,
+    new Rotation2d(LidarConstants.kLidarOffsetHeadingRadians)
+  );
+  final Transform2d m_lidarToRobot = m_robotToLidar.inverse();
+
+  // odometry poses looked up from the lidar localizer's history, x, y, heading
+  final double[] m_scanOdometry = new double[3];
+  final double[] m_newestOdometry = new double[3];
+
+  // kept so draining does not make a new lambda every time
+  final ScanQueue.ScanConsumer<ScanMatch> m_addLidarMeasurement = this::addLidarMeasurement;
 
   private final SwerveModule m_frontLeftModule;
   private final SwerveModule m_frontRightModule;
@@ -36,9 +61,34 @@ public class LocalizationSubsystem extends SubsystemBase {
   // https://firstfrc.blob.core.windows.net/frc2024/FieldAssets/Apriltag_Images_and_User_Guide.pdf
   AprilTagFieldLayout aprilTagFieldLayout = AprilTagFields.k2024Crescendo.loadAprilTagLayoutField();
 
+  /**
+   * @param lidarLocalizer corrects the position from lidar scans given to {@link #submitLidarScan}
+   */
+  public LocalizationSubsystem(
+    VisionSubsystem vision,
+    SwerveModule[] modules,
+    LidarLocalizer lidarLocalizer
+  ) {
+    this(vision, modules, new AHRS(I2C.Port.kMXP), lidarLocalizer);
+  }
+
   public LocalizationSubsystem(VisionSubsystem vision, SwerveModule[] modules) {
-    m_gyro = new AHRS(I2C.Port.kMXP);
+    this(vision, modules, new AHRS(I2C.Port.kMXP), null);
+  }
+
+  /**
+   * @param gyro the NavX the swerve already has open
+   * @param lidarLocalizer corrects the position from lidar scans given to {@link #submitLidarScan}, null for none
+   */
+  public LocalizationSubsystem(
+    VisionSubsystem vision,
+    SwerveModule[] modules,
+    AHRS gyro,
+    LidarLocalizer lidarLocalizer
+  ) {
+    m_gyro = gyro;
     m_vision = vision;
+    m_lidarLocalizer = lidarLocalizer;
 
     m_frontLeftModule = modules[0];
     m_frontRightModule = modules[1];
@@ -64,8 +114,9 @@ public class LocalizationSubsystem extends SubsystemBase {
     // Creating my odometry object from the kinematics object and the initial wheel positions.
     // Here, our starting pose is 0 meters along the long end of the field and at the bottom
     // of the field along the short end, facing the opposing alliance wall.
-    this.m_odometry =
-      new SwerveDriveOdometry(
+    // A pose estimator is odometry that can also blend in measurements, like the lidar's
+    this.m_poseEstimator =
+      new SwerveDrivePoseEstimator(
         m_kinematics,
         m_gyro.getRotation2d(),
         getModulePositions(),
@@ -90,7 +141,7 @@ public class LocalizationSubsystem extends SubsystemBase {
    * @return a Position 2D object that tells the x, y and, angle of the robot in METERS and RADIANS using the Odometry Class
    */
   private Pose2d getOdometryPosition() {
-    return m_odometry.getPoseMeters();
+    return m_poseEstimator.getEstimatedPosition();
   }
 
   /**
@@ -99,6 +150,9 @@ public class LocalizationSubsystem extends SubsystemBase {
    */
   private Pose2d getVistionPosition() {
     VisionTarget target = m_vision.findBestTarget();
+    if (target == null) {
+      return null;
+    }
 
     int id = target.getID();
     Pose3d targetPos = aprilTagFieldLayout.getTagPose(id).isPresent() ? aprilTagFieldLayout.getTagPose(id).get() : null;
@@ -128,18 +182,100 @@ public class LocalizationSubsystem extends SubsystemBase {
     return robotPos;
   }
 
+  /**
+   * @apiNote for starting somewhere known, like the simulated robot's start
+   */
+  public void resetPosition(Pose2d pos) {
+    setOdomPosition(pos);
+  }
+
   /**
    * @apiNote This sets the odometry to whatever position we want it to 
    */
   private void setOdomPosition(Pose2d pos){
-    this.m_odometry.resetPosition(this.m_gyro.getRotation2d(), getModulePositions(), pos);
+    this.m_poseEstimator.resetPosition(this.m_gyro.getRotation2d(), getModulePositions(), pos);
   }
 
   /**
    * @apiNote this is needed bc according to the docs, "...you need to update the odometry position periodically..."
    */
   private void updateOdomPosition() {
-    this.m_odometry.update(this.m_gyro.getRotation2d(), getModulePositions());
+    this.m_poseEstimator.update(this.m_gyro.getRotation2d(), getModulePositions());
+  }
+
+  /**
+   * @apiNote stamps the scan with where we think the lidar was when the scan was taken and hands it to the lidar
+   * localizer to line up with the field walls. Does nothing without a localizer. The scan is copied, release it whenever
+   * @return false if there is no localizer or it is behind
+   */
+  public boolean submitLidarScan(LidarScan scan) {
+    if (m_lidarLocalizer == null) {
+      return false;
+    }
+
+    Pose2d lidarPose = getScanPosition(scan.getTimestampNanos())
+      .transformBy(m_robotToLidar);
+    scan.setPose(
+      lidarPose.getX(),
+      lidarPose.getY(),
+      lidarPose.getRotation().getRadians()
+    );
+    return m_lidarLocalizer.submit(scan);
+  }
+
+  /**
+   * @apiNote the estimate is from now, the scan is a sweep and a queue wait old. Odometry at the scan's time with the
+   * estimate's current correction on top (estimate minus odometry) puts it on the field without the motion since then
+   * or the jumps of the estimate
+   * @return where the robot was at the time, the current estimate if there is no odometry history
+   */
+  private Pose2d getScanPosition(long timestampNanos) {
+    Pose2d estimate = getOdometryPosition();
+    PoseHistory history = m_lidarLocalizer.getPoseHistory();
+    if (
+      history == null ||
+      !history.getPose(timestampNanos, m_scanOdometry) ||
+      !history.getPose(history.getNewestTimestampNanos(), m_newestOdometry)
+    ) {
+      return estimate;
+    }
+
+    Pose2d atScan = new Pose2d(
+      m_scanOdometry[0],
+      m_scanOdometry[1],
+      new Rotation2d(m_scanOdometry[2])
+    );
+    Pose2d newest = new Pose2d(
+      m_newestOdometry[0],
+      m_newestOdometry[1],
+      new Rotation2d(m_newestOdometry[2])
+    );
+    // how odometry says the robot moved from the newest pose back to the scan, in the newest pose's frame
+    return estimate.transformBy(atScan.minus(newest));
+  }
+
+  /**
+   * @apiNote a matched scan is a measurement of where the robot was when it was taken, the estimator
+   * replays the odometry since then on top of it
+   */
+  private void addLidarMeasurement(long timestampNanos, ScanMatch match) {
+    Pose2d robotPose = new Pose2d(
+      match.x,
+      match.y,
+      new Rotation2d(match.heading)
+    )
+      .transformBy(m_lidarToRobot);
+    double ageSeconds = (System.nanoTime() - timestampNanos) / 1e9;
+
+    m_poseEstimator.addVisionMeasurement(
+      robotPose,
+      Timer.getFPGATimestamp() - ageSeconds,
+      VecBuilder.fill(
+        MatchingConstants.kLidarStdDevMeters,
+        MatchingConstants.kLidarStdDevMeters,
+        MatchingConstants.kLidarStdDevRadians
+      )
+    );
   }
 
   /**
@@ -150,11 +286,15 @@ public class LocalizationSubsystem extends SubsystemBase {
   }
 
   /**
-   * @apiNote This uses the Odometry as the base for our localization, but if we detect an april tag we will use that data to reset our localization
+   * @apiNote This uses the Odometry as the base for our localization, corrected by lidar scan matches, but if we detect an april tag we will use that data to reset our localization
    */
   public void updatePosition() {
     updateOdomPosition();
 
+    if (m_lidarLocalizer != null) {
+      m_lidarLocalizer.drainMatches(m_addLidarMeasurement);
+    }
+
     position = this.getVistionPosition();
 
     if (position == null) {
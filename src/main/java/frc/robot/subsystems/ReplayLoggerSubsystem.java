@@ -1,13 +1,27 @@
 package frc.robot.subsystems;
 
+import edu.wpi.first.wpilibj.RobotController;
 import edu.wpi.first.wpilibj2.command.RunCommand;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.ReplayLoggerConstants;
 import frc.robot.inter.ReplayLoggerDevice;
-import java.io.DataOutputStream;
+import frc.robot.util.replay.AsyncReplayWriter;
+import frc.robot.util.replay.BackpressurePolicy;
+import frc.robot.util.replay.ReplayCodec;
+import frc.robot.util.replay.ReplayLogFormat;
+import frc.robot.util.replay.ReplayLogHeader;
+import frc.robot.util.replay.ReplayLogRate;
+import frc.robot.util.replay.ReplayStreamer;
+import frc.robot.util.replay.SampleBuffer;
+import frc.robot.util.replay.SegmentedLogStorage;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.List;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32C;
 
 /**
  * @author godbrigero
@@ -15,19 +29,29 @@ import java.util.List;
  */
 public class ReplayLoggerSubsystem extends SubsystemBase {
 
-  final double[][] deviceData;
+  final SampleBuffer[] deviceData;
+  final boolean[] hasData;
+  final ReplayLogRate[] rates;
+  final long[] nextDueTick;
+  final SampleBuffer[] lastWritten;
+  final ReplayLogHeader header;
   final String fileName;
   final ReplayLoggerDevice[] devices;
   final int ticksPerUpdate;
-  final DataOutputStream writer;
+  final WritableByteChannel output;
+  final AsyncReplayWriter asyncWriter;
 
-  int currentTicks = 0;
+  final CRC32C crc = new CRC32C();
+
+  ByteBuffer frameBuffer;
+  ReplayStreamer streamer;
+  long currentTick = 0;
   boolean state;
 
   /**
    * @param devices the interface of devices that you want to use
    * @param fileName the name of the file to write to
-   * @param ticksPerUpdate the ticks between writes to file (1 tick = 25ms)
+   * @param ticksPerUpdate a device without its own {@link ReplayLoggerDevice#getLogRate()} is written every this many ticks, 0 or 1 is every tick (1 tick = 25ms)
    * @throws IOException if no file is found with the name
    */
   public ReplayLoggerSubsystem(
@@ -35,13 +59,205 @@ public class ReplayLoggerSubsystem extends SubsystemBase {
     String fileName,
     int ticksPerUpdate
   ) throws IOException {
-    this.deviceData = new double[devices.length][];
+    this(devices, fileName, ticksPerUpdate, null);
+  }
+
+  /**
+   * @param devices the interface of devices that you want to use
+   * @param fileName the name of the file to write to
+   * @param ticksPerUpdate the default ticks between samples of a device, 0 or 1 is every tick (1 tick = 25ms)
+   * @param policy if not null the file gets written from a background thread and this decides what happens when it falls behind. If null everything is written on the scheduler thread and only synced to disk on {@link #close()}
+   * @throws IOException if no file is found with the name
+   */
+  public ReplayLoggerSubsystem(
+    ReplayLoggerDevice[] devices,
+    String fileName,
+    int ticksPerUpdate,
+    BackpressurePolicy policy
+  ) throws IOException {
+    this(devices, fileName, ticksPerUpdate, policy, buildHeader(devices));
+  }
+
+  ReplayLoggerSubsystem(
+    ReplayLoggerDevice[] devices,
+    String fileName,
+    int ticksPerUpdate,
+    BackpressurePolicy policy,
+    ReplayLogHeader header
+  ) throws IOException {
+    this(
+      devices,
+      fileName,
+      ticksPerUpdate,
+      policy,
+      header,
+      openSingleFile(fileName, header)
+    );
+  }
+
+  /**
+   * @apiNote logs into memory mapped segments in a directory instead of one file. Older logs are never
+   * overwritten, the oldest segments are only deleted when the disk budget in {@link ReplayLoggerConstants} is hit
+   * @param devices the interface of devices that you want to use
+   * @param logDirectory the directory the segments go in
+   * @param baseName the segments are named baseName.sequence.rseg
+   * @param ticksPerUpdate the default ticks between samples of a device, 0 or 1 is every tick (1 tick = 25ms)
+   * @param policy what happens when the background thread writing the segments falls behind. Required, rolling
+   * over to a new segment is too slow for the scheduler thread
+   * @throws IOException if the first segment can not be made
+   */
+  public ReplayLoggerSubsystem(
+    ReplayLoggerDevice[] devices,
+    File logDirectory,
+    String baseName,
+    int ticksPerUpdate,
+    BackpressurePolicy policy
+  ) throws IOException {
+    this(
+      devices,
+      logDirectory,
+      baseName,
+      ticksPerUpdate,
+      requirePolicy(policy),
+      buildHeader(devices)
+    );
+  }
+
+  ReplayLoggerSubsystem(
+    ReplayLoggerDevice[] devices,
+    File logDirectory,
+    String baseName,
+    int ticksPerUpdate,
+    BackpressurePolicy policy,
+    ReplayLogHeader header
+  ) throws IOException {
+    this(
+      devices,
+      baseName,
+      ticksPerUpdate,
+      policy,
+      header,
+      new SegmentedLogStorage(
+        logDirectory,
+        baseName,
+        ReplayLoggerConstants.kSegmentBytes,
+        ReplayLoggerConstants.kDiskBudgetBytes,
+        header
+      )
+    );
+  }
+
+  static BackpressurePolicy requirePolicy(BackpressurePolicy policy) {
+    if (policy == null) {
+      throw new IllegalArgumentException(
+        "Segmented logs have to be written from the async writer"
+      );
+    }
+
+    return policy;
+  }
+
+  /**
+   * @param output where the log goes, the header must already be in it
+   */
+  ReplayLoggerSubsystem(
+    ReplayLoggerDevice[] devices,
+    String fileName,
+    int ticksPerUpdate,
+    BackpressurePolicy policy,
+    WritableByteChannel output
+  ) {
+    this(
+      devices,
+      fileName,
+      ticksPerUpdate,
+      policy,
+      buildHeader(devices),
+      output
+    );
+  }
+
+  /**
+   * @param header what is in output, records are encoded with its codecs so it has to be the same instance
+   * @param output where the log goes, the header must already be in it
+   */
+  ReplayLoggerSubsystem(
+    ReplayLoggerDevice[] devices,
+    String fileName,
+    int ticksPerUpdate,
+    BackpressurePolicy policy,
+    ReplayLogHeader header,
+    WritableByteChannel output
+  ) {
+    this.deviceData = new SampleBuffer[devices.length];
+    for (int i = 0; i < devices.length; i++) {
+      this.deviceData[i] = new SampleBuffer();
+    }
+
+    this.hasData = new boolean[devices.length];
+    this.rates = new ReplayLogRate[devices.length];
+    this.nextDueTick = new long[devices.length];
+    this.lastWritten = new SampleBuffer[devices.length];
+    for (int i = 0; i < devices.length; i++) {
+      ReplayLogRate rate = devices[i].getLogRate();
+      this.rates[i] =
+        rate != null
+          ? rate
+          : ReplayLogRate.everyNTicks(Math.max(ticksPerUpdate, 1));
+      if (this.rates[i].isChangeOnly()) {
+        this.lastWritten[i] = new SampleBuffer();
+      }
+    }
+
+    this.header = header;
     this.fileName = fileName;
     this.devices = devices;
 
     this.setDefaultCommand(new RunCommand(() -> tick25Ms(), this));
     this.ticksPerUpdate = ticksPerUpdate;
 
+    this.frameBuffer =
+      ByteBuffer.allocate(ReplayLoggerConstants.kInitialFrameBytes);
+
+    if (policy == null) {
+      this.output = output;
+      this.asyncWriter = null;
+    } else {
+      this.output = null;
+      this.asyncWriter =
+        new AsyncReplayWriter(
+          output,
+          ReplayLoggerConstants.kRingCapacity,
+          ReplayLoggerConstants.kInitialFrameBytes,
+          ReplayLoggerConstants.kWriterBlockBytes,
+          ReplayLoggerConstants.kWriterFlushIntervalMs,
+          ReplayLoggerConstants.kSyncIntervalMs,
+          policy
+        );
+    }
+  }
+
+  static ReplayLogHeader buildHeader(ReplayLoggerDevice[] devices) {
+    String[] deviceNames = new String[devices.length];
+    byte[] deviceTypes = new byte[devices.length];
+    ReplayCodec[] deviceCodecs = new ReplayCodec[devices.length];
+    for (int i = 0; i < devices.length; i++) {
+      String name = devices[i].getName();
+      deviceNames[i] = name != null ? name : "device" + i;
+      deviceTypes[i] = ReplayLogFormat.kTypeDoubleArray;
+      deviceCodecs[i] = devices[i].getCodec();
+    }
+
+    return new ReplayLogHeader(deviceNames, deviceTypes, deviceCodecs);
+  }
+
+  /**
+   * @apiNote replaces any file with the same name and writes the header into it
+   */
+  static WritableByteChannel openSingleFile(
+    String fileName,
+    ReplayLogHeader header
+  ) throws IOException {
     File file = new File(fileName);
     if (!file.exists()) {
       file.createNewFile();
@@ -50,7 +266,13 @@ public class ReplayLoggerSubsystem extends SubsystemBase {
       file.createNewFile();
     }
 
-    this.writer = new DataOutputStream(new FileOutputStream(file));
+    FileChannel channel = new FileOutputStream(file).getChannel();
+    ByteBuffer headerBuffer = header.toByteBuffer();
+    while (headerBuffer.hasRemaining()) {
+      channel.write(headerBuffer);
+    }
+
+    return channel;
   }
 
   /**
@@ -61,61 +283,185 @@ public class ReplayLoggerSubsystem extends SubsystemBase {
   }
 
   /**
-   * @description tick each 25ms also does all the writing
+   * @description tick each 25ms also does all the writing. Only the devices that are due this tick get sampled
    */
   public void tick25Ms() {
     if (!state) return;
 
-    if (currentTicks >= ticksPerUpdate) {
-      currentTicks = 0;
-    } else {
-      currentTicks++;
-      return;
-    }
-
-    log();
+    log(false);
+    currentTick++;
   }
 
   /**
-   * @apiNote force logs even if there is no info
+   * @apiNote force logs even if there is no info, every device is sampled and written no matter its rate
    */
   public void forceLog() {
-    log();
+    log(true);
   }
 
   /**
-   * @apiNote does the logging there so that forceLog can exist
+   * @apiNote does the logging there so that forceLog can exist. Every device with new data becomes
+   * one record and the whole tick goes out as one write so a dropped frame never leaves half a tick
+   * @param force ignore the rates of the devices
    */
-  void log() {
+  void log(boolean force) {
+    long now = RobotController.getFPGATime();
+    int size = 0;
     for (int i = 0; i < devices.length; i++) {
-      double[] dataInit = devices[i].getData();
-      if (dataInit != null) {
-        deviceData[i] = new double[dataInit.length];
-        for (int j = 0; j < dataInit.length; j++) {
-          deviceData[i][j] = dataInit[j];
-        }
+      hasData[i] = false;
+      if (!force && currentTick < nextDueTick[i]) {
+        continue;
+      }
 
+      nextDueTick[i] = currentTick + rates[i].periodTicks;
+      if (!devices[i].fillData(deviceData[i])) {
         continue;
       }
 
-      List<Double> dataInitList = devices[i].getData(false);
-      if (dataInitList != null) {
-        deviceData[i] = new double[dataInitList.size()];
-        for (int j = 0; j < dataInitList.size(); j++) {
-          deviceData[i][j] = dataInitList.get(j);
+      if (rates[i].isChangeOnly()) {
+        if (!force && !rates[i].hasChanged(lastWritten[i], deviceData[i])) {
+          continue;
         }
+
+        lastWritten[i].set(deviceData[i].array(), deviceData[i].size());
+      }
+
+      hasData[i] = true;
+      size +=
+        ReplayLogFormat.maxRecordSize(deviceData[i], header.deviceCodecs[i]);
+    }
+
+    if (size == 0) {
+      return;
+    }
+
+    size += ReplayLogFormat.kBlockHeaderBytes;
+    if (frameBuffer.capacity() < size) {
+      frameBuffer = ByteBuffer.allocate(size);
+    }
+
+    frameBuffer.clear();
+    int blockStart = ReplayLogFormat.beginBlock(frameBuffer);
+    for (int i = 0; i < devices.length; i++) {
+      if (hasData[i]) {
+        ReplayLogFormat.putRecord(
+          frameBuffer,
+          now,
+          i,
+          deviceData[i],
+          header.deviceCodecs[i]
+        );
       }
     }
 
+    ReplayLogFormat.finishBlock(frameBuffer, blockStart, crc);
+    frameBuffer.flip();
+
+    if (streamer != null) {
+      streamer.offer(frameBuffer);
+      frameBuffer.rewind();
+    }
+
+    if (asyncWriter != null) {
+      asyncWriter.offer(frameBuffer);
+      return;
+    }
+
     try {
-      for (double[] scans : deviceData) {
-        writer.writeInt(scans.length);
-        for (int j = 0; j < scans.length; j++) {
-          writer.writeDouble(scans[j]);
-        }
+      // no periodic sync here, it can take a few ms on the roboRIO. The async writer syncs on its own thread
+      while (frameBuffer.hasRemaining()) {
+        output.write(frameBuffer);
       }
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
+
+  /**
+   * @apiNote also streams everything that gets logged to viewers that connect over tcp. Replaces any stream already running
+   * @param port the port to listen on, {@link ReplayLoggerConstants#kStreamPort} on the robot
+   * @return the streamer, for its port and counters
+   * @throws IOException if the port can not be bound
+   */
+  public ReplayStreamer startStreaming(int port) throws IOException {
+    setStreamer(
+      ReplayStreamer.tcp(
+        header,
+        port,
+        ReplayLoggerConstants.kStreamRingCapacity,
+        ReplayLoggerConstants.kInitialFrameBytes,
+        ReplayLoggerConstants.kStreamMaxClients
+      )
+    );
+    return streamer;
+  }
+
+  /**
+   * @apiNote also streams everything that gets logged as udp datagrams to one address. Replaces any stream already running
+   * @param target where the datagrams go (the driver station)
+   * @return the streamer, for its counters
+   * @throws IOException if the socket can not be opened
+   */
+  public ReplayStreamer startStreaming(InetSocketAddress target)
+    throws IOException {
+    setStreamer(
+      ReplayStreamer.udp(
+        header,
+        target,
+        ReplayLoggerConstants.kStreamRingCapacity,
+        ReplayLoggerConstants.kInitialFrameBytes,
+        ReplayLoggerConstants.kStreamHeaderIntervalMs
+      )
+    );
+    return streamer;
+  }
+
+  /**
+   * @apiNote stops streaming, the log file is not affected
+   */
+  public void stopStreaming() throws IOException {
+    setStreamer(null);
+  }
+
+  void setStreamer(ReplayStreamer streamer) throws IOException {
+    ReplayStreamer old = this.streamer;
+    this.streamer = streamer;
+    if (old != null) {
+      old.close();
+    }
+  }
+
+  /**
+   * @return the header written at the start of the file
+   */
+  public ReplayLogHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * @apiNote writes out everything that is still waiting and closes the file
+   */
+  public void close() throws IOException {
+    stopStreaming();
+    if (asyncWriter != null) {
+      asyncWriter.close();
+    } else {
+      AsyncReplayWriter.sync(output);
+      output.close();
+    }
+  }
+
+  /**
+   * @return the amount of frames (one per logged tick) thrown away because the writer thread fell behind (always 0 when not async)
+   */
+  public long getDroppedFrames() {
+    return asyncWriter == null ? 0 : asyncWriter.getDroppedFrames();
+  }
+
+  /**
+   * @return the amount of frames handed to the writer thread (always 0 when not async)
+   */
+  public long getWrittenFrames() {
+    return asyncWriter == null ? 0 : asyncWriter.getWrittenFrames();
+  }
 }
@@ -23,6 +23,9 @@ public class SwerveModule {
   //the driving electronics
   private CANSparkMax m_driveMotor;
   private RelativeEncoder m_driveRelativeEncoder;
+  private SparkPIDController m_drivePIDController;
+  //the last wheel speed asked for before flipping, in m/s, for the acceleration feedforward
+  private double lastWheelSpeed;
 
   //the turning electronics
   private CANSparkMax m_turnMotor;
@@ -39,8 +42,7 @@ public class SwerveModule {
   kDriveP = SwerveConstants.kDriveP,
   kDriveI = SwerveConstants.kDriveI,
   kDriveD = SwerveConstants.kDriveD,
-  kDriveIZ = SwerveConstants.kDriveIZ,
-  kDriveFF = SwerveConstants.kDriveFF;
+  kDriveIZ = SwerveConstants.kDriveIZ;
 
   public double
   kTurnP = SwerveConstants.kTurnP,
@@ -49,7 +51,7 @@ public class SwerveModule {
   kTurnIZ = SwerveConstants.kTurnIZ,
   kTurnFF = SwerveConstants.kTurnFF;
 
-  public GenericEntry sb_kDriveP, sb_kDriveI, sb_kDriveD, sb_kDriveIZ, sb_kDriveFF, sb_kTurnP, sb_kTurnI, sb_kTurnD, sb_kTurnIZ, sb_kTurnFF, sb_speed, sb_angle, sb_m_turnRelativeEncoderAngle, sb_turnCANcoderAngle;
+  public GenericEntry sb_kDriveP, sb_kDriveI, sb_kDriveD, sb_kDriveIZ, sb_kTurnP, sb_kTurnI, sb_kTurnD, sb_kTurnIZ, sb_kTurnFF, sb_speed, sb_angle, sb_velocity, sb_m_turnRelativeEncoderAngle, sb_turnCANcoderAngle;
 
   public SwerveModule(
     int driveMotorChannel,
@@ -64,6 +66,7 @@ public class SwerveModule {
     //setting up the drive motor controller
     m_driveMotor = new CANSparkMax(driveMotorChannel, MotorType.kBrushless);
     m_driveRelativeEncoder = m_driveMotor.getEncoder();
+    m_drivePIDController = m_driveMotor.getPIDController();
 
     //setting up the turning motor controller and encoders
     m_turnMotor = new CANSparkMax(turnMotorChannel, MotorType.kBrushless);
@@ -85,6 +88,23 @@ public class SwerveModule {
     m_driveMotor.restoreFactoryDefaults();
     m_driveMotor.setSmartCurrentLimit(SwerveConstants.kDriveCurrentLimit);
     m_driveMotor.setInverted(driveMotorReversed);
+    //the encoder reads meters and m/s so the PID works in the units the kinematics do
+    m_driveRelativeEncoder.setPositionConversionFactor(
+      SwerveConstants.kDrivePositionConversionFactor
+    );
+    m_driveRelativeEncoder.setVelocityConversionFactor(
+      SwerveConstants.kDriveVelocityConversionFactor
+    );
+    m_drivePIDController.setP(kDriveP);
+    m_drivePIDController.setI(kDriveI);
+    m_drivePIDController.setD(kDriveD);
+    m_drivePIDController.setIZone(kDriveIZ);
+    //the velocity feedforward is the kS/kV/kA arbFF in setVelocity, the SPARK's own would count it twice
+    m_drivePIDController.setFF(0);
+    m_drivePIDController.setOutputRange(
+      SwerveConstants.kDriveMinOutput,
+      SwerveConstants.kDriveMaxOutput
+    );
 
     //setting up the turn motor
     m_turnMotor.restoreFactoryDefaults();
@@ -131,33 +151,117 @@ public class SwerveModule {
    * @param angle The desired angle. Domain: (-0.5, 0.5]
    */
   public void drive(double speed, double angle, double tempSpeedMultiplier) {
-    if (SwerveConstants.kOptimizeAngles) {
-      //if the opposite direction is closer to the current angle, flip the angle and the speed
-      double[] optimizedState = optimize(
-        speed,
-        angle,
-        m_turnRelativeEncoder.getPosition()
-      );
-      speed = optimizedState[0];
-      angle = optimizedState[1];
+    drive(speed, angle, 0, tempSpeedMultiplier);
+  }
+
+  /**
+   * Sends the speed and angle commands to the swerve module with customizable speed, plus how fast the angle is moving
+   * so the turn motor can be fed forward instead of lagging behind while the robot spins.
+   * @param speed The desired speed. Domain: [-1, 1]
+   * @param angle The desired angle. Domain: (-0.5, 0.5]
+   * @param angleVelocity How fast the desired angle is changing, in turns per second clockwise
+   */
+  public void drive(
+    double speed,
+    double angle,
+    double angleVelocity,
+    double tempSpeedMultiplier
+  ) {
+    //the wheel's acceleration along the asked for angle, before flipping makes it look like a reversal. Clamped to what
+    //the setpoint generator allows so a jump in the angle asked for does not spike the feedforward
+    double wheelSpeed =
+      speed * tempSpeedMultiplier * SwerveConstants.kMaxSpeedMetersPerSecond;
+    double acceleration = Math.max(
+      -SwerveConstants.kMaxAccelerationMetersPerSecondSquared,
+      Math.min(
+        SwerveConstants.kMaxAccelerationMetersPerSecondSquared,
+        (wheelSpeed - lastWheelSpeed) / SwerveConstants.kLoopPeriodSeconds
+      )
+    );
+    lastWheelSpeed = wheelSpeed;
+
+    //if the opposite direction is closer to the current angle, flip the angle and the speed
+    if (
+      SwerveConstants.kOptimizeAngles &&
+      shouldFlip(angle, m_turnRelativeEncoder.getPosition())
+    ) {
+      speed = -speed;
+      wheelSpeed = -wheelSpeed;
+      acceleration = -acceleration;
+      angle = MathFunc.putWithinHalfToHalf(angle + 0.5);
     }
 
     //sending the motor speed to the driving motor controller
-    m_driveMotor.set(speed * tempSpeedMultiplier);
+    if (SwerveConstants.kClosedLoopDrive) {
+      setVelocity(wheelSpeed, acceleration);
+    } else {
+      m_driveMotor.set(speed * tempSpeedMultiplier);
+    }
 
     //sending the motor angle to the turning motor controller
-    m_turnPIDController.setReference(angle, CANSparkMax.ControlType.kPosition);
+    m_turnPIDController.setReference(
+      angle,
+      CANSparkMax.ControlType.kPosition,
+      0,
+      angleVelocity * SwerveConstants.kTurnVelocityFF,
+      SparkPIDController.ArbFFUnits.kVoltage
+    );
 
     //updates the Shuffleboard tab
     updateShuffleboardTab(speed, angle);
   }
 
   /**
-   * @return The current position of the module and angle in meters and radians.
+   * Runs the drive motor at a velocity with the SPARK MAX's PID, with a kS/kV/kA feedforward so it holds the
+   * same speed whatever the battery is at.
+   * @param metersPerSecond The desired wheel speed
+   * @param acceleration How fast the desired wheel speed is changing, in m/s^2 the same way as metersPerSecond
+   */
+  private void setVelocity(double metersPerSecond, double acceleration) {
+    double feedforward =
+      SwerveConstants.kDriveS * Math.signum(metersPerSecond) +
+      SwerveConstants.kDriveV * metersPerSecond +
+      SwerveConstants.kDriveA * acceleration;
+    m_drivePIDController.setReference(
+      metersPerSecond,
+      CANSparkMax.ControlType.kVelocity,
+      0,
+      feedforward,
+      SparkPIDController.ArbFFUnits.kVoltage
+    );
+  }
+
+  /**
+   * @return The current position of the module and angle in meters and radians, counter clockwise for WPILib.
    */
   public SwerveModulePosition getPosition() {
+    return toModulePosition(
+      m_driveRelativeEncoder.getPosition(),
+      m_turnRelativeEncoder.getPosition()
+    );
+  }
+
+  /**
+   * @apiNote our module angles go clockwise (x right, y forward), WPILib's kinematics and odometry go counter clockwise
+   * @param meters How far the wheel has rolled.
+   * @param turns The module angle in turns, clockwise.
+   * @return The position WPILib expects.
+   */
+  public static SwerveModulePosition toModulePosition(
+    double meters,
+    double turns
+  ) {
     return new SwerveModulePosition(
-        m_driveRelativeEncoder.getPosition() * SwerveConstants.kWheelDiameterMeters, new Rotation2d(m_turnRelativeEncoder.getPosition() * 2 * Math.PI));
+      meters,
+      new Rotation2d(-turns * 2 * Math.PI)
+    );
+  }
+
+  /**
+   * @return How fast the wheel is rolling, in meters per second.
+   */
+  public double getVelocity() {
+    return m_driveRelativeEncoder.getVelocity();
   }
 
   public void reset() {
@@ -166,23 +270,16 @@ public class SwerveModule {
   }
 
   /**
-   * If the opposite angle is closer to the desired one, returns a reversed speed and a flipped angle.
+   * Checks if the opposite angle is closer to the desired one, in which case the speed should be reversed and the angle flipped.
    * 
-   * @param speed the speed the drive motor should be running at
    * @param angle the angle the turn motor should reach
    * @param encoderAngle the current turn encoder's angle
-   * @return [The optimized speed, The optimized angle]
+   * @return true if the module should drive backwards at the flipped angle
    */
-  private double[] optimize(double speed, double angle, double encoderAngle) {
+  private boolean shouldFlip(double angle, double encoderAngle) {
     encoderAngle = MathFunc.putWithinHalfToHalf(encoderAngle);
-    if (
-      Math.abs(angle - encoderAngle) < 0.25 ||
-      Math.abs(angle - encoderAngle) > 0.75
-    ) {
-      return new double[] { speed, angle };
-    }
-
-    return new double[] { -speed, MathFunc.putWithinHalfToHalf(angle + 0.5) };
+    double difference = Math.abs(angle - encoderAngle);
+    return difference >= 0.25 && difference <= 0.75;
   }
 
   private void createShuffleboardTab(String abbreviation) {
@@ -199,7 +296,6 @@ public class SwerveModule {
     sb_kDriveI = sb_tab.add("kDriveI", kDriveI).getEntry();
     sb_kDriveD = sb_tab.add("kDriveD", kDriveD).getEntry();
     sb_kDriveIZ = sb_tab.add("kDriveIZ", kDriveIZ).getEntry();
-    sb_kDriveFF = sb_tab.add("kDriveFF", kDriveFF).getEntry();
 
     //creates the modifiable entries for the turning PID values
     sb_kTurnP = sb_tab.add("kTurnP", kTurnP).getEntry();
@@ -211,6 +307,7 @@ public class SwerveModule {
     //for the calculated speed and angle of this swerve module on this iteration
     sb_speed = sb_tab.add("speed", 0).getEntry();
     sb_angle = sb_tab.add("angle", 0).getEntry();
+    sb_velocity = sb_tab.add("velocity", 0).getEntry();
 
     //for the reported angles from the encoders with the sparkMax
     sb_m_turnRelativeEncoderAngle = sb_tab.add("turnEncoderAngle", 0).getEntry();
@@ -220,6 +317,7 @@ public class SwerveModule {
   private void updateShuffleboardTab(double speed, double angle) {
     sb_speed.setDouble(speed);
     sb_angle.setDouble(angle);
+    sb_velocity.setDouble(getVelocity());
 
     sb_m_turnRelativeEncoderAngle.setDouble(m_turnRelativeEncoder.getPosition());
     sb_turnCANcoderAngle.setDouble(
@@ -230,6 +328,23 @@ public class SwerveModule {
   private void updatePIDFromShuffleboard() {
     //this method should only be used to tune PID; it should not be used during competition
 
+    if (sb_kDriveP.getDouble(0) != kDriveP) {
+      kDriveP = sb_kDriveP.getDouble(0);
+      m_drivePIDController.setP(kDriveP);
+    }
+    if (sb_kDriveI.getDouble(0) != kDriveI) {
+      kDriveI = sb_kDriveI.getDouble(0);
+      m_drivePIDController.setI(kDriveI);
+    }
+    if (sb_kDriveD.getDouble(0) != kDriveD) {
+      kDriveD = sb_kDriveD.getDouble(0);
+      m_drivePIDController.setD(kDriveD);
+    }
+    if (sb_kDriveIZ.getDouble(0) != kDriveIZ) {
+      kDriveIZ = sb_kDriveIZ.getDouble(0);
+      m_drivePIDController.setIZone(kDriveIZ);
+    }
+
     if (sb_kTurnP.getDouble(0) != kTurnP) {
       kTurnP = sb_kTurnP.getDouble(0);
       m_turnPIDController.setP(kTurnP);
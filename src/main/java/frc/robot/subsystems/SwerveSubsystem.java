@@ -3,14 +3,27 @@ package frc.robot.subsystems;
 import com.kauailabs.navx.frc.AHRS;
 
 import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.networktables.GenericEntry;
 import edu.wpi.first.wpilibj.I2C;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.ArmConstants;
+import frc.robot.Constants.LidarConstants;
 import frc.robot.Constants.SwerveConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.inter.ArmInterface;
 import frc.robot.util.MathFunc;
+import frc.robot.util.lidar.PoseHistory;
+import frc.robot.util.lidar.SectorMap;
+import frc.robot.util.swerve.SwerveKinematics;
+import frc.robot.util.swerve.SwerveSetpointGenerator;
+import frc.robot.util.swerve.TipLimiter;
 
 public class SwerveSubsystem extends SubsystemBase {
 
@@ -66,10 +79,30 @@ public class SwerveSubsystem extends SubsystemBase {
   );
   double currentSpeedMultiplier = SwerveConstants.kDefaultSpeedMultiplier;
 
+  //plain wheel odometry, kept with timestamps so lidar scans can be de-skewed
+  SwerveDriveOdometry m_odometry;
+  final PoseHistory m_poseHistory = new PoseHistory(
+    LidarConstants.kPoseHistoryCapacity
+  );
+
+  //the module geometry, worked out once. Modules are front left, front right, rear left, rear right
+  final SwerveKinematics m_kinematics = SwerveKinematics.fromConstants();
+  //limits how fast the chassis and the module angles change between loops
+  final SwerveSetpointGenerator m_setpointGenerator = new SwerveSetpointGenerator(
+    m_kinematics
+  );
+
+  //lowers the acceleration limit when the arm is up or the robot is already leaning, null arm counts as flat
+  final TipLimiter m_tipLimiter = new TipLimiter();
+  ArmInterface m_arm;
+
+  //the closest obstacle the lidar sees around the robot, drive() slows down for it
+  final SectorMap m_sectorMap = new SectorMap();
+
   //the Shuffleboard tab and entries
   private String sb_name = "SwerveSubsystem";
   private ShuffleboardTab sb_tab;
-  public GenericEntry sb_frontLeftSpeed, sb_frontRightSpeed, sb_rearLeftSpeed, sb_rearRightSpeed, sb_frontLeftAngle, sb_frontRightAngle, sb_rearLeftAngle, sb_rearRightAngle, sb_NAVXPitch, sb_NAVXYaw, sb_NAVXRoll; //yaw appears to be the axis for horizontal rotation, (-180, 180)
+  public GenericEntry sb_frontLeftSpeed, sb_frontRightSpeed, sb_rearLeftSpeed, sb_rearRightSpeed, sb_frontLeftAngle, sb_frontRightAngle, sb_rearLeftAngle, sb_rearRightAngle, sb_NAVXPitch, sb_NAVXYaw, sb_NAVXRoll, sb_tipAccelerationLimit; //yaw appears to be the axis for horizontal rotation, (-180, 180)
 
   /**
    * Constructor method for SwerveSubsystem
@@ -78,7 +111,87 @@ public class SwerveSubsystem extends SubsystemBase {
     createShuffleboardTab();
 
     m_directionPIDController.enableContinuousInput(-0.5, 0.5);
-    
+
+    m_odometry =
+      new SwerveDriveOdometry(
+        createOdometryKinematics(),
+        m_gyro.getRotation2d(),
+        getSwerveModulePositions()
+      );
+  }
+
+  /**
+   * @return WPILib's kinematics for the odometry, x forward and y left. Give it {@link SwerveModule#getPosition()}s,
+   * they are turned counter clockwise for it
+   */
+  public static SwerveDriveKinematics createOdometryKinematics() {
+    final double L = SwerveConstants.kDriveBaseLength / 2;
+    final double W = SwerveConstants.kDriveBaseWidth / 2;
+    return new SwerveDriveKinematics(
+      new Translation2d(L, W),
+      new Translation2d(L, -W),
+      new Translation2d(-L, W),
+      new Translation2d(-L, -W)
+    );
+  }
+
+  /**
+   * @apiNote updates the odometry and records where it says we are, every loop
+   */
+  @Override
+  public void periodic() {
+    Pose2d pose = m_odometry.update(
+      m_gyro.getRotation2d(),
+      getSwerveModulePositions()
+    );
+    m_poseHistory.record(
+      System.nanoTime(),
+      pose.getX(),
+      pose.getY(),
+      pose.getRotation().getRadians()
+    );
+
+    m_tipLimiter.update(
+      m_gyro.getPitch(),
+      m_gyro.getRoll(),
+      m_arm != null
+        ? m_arm.getCurArmPosition()
+        : ArmConstants.kArmFlatPosition
+    );
+  }
+
+  /**
+   * @apiNote lets the acceleration limit know how high the arm is, without it the arm always counts as flat
+   */
+  public void setArm(ArmInterface arm) {
+    m_arm = arm;
+  }
+
+  /**
+   * @return the four modules, front left, front right, rear left, rear right
+   */
+  public SwerveModule[] getModules() {
+    return new SwerveModule[] {
+      m_frontLeftSwerveModule,
+      m_frontRightSwerveModule,
+      m_rearLeftSwerveModule,
+      m_rearRightSwerveModule,
+    };
+  }
+
+  /**
+   * @return the NavX, so nothing else has to open a second one on the same port
+   */
+  public AHRS getGyro() {
+    return m_gyro;
+  }
+
+  /**
+   * @return the last few seconds of wheel odometry, for de-skewing lidar scans. Only the motion in it means anything,
+   * it starts wherever the robot was turned on
+   */
+  public PoseHistory getPoseHistory() {
+    return m_poseHistory;
   }
 
   /**
@@ -133,74 +246,73 @@ public class SwerveSubsystem extends SubsystemBase {
    * @param tempSpeedMultiplier The final speed to multiply all of the outputs by
    */
   public void drive(double x, double y, double r, double tempSpeedMultiplier) {
-    //adjusting for field relativity if necessary
+    //adjusting for field relativity if necessary, turning the stick's direction back by the gyro angle
     if (SwerveConstants.kFieldRelative) {
-      double gyroAngle = m_gyro.getAngle() / 360.0; //this gets the angle and puts it from -1/2 to 1/2
-      double nonFieldRelativeAngle = Math.atan2(x, y) / (2 * Math.PI); //again, the return value is from -1/2 to 1/2
-      double fieldRelativeAngle = nonFieldRelativeAngle - gyroAngle;
-
-      double magnitude = Math.sqrt((x * x) + (y * y));
-
-      x = Math.sin(fieldRelativeAngle * 2 * Math.PI) * magnitude;
-      y = Math.cos(fieldRelativeAngle * 2 * Math.PI) * magnitude;
+      double gyroAngle = Math.toRadians(m_gyro.getAngle());
+      double cos = Math.cos(gyroAngle);
+      double sin = Math.sin(gyroAngle);
+      double fieldX = x;
+      x = fieldX * cos - y * sin;
+      y = y * cos + fieldX * sin;
     }
 
-    //dimensions required for doing math
-    final double L = SwerveConstants.kDriveBaseLength / 2;
-    final double W = SwerveConstants.kDriveBaseWidth / 2;
-    final double R = Math.sqrt((L * L) + (W * W));
-
-    //doing some math
-    double a = x - r * (L / R);
-    double b = x + r * (L / R);
-    double c = y - r * (W / R);
-    double d = y + r * (W / R);
-
-    //calculates the wheel speeds
-    double frontLeftSpeed = Math.sqrt((b * b) + (d * d));
-    double frontRightSpeed = Math.sqrt((b * b) + (c * c));
-    double rearLeftSpeed = Math.sqrt((a * a) + (d * d));
-    double rearRightSpeed = Math.sqrt((a * a) + (c * c));
-
-    //Because wheel outputs should be from -1 to 1, desaturates all of the wheels speeds if any
-    //of them exceed +-1, while maintaining the ratio between the wheels.
-    double denominator = MathFunc.max(
-      Math.abs(frontLeftSpeed),
-      Math.abs(frontRightSpeed),
-      Math.abs(rearLeftSpeed),
-      Math.abs(rearRightSpeed),
-      1.0
+    //slowing the translation down if the lidar sees something closer than we could stop for, x is to the right
+    double speed =
+      Math.min(Math.sqrt((x * x) + (y * y)), 1) *
+      tempSpeedMultiplier *
+      SwerveConstants.kMaxSpeedMetersPerSecond;
+    double speedScale = m_sectorMap.getSpeedScale(
+      Math.atan2(-x, y),
+      speed,
+      System.nanoTime()
     );
-    frontLeftSpeed = frontLeftSpeed / denominator;
-    frontRightSpeed = frontRightSpeed / denominator;
-    rearLeftSpeed = rearLeftSpeed / denominator;
-    rearRightSpeed = rearRightSpeed / denominator;
-
-    //calculates the wheel angles, -1/2 to 1/2, with 0 representing forward
-    double frontLeftAngle = Math.atan2(b, d) / Math.PI / 2;
-    double frontRightAngle = Math.atan2(b, c) / Math.PI / 2;
-    double rearLeftAngle = Math.atan2(a, d) / Math.PI / 2;
-    double rearRightAngle = Math.atan2(a, c) / Math.PI / 2;
+    x *= speedScale;
+    y *= speedScale;
+
+    //moves the setpoint toward what was asked as fast as the modules can follow without tipping over, then calculates the wheel speeds and
+    //angles (-1/2 to 1/2, with 0 representing forward), desaturated so none exceed 1
+    double metersPerSecond =
+      tempSpeedMultiplier * SwerveConstants.kMaxSpeedMetersPerSecond;
+    m_setpointGenerator.generate(
+      x,
+      y,
+      r,
+      m_tipLimiter.getLimit() / metersPerSecond,
+      metersPerSecond,
+      SwerveConstants.kLoopPeriodSeconds
+    );
+    double frontLeftSpeed = m_setpointGenerator.getSpeed(0);
+    double frontRightSpeed = m_setpointGenerator.getSpeed(1);
+    double rearLeftSpeed = m_setpointGenerator.getSpeed(2);
+    double rearRightSpeed = m_setpointGenerator.getSpeed(3);
+    double frontLeftAngle = m_setpointGenerator.getAngle(0);
+    double frontRightAngle = m_setpointGenerator.getAngle(1);
+    double rearLeftAngle = m_setpointGenerator.getAngle(2);
+    double rearRightAngle = m_setpointGenerator.getAngle(3);
 
     //sending the wheel and angle speeds to the motor controllers
     m_frontLeftSwerveModule.drive(
       frontLeftSpeed,
       frontLeftAngle,
+      m_setpointGenerator.getAngleVelocity(0),
       tempSpeedMultiplier
     );
     m_frontRightSwerveModule.drive(
       frontRightSpeed,
       frontRightAngle,
+      m_setpointGenerator.getAngleVelocity(1),
       tempSpeedMultiplier
     );
     m_rearLeftSwerveModule.drive(
       rearLeftSpeed,
       rearLeftAngle,
+      m_setpointGenerator.getAngleVelocity(2),
       tempSpeedMultiplier
     );
     m_rearRightSwerveModule.drive(
       rearRightSpeed,
       rearRightAngle,
+      m_setpointGenerator.getAngleVelocity(3),
       tempSpeedMultiplier
     );
 
@@ -216,10 +328,28 @@ public class SwerveSubsystem extends SubsystemBase {
     );
   }
 
+  /**
+   * @apiNote call with every new lidar scan, on the robot loop. Does not keep the scan
+   */
+  public void updateObstacles(LidarScan scan) {
+    m_sectorMap.update(scan);
+  }
+
   public void setSpeedMultiplier(double speedMultiplier) {
     currentSpeedMultiplier = speedMultiplier;
   }
 
+  /**
+   * @apiNote puts the odometry (and so the pose history) at a pose, the wheels and gyro stay where they are
+   */
+  public void resetOdometry(Pose2d pose) {
+    m_odometry.resetPosition(
+      m_gyro.getRotation2d(),
+      getSwerveModulePositions(),
+      pose
+    );
+  }
+
   public void reset() {
     m_gyro.reset();
 
@@ -227,6 +357,14 @@ public class SwerveSubsystem extends SubsystemBase {
     m_frontRightSwerveModule.reset();
     m_rearLeftSwerveModule.reset();
     m_rearRightSwerveModule.reset();
+    m_setpointGenerator.reset();
+
+    //the gyro and the encoders jumped, the robot did not
+    m_odometry.resetPosition(
+      m_gyro.getRotation2d(),
+      getSwerveModulePositions(),
+      m_odometry.getPoseMeters()
+    );
   }
 
   private void createShuffleboardTab() {
@@ -245,6 +383,7 @@ public class SwerveSubsystem extends SubsystemBase {
     sb_NAVXPitch = sb_tab.add("NAVXPitch", 0).getEntry();
     sb_NAVXYaw = sb_tab.add("NAVXYaw", 0).getEntry();
     sb_NAVXRoll = sb_tab.add("NAVXAngle", 0).getEntry();
+    sb_tipAccelerationLimit = sb_tab.add("tipAccelerationLimit", 0).getEntry();
   }
 
   private void updateShuffleboardTab(
@@ -270,6 +409,7 @@ public class SwerveSubsystem extends SubsystemBase {
     sb_NAVXPitch.setDouble(m_gyro.getPitch());
     sb_NAVXYaw.setDouble(m_gyro.getYaw());
     sb_NAVXRoll.setDouble(m_gyro.getRoll());
+    sb_tipAccelerationLimit.setDouble(m_tipLimiter.getLimit());
   }
 
   public SwerveModulePosition[] getSwerveModulePositions() {
@@ -0,0 +1,212 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.FieldConstants;
+import frc.robot.Constants.MatchingConstants;
+
+/**
+ * @author godbrigero
+ * @purpose the static walls of the field as line segments, with a precomputed grid that says which wall
+ * is nearest to every spot on (and a bit around) the field. Scan matching asks that for every lidar point
+ * every iteration, so a lookup is one array read instead of a search over the walls.
+ * @apiNote same frame as {@link OccupancyGrid}, the blue alliance corner is the origin. Immutable once built so
+ * any thread may use it
+ */
+public class FieldWallModel {
+
+  // per segment, (ax, ay) to (bx, by) and its unit normal (nx, ny) with offset so n . p = offset on the line
+  final double[] ax;
+  final double[] ay;
+  final double[] bx;
+  final double[] by;
+  final double[] nx;
+  final double[] ny;
+  final double[] offset;
+
+  final int columns;
+  final int rows;
+  final double originX;
+  final double originY;
+  final double inverseResolution;
+  // the nearest segment of every cell, row major
+  final byte[] nearest;
+
+  /**
+   * @apiNote the inside of the Crescendo perimeter (alliance walls and guardrails). The stage legs and the
+   * subwoofers are left out, their points just do not get matched
+   */
+  public static FieldWallModel crescendo() {
+    double length = FieldConstants.kFieldLengthMeters;
+    double width = FieldConstants.kFieldWidthMeters;
+    return new FieldWallModel(
+      new double[] {
+        0,
+        0,
+        length,
+        0,
+        length,
+        0,
+        length,
+        width,
+        length,
+        width,
+        0,
+        width,
+        0,
+        width,
+        0,
+        0,
+      },
+      length,
+      width,
+      MatchingConstants.kWallGridResolutionMeters,
+      MatchingConstants.kWallGridMarginMeters
+    );
+  }
+
+  /**
+   * @param segments ax, ay, bx, by of every wall in meters, at most 127 walls
+   * @param lengthMeters the size of the field along x
+   * @param widthMeters the size of the field along y
+   * @param resolutionMeters the side of one cell of the lookup grid
+   * @param marginMeters how far around the field the lookup grid goes
+   */
+  public FieldWallModel(
+    double[] segments,
+    double lengthMeters,
+    double widthMeters,
+    double resolutionMeters,
+    double marginMeters
+  ) {
+    int count = segments.length / 4;
+    if (count == 0 || count > Byte.MAX_VALUE) {
+      throw new IllegalArgumentException("need 1 to 127 walls");
+    }
+
+    ax = new double[count];
+    ay = new double[count];
+    bx = new double[count];
+    by = new double[count];
+    nx = new double[count];
+    ny = new double[count];
+    offset = new double[count];
+    for (int i = 0; i < count; i++) {
+      ax[i] = segments[i * 4];
+      ay[i] = segments[i * 4 + 1];
+      bx[i] = segments[i * 4 + 2];
+      by[i] = segments[i * 4 + 3];
+      double length = Math.hypot(bx[i] - ax[i], by[i] - ay[i]);
+      nx[i] = -(by[i] - ay[i]) / length;
+      ny[i] = (bx[i] - ax[i]) / length;
+      offset[i] = nx[i] * ax[i] + ny[i] * ay[i];
+    }
+
+    columns =
+      (int) Math.ceil((lengthMeters + 2 * marginMeters) / resolutionMeters);
+    rows =
+      (int) Math.ceil((widthMeters + 2 * marginMeters) / resolutionMeters);
+    originX = -marginMeters;
+    originY = -marginMeters;
+    inverseResolution = 1.0 / resolutionMeters;
+    nearest = new byte[columns * rows];
+
+    for (int row = 0; row < rows; row++) {
+      double y = originY + (row + 0.5) * resolutionMeters;
+      for (int column = 0; column < columns; column++) {
+        double x = originX + (column + 0.5) * resolutionMeters;
+        int best = 0;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+          double distance = distanceSquared(i, x, y);
+          if (distance < bestDistance) {
+            bestDistance = distance;
+            best = i;
+          }
+        }
+
+        nearest[row * columns + column] = (byte) best;
+      }
+    }
+  }
+
+  double distanceSquared(int segment, double x, double y) {
+    double dx = bx[segment] - ax[segment];
+    double dy = by[segment] - ay[segment];
+    double t =
+      ((x - ax[segment]) * dx + (y - ay[segment]) * dy) / (dx * dx + dy * dy);
+    t = Math.max(0, Math.min(1, t));
+    double ex = ax[segment] + t * dx - x;
+    double ey = ay[segment] + t * dy - y;
+    return ex * ex + ey * ey;
+  }
+
+  /**
+   * @return the amount of walls
+   */
+  public int size() {
+    return ax.length;
+  }
+
+  /**
+   * @apiNote points past the lookup grid use its nearest edge cell
+   * @return the index of the wall nearest to a field position, accurate to half a cell
+   */
+  public int nearestWall(double x, double y) {
+    int column = (int) ((x - originX) * inverseResolution);
+    int row = (int) ((y - originY) * inverseResolution);
+    column = Math.max(0, Math.min(columns - 1, column));
+    row = Math.max(0, Math.min(rows - 1, row));
+    return nearest[row * columns + column];
+  }
+
+  /**
+   * @return the unit normal of a wall, x part
+   */
+  public double getNormalX(int wall) {
+    return nx[wall];
+  }
+
+  /**
+   * @return the unit normal of a wall, y part
+   */
+  public double getNormalY(int wall) {
+    return ny[wall];
+  }
+
+  /**
+   * @return signed distance from a point to the infinite line through a wall, the residual scan matching minimizes
+   */
+  public double lineDistance(int wall, double x, double y) {
+    return nx[wall] * x + ny[wall] * y - offset[wall];
+  }
+
+  /**
+   * @apiNote the distance a perfect lidar would see, for simulation and tests
+   * @param angle radians, counter clockwise in the field frame
+   * @return the distance to the first wall in that direction, maxRange if none is closer
+   */
+  public double castRay(double x, double y, double angle, double maxRange) {
+    double dx = Math.cos(angle);
+    double dy = Math.sin(angle);
+    double closest = maxRange;
+
+    for (int i = 0; i < ax.length; i++) {
+      double ex = bx[i] - ax[i];
+      double ey = by[i] - ay[i];
+      double denominator = dx * ey - dy * ex;
+      if (Math.abs(denominator) < 1e-12) {
+        continue;
+      }
+
+      // solve (x, y) + t * d = a + u * e
+      double wx = ax[i] - x;
+      double wy = ay[i] - y;
+      double t = (wx * ey - wy * ex) / denominator;
+      double u = (wx * dy - wy * dx) / denominator;
+      if (t >= 0 && t < closest && u >= 0 && u <= 1) {
+        closest = t;
+      }
+    }
+
+    return closest;
+  }
+}
@@ -0,0 +1,176 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.LidarConstants;
+import frc.robot.Constants.MatchingConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.LidarScanPool;
+import frc.robot.extern_libs.lidar.ScanQueue;
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author godbrigero
+ * @purpose runs a {@link ScanMatcher} on its own thread so matching never costs the robot loop anything.
+ * The loop copies scans in with {@link #submit} and takes the trusted matches back out with {@link #drainMatches},
+ * both through a {@link ScanQueue}
+ * @apiNote scans that do not line up with the walls (too few points, only one wall in view, too far off)
+ * are counted as rejected and never come back out
+ */
+public class LidarLocalizer implements Closeable {
+
+  static final long kIdleParkNanos = 5_000_000;
+
+  final ScanMatcher matcher;
+  final LidarScanPool pool;
+  final ScanQueue<LidarScan> scans;
+  final ScanQueue<ScanMatch> matches;
+  final Thread thread;
+  // null if scans are used as they come
+  final ScanDeskewer deskewer;
+  final PoseHistory history;
+
+  final AtomicLong matchedScans = new AtomicLong();
+  final AtomicLong rejectedScans = new AtomicLong();
+  volatile long lastMatchNanos;
+  volatile boolean running = true;
+
+  // kept so draining does not make a new lambda every time
+  final ScanQueue.ScanConsumer<LidarScan> matchScan = this::match;
+
+  /**
+   * @apiNote matches against the Crescendo perimeter
+   */
+  public LidarLocalizer() {
+    this(FieldWallModel.crescendo());
+  }
+
+  public LidarLocalizer(FieldWallModel walls) {
+    this(walls, null);
+  }
+
+  /**
+   * @param history odometry to de-skew every scan with before matching it, null to match them as they come
+   */
+  public LidarLocalizer(FieldWallModel walls, PoseHistory history) {
+    this.matcher = new ScanMatcher(walls);
+    this.history = history;
+    this.deskewer = history != null ? new ScanDeskewer(history) : null;
+    this.scans = new ScanQueue<>(MatchingConstants.kLocalizerQueueCapacity);
+    this.matches = new ScanQueue<>(MatchingConstants.kLocalizerQueueCapacity);
+    // the queue plus the one being matched
+    this.pool =
+      new LidarScanPool(
+        MatchingConstants.kLocalizerQueueCapacity + 2,
+        LidarConstants.kScanPointCapacity
+      );
+
+    this.thread = new Thread(this::run, "LidarLocalizer");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * @apiNote call from one thread only (the robot loop). The scan is copied so the caller can release it right after
+   * @param scan the scan, with {@link LidarScan#setPose} set to where odometry thinks the lidar was
+   * @return false if the scan has no pose or the matcher is behind and it was dropped
+   */
+  public boolean submit(LidarScan scan) {
+    if (!scan.hasPose()) {
+      return false;
+    }
+
+    LidarScan copy = pool.acquire();
+    copy.copyFrom(scan);
+    if (!scans.offer(scan.getTimestampNanos(), copy)) {
+      copy.release();
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * @return the odometry scans are de-skewed with, null if there is none
+   */
+  public PoseHistory getPoseHistory() {
+    return history;
+  }
+
+  /**
+   * @apiNote CONSUMER ONLY, same thread as {@link #submit}. Hands over every trusted match since the last call, oldest first
+   * @return the amount of matches drained
+   */
+  public int drainMatches(ScanQueue.ScanConsumer<ScanMatch> consumer) {
+    return matches.drain(consumer);
+  }
+
+  void match(long timestampNanos, LidarScan scan) {
+    long start = System.nanoTime();
+    if (deskewer != null) {
+      deskewer.deskew(scan);
+    }
+
+    boolean good = matcher.match(scan);
+    lastMatchNanos = System.nanoTime() - start;
+    scan.release();
+
+    if (!good) {
+      rejectedScans.incrementAndGet();
+      return;
+    }
+
+    matchedScans.incrementAndGet();
+    matches.offer(
+      timestampNanos,
+      new ScanMatch(
+        timestampNanos,
+        matcher.getX(),
+        matcher.getY(),
+        matcher.getHeading(),
+        matcher.getRmse(),
+        matcher.getInliers()
+      )
+    );
+  }
+
+  void run() {
+    while (running) {
+      if (scans.drain(matchScan) == 0) {
+        LockSupport.parkNanos(kIdleParkNanos);
+      }
+    }
+  }
+
+  /**
+   * @return how long the last scan took to de-skew and match, has to stay well under the lidar's period
+   */
+  public long getLastMatchNanos() {
+    return lastMatchNanos;
+  }
+
+  public long getMatchedScans() {
+    return matchedScans.get();
+  }
+
+  public long getRejectedScans() {
+    return rejectedScans.get();
+  }
+
+  /**
+   * @return the amount of scans dropped because the matcher fell behind
+   */
+  public long getDroppedScans() {
+    return scans.getDroppedScans();
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.FieldConstants;
+import frc.robot.Constants.LidarConstants;
+import frc.robot.Constants.MappingConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.LidarScanPool;
+import frc.robot.extern_libs.lidar.ScanQueue;
+import frc.robot.inter.ReplayLoggerDevice;
+import frc.robot.util.replay.ReplayLogRate;
+import frc.robot.util.replay.SampleBuffer;
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author godbrigero
+ * @purpose builds an {@link OccupancyGrid} of the field from lidar scans on its own thread so ray tracing
+ * never costs the robot loop anything. The loop only copies each scan in with {@link #submit}.
+ * @apiNote as a {@link ReplayLoggerDevice} it logs a run length snapshot of the grid every
+ * {@link MappingConstants#kMapSnapshotTicks} ticks, see {@link OccupancyGrid#snapshot}
+ */
+public class LidarMapper implements ReplayLoggerDevice, Closeable {
+
+  static final long kIdleParkNanos = 5_000_000;
+
+  final OccupancyGrid grid;
+  final LidarScanPool pool;
+  final ScanQueue<LidarScan> queue;
+  final Thread thread;
+  // null if scans are used as they come
+  final ScanDeskewer deskewer;
+
+  final AtomicLong integratedScans = new AtomicLong();
+  volatile long lastUpdateNanos;
+  volatile boolean running = true;
+
+  // kept so draining does not make a new lambda every time
+  final ScanQueue.ScanConsumer<LidarScan> integrator = this::integrate;
+
+  /**
+   * @apiNote a grid over the whole Crescendo field at {@link MappingConstants#kGridResolutionMeters}
+   */
+  public LidarMapper() {
+    this(
+      new OccupancyGrid(
+        FieldConstants.kFieldLengthMeters,
+        FieldConstants.kFieldWidthMeters,
+        MappingConstants.kGridResolutionMeters
+      )
+    );
+  }
+
+  /**
+   * @param grid the grid to update, the mapper thread is the only one that may write to it
+   */
+  public LidarMapper(OccupancyGrid grid) {
+    this(grid, null);
+  }
+
+  /**
+   * @param grid the grid to update, the mapper thread is the only one that may write to it
+   * @param history odometry to de-skew every scan with before tracing it, null to trace them as they come
+   */
+  public LidarMapper(OccupancyGrid grid, PoseHistory history) {
+    this.grid = grid;
+    this.deskewer = history != null ? new ScanDeskewer(history) : null;
+    this.queue = new ScanQueue<>(MappingConstants.kMapperQueueCapacity);
+    // the queue plus the one being traced
+    this.pool =
+      new LidarScanPool(
+        MappingConstants.kMapperQueueCapacity + 2,
+        LidarConstants.kScanPointCapacity
+      );
+
+    this.thread = new Thread(this::run, "LidarMapper");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * @apiNote call from one thread only (the robot loop). The scan is copied so the caller can release it right after
+   * @param scan the scan, with {@link LidarScan#setPose} set to where the lidar was on the field
+   * @return false if the mapper is behind and the scan was dropped
+   */
+  public boolean submit(LidarScan scan) {
+    if (!scan.hasPose()) {
+      return false;
+    }
+
+    LidarScan copy = pool.acquire();
+    copy.copyFrom(scan);
+    if (!queue.offer(scan.getTimestampNanos(), copy)) {
+      copy.release();
+      return false;
+    }
+
+    return true;
+  }
+
+  void integrate(long timestampNanos, LidarScan scan) {
+    long start = System.nanoTime();
+    if (deskewer != null) {
+      deskewer.deskew(scan);
+    }
+
+    grid.integrateScan(scan);
+    lastUpdateNanos = System.nanoTime() - start;
+    integratedScans.incrementAndGet();
+    scan.release();
+  }
+
+  void run() {
+    while (running) {
+      if (queue.drain(integrator) == 0) {
+        LockSupport.parkNanos(kIdleParkNanos);
+      }
+    }
+  }
+
+  /**
+   * @return the grid, safe to query from any thread
+   */
+  public OccupancyGrid getGrid() {
+    return grid;
+  }
+
+  /**
+   * @return how long the last scan took to de-skew and trace into the grid
+   */
+  public long getLastUpdateNanos() {
+    return lastUpdateNanos;
+  }
+
+  public long getIntegratedScans() {
+    return integratedScans.get();
+  }
+
+  /**
+   * @return the amount of scans dropped because the mapper fell behind
+   */
+  public long getDroppedScans() {
+    return queue.getDroppedScans();
+  }
+
+  @Override
+  public String getName() {
+    return "map";
+  }
+
+  @Override
+  public ReplayLogRate getLogRate() {
+    return ReplayLogRate.everyNTicks(MappingConstants.kMapSnapshotTicks);
+  }
+
+  @Override
+  public boolean fillData(SampleBuffer out) {
+    grid.snapshot(out);
+    return true;
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
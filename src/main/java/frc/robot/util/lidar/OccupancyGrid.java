@@ -0,0 +1,303 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.MappingConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.util.replay.SampleBuffer;
+import java.util.Arrays;
+
+/**
+ * @author godbrigero
+ * @purpose log odds occupancy grid of the field, one signed byte per cell in a flat row major array.
+ * Every lidar point makes the cells its ray passes through a bit more free and the cell it ends in a
+ * lot more occupied, so walls and robots build up over a few scans and things that move away fade out.
+ * @apiNote the origin is the blue alliance corner of the field (like the field coordinate system), x along the length.
+ * One thread updates it, any thread may query. Every cell read is atomic but a query can see a scan
+ * half applied, which does not matter at 10 scans a second
+ */
+public class OccupancyGrid {
+
+  final int columns;
+  final int rows;
+  final double resolution;
+  final double inverseResolution;
+  final byte[] cells;
+
+  /**
+   * @param lengthMeters the size along x
+   * @param widthMeters the size along y
+   * @param resolutionMeters the side of one cell
+   */
+  public OccupancyGrid(
+    double lengthMeters,
+    double widthMeters,
+    double resolutionMeters
+  ) {
+    this(
+      (int) Math.ceil(lengthMeters / resolutionMeters),
+      (int) Math.ceil(widthMeters / resolutionMeters),
+      resolutionMeters
+    );
+  }
+
+  OccupancyGrid(int columns, int rows, double resolution) {
+    this.columns = columns;
+    this.rows = rows;
+    this.resolution = resolution;
+    this.inverseResolution = 1.0 / resolution;
+    this.cells = new byte[columns * rows];
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public double getResolution() {
+    return resolution;
+  }
+
+  /**
+   * @return the backing array, cell (column, row) is at row * columns + column
+   */
+  public byte[] cells() {
+    return cells;
+  }
+
+  public void clear() {
+    Arrays.fill(cells, (byte) 0);
+  }
+
+  /**
+   * @apiNote traces every point of a scan into the grid, the scan must have a pose
+   * @param scan the scan, points at distance 0 (no return) are skipped and points past the max range only clear
+   */
+  public void integrateScan(LidarScan scan) {
+    double x = scan.getPoseX();
+    double y = scan.getPoseY();
+    double heading = scan.getPoseHeading();
+    float[] angles = scan.angles();
+    float[] distances = scan.distances();
+
+    for (int i = 0; i < scan.size(); i++) {
+      double distance = distances[i];
+      if (distance <= 0) {
+        continue;
+      }
+
+      boolean hit = distance <= MappingConstants.kMaxRangeMeters;
+      if (!hit) {
+        distance = MappingConstants.kMaxRangeMeters;
+      }
+
+      // lidar angles go clockwise, the field goes counter clockwise
+      double angle = heading - angles[i];
+      integrateRay(
+        x,
+        y,
+        x + distance * Math.cos(angle),
+        y + distance * Math.sin(angle),
+        hit
+      );
+    }
+  }
+
+  /**
+   * @apiNote every cell from (x0, y0) up to (x1, y1) gets a miss and the last one a hit if hit is true
+   */
+  public void integrateRay(
+    double x0,
+    double y0,
+    double x1,
+    double y1,
+    boolean hit
+  ) {
+    double gx0 = x0 * inverseResolution;
+    double gy0 = y0 * inverseResolution;
+    double gx1 = x1 * inverseResolution;
+    double gy1 = y1 * inverseResolution;
+
+    int cx = (int) Math.floor(gx0);
+    int cy = (int) Math.floor(gy0);
+    int endX = (int) Math.floor(gx1);
+    int endY = (int) Math.floor(gy1);
+
+    // Amanatides & Woo, walks exactly the cells the segment touches
+    double dx = gx1 - gx0;
+    double dy = gy1 - gy0;
+    int stepX = dx > 0 ? 1 : -1;
+    int stepY = dy > 0 ? 1 : -1;
+    double tDeltaX = dx != 0 ? Math.abs(1.0 / dx) : Double.POSITIVE_INFINITY;
+    double tDeltaY = dy != 0 ? Math.abs(1.0 / dy) : Double.POSITIVE_INFINITY;
+    double tMaxX = dx != 0
+      ? (stepX > 0 ? cx + 1 - gx0 : gx0 - cx) * tDeltaX
+      : Double.POSITIVE_INFINITY;
+    double tMaxY = dy != 0
+      ? (stepY > 0 ? cy + 1 - gy0 : gy0 - cy) * tDeltaY
+      : Double.POSITIVE_INFINITY;
+
+    int steps = Math.abs(endX - cx) + Math.abs(endY - cy);
+    for (int i = 0; i < steps; i++) {
+      add(cx, cy, -MappingConstants.kLogOddsMiss);
+      if (tMaxX < tMaxY) {
+        tMaxX += tDeltaX;
+        cx += stepX;
+      } else {
+        tMaxY += tDeltaY;
+        cy += stepY;
+      }
+    }
+
+    add(
+      endX,
+      endY,
+      hit ? MappingConstants.kLogOddsHit : -MappingConstants.kLogOddsMiss
+    );
+  }
+
+  void add(int column, int row, int delta) {
+    if (column < 0 || row < 0 || column >= columns || row >= rows) {
+      return;
+    }
+
+    int index = row * columns + column;
+    int value = cells[index] + delta;
+    if (value > MappingConstants.kLogOddsClamp) {
+      value = MappingConstants.kLogOddsClamp;
+    } else if (value < -MappingConstants.kLogOddsClamp) {
+      value = -MappingConstants.kLogOddsClamp;
+    }
+
+    cells[index] = (byte) value;
+  }
+
+  /**
+   * @return the log odds of the cell at a field position, outside the field counts as fully occupied
+   */
+  public byte getLogOdds(double x, double y) {
+    int column = (int) Math.floor(x * inverseResolution);
+    int row = (int) Math.floor(y * inverseResolution);
+    if (column < 0 || row < 0 || column >= columns || row >= rows) {
+      return MappingConstants.kLogOddsClamp;
+    }
+
+    return cells[row * columns + column];
+  }
+
+  public boolean isOccupied(double x, double y) {
+    return getLogOdds(x, y) >= MappingConstants.kOccupiedLogOdds;
+  }
+
+  /**
+   * @return the chance that a cell is occupied, 0.5 if nothing is known about it
+   */
+  public double getProbability(double x, double y) {
+    // the fixed point log odds are in tenths
+    return 1.0 / (1.0 + Math.exp(-getLogOdds(x, y) / 10.0));
+  }
+
+  /**
+   * @apiNote walks the grid from a point in a direction like a lidar ray would
+   * @param angle radians, counter clockwise in the field frame
+   * @return the distance to the first occupied cell (or the edge of the field), maxRange if there is none
+   */
+  public double castRay(double x, double y, double angle, double maxRange) {
+    double gx0 = x * inverseResolution;
+    double gy0 = y * inverseResolution;
+    double dx = Math.cos(angle);
+    double dy = Math.sin(angle);
+
+    int cx = (int) Math.floor(gx0);
+    int cy = (int) Math.floor(gy0);
+    int stepX = dx > 0 ? 1 : -1;
+    int stepY = dy > 0 ? 1 : -1;
+    // t is in cells along the ray here
+    double tDeltaX = dx != 0 ? Math.abs(1.0 / dx) : Double.POSITIVE_INFINITY;
+    double tDeltaY = dy != 0 ? Math.abs(1.0 / dy) : Double.POSITIVE_INFINITY;
+    double tMaxX = dx != 0
+      ? (stepX > 0 ? cx + 1 - gx0 : gx0 - cx) * tDeltaX
+      : Double.POSITIVE_INFINITY;
+    double tMaxY = dy != 0
+      ? (stepY > 0 ? cy + 1 - gy0 : gy0 - cy) * tDeltaY
+      : Double.POSITIVE_INFINITY;
+
+    double maxCells = maxRange * inverseResolution;
+    double t = 0;
+    while (t <= maxCells) {
+      if (
+        cx < 0 ||
+        cy < 0 ||
+        cx >= columns ||
+        cy >= rows ||
+        cells[cy * columns + cx] >= MappingConstants.kOccupiedLogOdds
+      ) {
+        return t * resolution;
+      }
+
+      if (tMaxX < tMaxY) {
+        t = tMaxX;
+        tMaxX += tDeltaX;
+        cx += stepX;
+      } else {
+        t = tMaxY;
+        tMaxY += tDeltaY;
+        cy += stepY;
+      }
+    }
+
+    return maxRange;
+  }
+
+  /**
+   * @return true if no occupied cell is between the two points
+   */
+  public boolean isRayClear(double x0, double y0, double x1, double y1) {
+    double length = Math.hypot(x1 - x0, y1 - y0);
+    return (
+      castRay(x0, y0, Math.atan2(y1 - y0, x1 - x0), length) >= length
+    );
+  }
+
+  /**
+   * @apiNote run length encodes the grid: columns, rows, resolution and then (log odds, run length) pairs.
+   * Most of the field is unknown or free so this is a few thousand values instead of ~55k cells
+   */
+  public void snapshot(SampleBuffer out) {
+    out.clear();
+    out.add(columns);
+    out.add(rows);
+    out.add(resolution);
+
+    int start = 0;
+    for (int i = 1; i <= cells.length; i++) {
+      if (i == cells.length || cells[i] != cells[start]) {
+        out.add(cells[start]);
+        out.add(i - start);
+        start = i;
+      }
+    }
+  }
+
+  /**
+   * @return a grid rebuilt from {@link #snapshot}, for viewers and replay
+   */
+  public static OccupancyGrid fromSnapshot(SampleBuffer in) {
+    OccupancyGrid grid = new OccupancyGrid(
+      (int) in.get(0),
+      (int) in.get(1),
+      in.get(2)
+    );
+
+    int index = 0;
+    for (int i = 3; i + 1 < in.size(); i += 2) {
+      byte value = (byte) in.get(i);
+      int run = (int) in.get(i + 1);
+      Arrays.fill(grid.cells, index, index + run, value);
+      index += run;
+    }
+
+    return grid;
+  }
+}
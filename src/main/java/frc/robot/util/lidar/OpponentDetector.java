@@ -0,0 +1,176 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.LidarConstants;
+import frc.robot.Constants.OpponentConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.LidarScanPool;
+import frc.robot.extern_libs.lidar.ScanQueue;
+import frc.robot.inter.ReplayLoggerDevice;
+import frc.robot.util.replay.SampleBuffer;
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author godbrigero
+ * @purpose finds and follows the other robots on the field with the lidar, on its own thread. Scans are
+ * copied in with {@link #submit}, clustered by {@link ScanClusterer} and tracked by {@link OpponentTracker},
+ * and the confirmed tracks come out of {@link #getObstacles()} for path following and alignment to steer around
+ * @apiNote sees everything that is not a wall, so game pieces on the floor are too low for the A1 but the stage
+ * legs and anything else left out of the {@link FieldWallModel} show up as robots that never move. As a
+ * {@link ReplayLoggerDevice} it logs x, y, vx, vy of every obstacle
+ */
+public class OpponentDetector implements ReplayLoggerDevice, Closeable {
+
+  static final long kIdleParkNanos = 5_000_000;
+
+  final ScanClusterer clusterer;
+  final OpponentTracker tracker;
+  final LidarScanPool pool;
+  final ScanQueue<LidarScan> queue;
+  final Thread thread;
+  // null if scans are used as they come
+  final ScanDeskewer deskewer;
+
+  final AtomicLong detectedScans = new AtomicLong();
+  volatile TrackedObstacle[] obstacles = new TrackedObstacle[0];
+  volatile long lastUpdateNanos;
+  volatile boolean running = true;
+  // what was logged last, so the same obstacles are not written twice
+  TrackedObstacle[] loggedObstacles;
+
+  // kept so draining does not make a new lambda every time
+  final ScanQueue.ScanConsumer<LidarScan> detector = this::detect;
+
+  /**
+   * @apiNote against the Crescendo perimeter
+   */
+  public OpponentDetector() {
+    this(FieldWallModel.crescendo(), null);
+  }
+
+  /**
+   * @param walls what is not an obstacle
+   * @param history odometry to de-skew every scan with first, null to use them as they come
+   */
+  public OpponentDetector(FieldWallModel walls, PoseHistory history) {
+    this.clusterer = new ScanClusterer(walls);
+    this.tracker = new OpponentTracker();
+    this.deskewer = history != null ? new ScanDeskewer(history) : null;
+    this.queue = new ScanQueue<>(OpponentConstants.kDetectorQueueCapacity);
+    // the queue plus the one being clustered
+    this.pool =
+      new LidarScanPool(
+        OpponentConstants.kDetectorQueueCapacity + 2,
+        LidarConstants.kScanPointCapacity
+      );
+
+    this.thread = new Thread(this::run, "OpponentDetector");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * @apiNote call from one thread only (the robot loop). The scan is copied so the caller can release it right after
+   * @param scan the scan, with {@link LidarScan#setPose} set to where the lidar was on the field
+   * @return false if the scan has no pose or the detector is behind and it was dropped
+   */
+  public boolean submit(LidarScan scan) {
+    if (!scan.hasPose()) {
+      return false;
+    }
+
+    LidarScan copy = pool.acquire();
+    copy.copyFrom(scan);
+    if (!queue.offer(scan.getTimestampNanos(), copy)) {
+      copy.release();
+      return false;
+    }
+
+    return true;
+  }
+
+  void detect(long timestampNanos, LidarScan scan) {
+    long start = System.nanoTime();
+    if (deskewer != null) {
+      deskewer.deskew(scan);
+    }
+
+    clusterer.cluster(scan);
+    scan.release();
+    tracker.update(timestampNanos, clusterer);
+    obstacles = tracker.getConfirmed();
+    lastUpdateNanos = System.nanoTime() - start;
+    detectedScans.incrementAndGet();
+  }
+
+  void run() {
+    while (running) {
+      if (queue.drain(detector) == 0) {
+        LockSupport.parkNanos(kIdleParkNanos);
+      }
+    }
+  }
+
+  /**
+   * @apiNote safe from any thread, do not change the array. Use {@link TrackedObstacle#predictX} to get where
+   * they are now and not when the scan was taken
+   * @return every robot being tracked as of the last scan
+   */
+  public TrackedObstacle[] getObstacles() {
+    return obstacles;
+  }
+
+  /**
+   * @return how long the last scan took to de-skew, cluster and track
+   */
+  public long getLastUpdateNanos() {
+    return lastUpdateNanos;
+  }
+
+  public long getDetectedScans() {
+    return detectedScans.get();
+  }
+
+  /**
+   * @return the amount of scans dropped because the detector fell behind
+   */
+  public long getDroppedScans() {
+    return queue.getDroppedScans();
+  }
+
+  @Override
+  public String getName() {
+    return "opponents";
+  }
+
+  @Override
+  public boolean fillData(SampleBuffer out) {
+    TrackedObstacle[] current = obstacles;
+    if (current == loggedObstacles) {
+      return false;
+    }
+
+    out.setSize(current.length * 4);
+    double[] values = out.array();
+    for (int i = 0; i < current.length; i++) {
+      values[i * 4] = current[i].x;
+      values[i * 4 + 1] = current[i].y;
+      values[i * 4 + 2] = current[i].velocityX;
+      values[i * 4 + 3] = current[i].velocityY;
+    }
+
+    loggedObstacles = current;
+    return true;
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
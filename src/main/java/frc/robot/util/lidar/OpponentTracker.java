@@ -0,0 +1,243 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.OpponentConstants;
+
+/**
+ * @author godbrigero
+ * @purpose follows the clusters of {@link ScanClusterer} from scan to scan. Every track is a constant velocity
+ * Kalman filter (x and y on their own, position and velocity each), detections go to the closest predicted
+ * track inside {@link OpponentConstants#kGateMeters} and the rest start new tracks.
+ * @apiNote a track is only confirmed after {@link OpponentConstants#kConfirmHits} detections in a row so a
+ * one scan blip never gets published, and is dropped after {@link OpponentConstants#kMaxCoastNanos} unseen.
+ * Fixed amount of tracks, one thread only, {@link #update} allocates nothing
+ */
+public class OpponentTracker {
+
+  final int maxTracks;
+  final boolean[] active;
+  final int[] ids;
+  final int[] hits;
+  final long[] stateNanos;
+  final long[] seenNanos;
+  // per axis state and the 3 distinct entries of its covariance, [track * 2 + axis]
+  final double[] position;
+  final double[] velocity;
+  final double[] varPosition;
+  final double[] covariance;
+  final double[] varVelocity;
+
+  final boolean[] trackTaken;
+  boolean[] detectionTaken = new boolean[0];
+  int nextId;
+
+  public OpponentTracker() {
+    this(OpponentConstants.kMaxTracks);
+  }
+
+  public OpponentTracker(int maxTracks) {
+    this.maxTracks = maxTracks;
+    this.active = new boolean[maxTracks];
+    this.ids = new int[maxTracks];
+    this.hits = new int[maxTracks];
+    this.stateNanos = new long[maxTracks];
+    this.seenNanos = new long[maxTracks];
+    this.position = new double[maxTracks * 2];
+    this.velocity = new double[maxTracks * 2];
+    this.varPosition = new double[maxTracks * 2];
+    this.covariance = new double[maxTracks * 2];
+    this.varVelocity = new double[maxTracks * 2];
+    this.trackTaken = new boolean[maxTracks];
+  }
+
+  /**
+   * @apiNote predicts every track to the scan, matches the clusters to them and updates or starts tracks
+   * @param timestampNanos when the scan finished, from {@link System#nanoTime()}
+   * @param clusters what was found in the scan
+   */
+  public void update(long timestampNanos, ScanClusterer clusters) {
+    int detections = clusters.getClusterCount();
+    if (detectionTaken.length < detections) {
+      detectionTaken = new boolean[detections * 2];
+    }
+
+    for (int track = 0; track < maxTracks; track++) {
+      trackTaken[track] = false;
+      if (!active[track]) {
+        continue;
+      }
+
+      if (timestampNanos - seenNanos[track] > OpponentConstants.kMaxCoastNanos) {
+        active[track] = false;
+        continue;
+      }
+
+      predict(track, timestampNanos);
+    }
+
+    for (int i = 0; i < detections; i++) {
+      detectionTaken[i] = false;
+    }
+
+    // greedy, closest pair first. There are only a handful of each so this is cheaper than anything smarter
+    double gateSquared = OpponentConstants.kGateMeters * OpponentConstants.kGateMeters;
+    while (true) {
+      int bestTrack = -1;
+      int bestDetection = -1;
+      double best = gateSquared;
+      for (int track = 0; track < maxTracks; track++) {
+        if (!active[track] || trackTaken[track]) {
+          continue;
+        }
+
+        for (int i = 0; i < detections; i++) {
+          if (detectionTaken[i]) {
+            continue;
+          }
+
+          double dx = clusters.getClusterX(i) - position[track * 2];
+          double dy = clusters.getClusterY(i) - position[track * 2 + 1];
+          double distanceSquared = dx * dx + dy * dy;
+          if (distanceSquared < best) {
+            best = distanceSquared;
+            bestTrack = track;
+            bestDetection = i;
+          }
+        }
+      }
+
+      if (bestTrack == -1) {
+        break;
+      }
+
+      trackTaken[bestTrack] = true;
+      detectionTaken[bestDetection] = true;
+      correct(bestTrack * 2, clusters.getClusterX(bestDetection));
+      correct(bestTrack * 2 + 1, clusters.getClusterY(bestDetection));
+      seenNanos[bestTrack] = timestampNanos;
+      hits[bestTrack]++;
+    }
+
+    for (int track = 0; track < maxTracks; track++) {
+      // a track still being confirmed has to be seen every scan
+      if (
+        active[track] &&
+        !trackTaken[track] &&
+        hits[track] < OpponentConstants.kConfirmHits
+      ) {
+        active[track] = false;
+      }
+    }
+
+    for (int i = 0; i < detections; i++) {
+      if (!detectionTaken[i]) {
+        start(timestampNanos, clusters.getClusterX(i), clusters.getClusterY(i));
+      }
+    }
+  }
+
+  void predict(int track, long timestampNanos) {
+    double dt = (timestampNanos - stateNanos[track]) / 1e9;
+    stateNanos[track] = timestampNanos;
+    // white noise acceleration
+    double q =
+      OpponentConstants.kAccelerationStdDev *
+      OpponentConstants.kAccelerationStdDev;
+    double dt2 = dt * dt;
+
+    for (int axis = track * 2; axis < track * 2 + 2; axis++) {
+      position[axis] += velocity[axis] * dt;
+      // P = F P F^T + Q with F = [1 dt; 0 1]
+      varPosition[axis] +=
+        2 * dt * covariance[axis] + dt2 * varVelocity[axis] + q * dt2 * dt2 / 4;
+      covariance[axis] += dt * varVelocity[axis] + q * dt2 * dt / 2;
+      varVelocity[axis] += q * dt2;
+    }
+  }
+
+  void correct(int axis, double measured) {
+    double r =
+      OpponentConstants.kMeasurementStdDevMeters *
+      OpponentConstants.kMeasurementStdDevMeters;
+    double innovation = measured - position[axis];
+    double s = varPosition[axis] + r;
+    double gainPosition = varPosition[axis] / s;
+    double gainVelocity = covariance[axis] / s;
+
+    position[axis] += gainPosition * innovation;
+    velocity[axis] += gainVelocity * innovation;
+    // P = (I - K H) P
+    varVelocity[axis] -= gainVelocity * covariance[axis];
+    covariance[axis] -= gainVelocity * varPosition[axis];
+    varPosition[axis] -= gainPosition * varPosition[axis];
+  }
+
+  void start(long timestampNanos, double x, double y) {
+    for (int track = 0; track < maxTracks; track++) {
+      if (active[track]) {
+        continue;
+      }
+
+      active[track] = true;
+      ids[track] = nextId++;
+      hits[track] = 1;
+      stateNanos[track] = timestampNanos;
+      seenNanos[track] = timestampNanos;
+      position[track * 2] = x;
+      position[track * 2 + 1] = y;
+      for (int axis = track * 2; axis < track * 2 + 2; axis++) {
+        velocity[axis] = 0;
+        varPosition[axis] =
+          OpponentConstants.kMeasurementStdDevMeters *
+          OpponentConstants.kMeasurementStdDevMeters;
+        covariance[axis] = 0;
+        varVelocity[axis] =
+          OpponentConstants.kInitialSpeedStdDev *
+          OpponentConstants.kInitialSpeedStdDev;
+      }
+
+      return;
+    }
+  }
+
+  /**
+   * @return the amount of tracks that are confirmed, what {@link #getConfirmed} would give
+   */
+  public int getConfirmedCount() {
+    int count = 0;
+    for (int track = 0; track < maxTracks; track++) {
+      count += isConfirmed(track) ? 1 : 0;
+    }
+
+    return count;
+  }
+
+  boolean isConfirmed(int track) {
+    return active[track] && hits[track] >= OpponentConstants.kConfirmHits;
+  }
+
+  /**
+   * @apiNote allocates the obstacles, once per scan is fine
+   * @return every confirmed track as of the last update
+   */
+  public TrackedObstacle[] getConfirmed() {
+    TrackedObstacle[] obstacles = new TrackedObstacle[getConfirmedCount()];
+    int index = 0;
+    for (int track = 0; track < maxTracks; track++) {
+      if (!isConfirmed(track)) {
+        continue;
+      }
+
+      obstacles[index++] =
+        new TrackedObstacle(
+          ids[track],
+          stateNanos[track],
+          position[track * 2],
+          position[track * 2 + 1],
+          velocity[track * 2],
+          velocity[track * 2 + 1]
+        );
+    }
+
+    return obstacles;
+  }
+}
@@ -0,0 +1,121 @@
+package frc.robot.util.lidar;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * @author godbrigero
+ * @purpose the last few seconds of odometry poses with their timestamps, so anything can ask where the robot
+ * was at a moment in the past. Lidar de-skewing asks this for every point of a scan, see {@link ScanDeskewer}.
+ * @apiNote one thread records (the robot loop), any thread may look up. The poses are kept in a ring of primitive
+ * arrays. A lookup checks that its entries were not overwritten while it read them, so it never returns a torn pose.
+ * Use odometry here, not a fused estimate that jumps on corrections, only the motion between two times matters
+ */
+public class PoseHistory {
+
+  final long[] timestamps;
+  final double[] xs;
+  final double[] ys;
+  final double[] headings;
+  final int mask;
+
+  // the amount of poses ever recorded, the newest is at (count - 1) & mask
+  volatile long count;
+
+  /**
+   * @param capacity the amount of poses kept, rounded up to a power of two
+   */
+  public PoseHistory(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2));
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    this.timestamps = new long[size];
+    this.xs = new double[size];
+    this.ys = new double[size];
+    this.headings = new double[size];
+    this.mask = size - 1;
+  }
+
+  /**
+   * @apiNote RECORDING THREAD ONLY. Timestamps have to go up
+   * @param timestampNanos when the pose was measured, from {@link System#nanoTime()}
+   * @param x meters
+   * @param y meters
+   * @param heading radians, counter clockwise
+   */
+  public void record(long timestampNanos, double x, double y, double heading) {
+    long position = count;
+    int slot = (int) (position & mask);
+    timestamps[slot] = timestampNanos;
+    xs[slot] = x;
+    ys[slot] = y;
+    headings[slot] = heading;
+    // the volatile write publishes the entry
+    count = position + 1;
+  }
+
+  /**
+   * @apiNote interpolates between the two poses around the time. Before the oldest or after the newest pose it
+   * gives that pose, the robot is assumed to have stood still
+   * @param out gets x, y and heading
+   * @return false if nothing was recorded yet
+   */
+  public boolean getPose(long timestampNanos, double[] out) {
+    while (true) {
+      long end = count;
+      if (end == 0) {
+        return false;
+      }
+
+      // leave the slot the writer may be filling alone
+      long start = Math.max(0, end - timestamps.length + 1);
+      long low = start;
+      long high = end - 1;
+      // the last entry at or before the time
+      while (low < high) {
+        long middle = (low + high + 1) >>> 1;
+        if (timestamps[(int) (middle & mask)] <= timestampNanos) {
+          low = middle;
+        } else {
+          high = middle - 1;
+        }
+      }
+
+      int before = (int) (low & mask);
+      int after = (int) (Math.min(low + 1, end - 1) & mask);
+      long t0 = timestamps[before];
+      long t1 = timestamps[after];
+      double fraction = t1 > t0
+        ? Math.max(0, Math.min(1, (double) (timestampNanos - t0) / (t1 - t0)))
+        : 0;
+      double turn = Math.IEEEremainder(
+        headings[after] - headings[before],
+        2 * Math.PI
+      );
+
+      out[0] = xs[before] + (xs[after] - xs[before]) * fraction;
+      out[1] = ys[before] + (ys[after] - ys[before]) * fraction;
+      out[2] = headings[before] + turn * fraction;
+
+      // the writer did not lap what was read, otherwise try again. The fence keeps the reads above from
+      // being moved past the check
+      VarHandle.loadLoadFence();
+      if (count - start < timestamps.length) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return the timestamp of the newest pose, 0 if there is none
+   */
+  public long getNewestTimestampNanos() {
+    long end = count;
+    return end == 0 ? 0 : timestamps[(int) ((end - 1) & mask)];
+  }
+
+  public int capacity() {
+    return timestamps.length;
+  }
+}
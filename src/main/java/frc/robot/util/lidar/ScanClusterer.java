@@ -0,0 +1,277 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.MappingConstants;
+import frc.robot.Constants.ObstacleConstants;
+import frc.robot.Constants.OpponentConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import java.util.Arrays;
+
+/**
+ * @author godbrigero
+ * @purpose finds the robot sized objects in a scan that are not part of the field. Points on (or past) the
+ * walls are thrown out, the rest are grouped with every point within {@link OpponentConstants#kClusterDistanceMeters}
+ * of them and the groups a robot could be are kept.
+ * @apiNote close to linear: every point is hashed into a grid of cluster distance sized cells and only compared
+ * against the points in the 9 cells around it, groups are joined with a union find. One thread only,
+ * nothing is allocated unless a scan is bigger than any before it. The walls need their normals pointing
+ * onto the field, like {@link FieldWallModel#crescendo()} has them
+ */
+public class ScanClusterer {
+
+  final FieldWallModel walls;
+  final double clusterDistance;
+  final double inverseCellSize;
+  final int bucketMask;
+  // first point of every bucket, -1 if empty, the rest are chained through next
+  final int[] bucketHeads;
+
+  int[] next = new int[0];
+  int[] parent = new int[0];
+  double[] pointX = new double[0];
+  double[] pointY = new double[0];
+  int pointCount;
+
+  // per cluster root while accumulating
+  int[] counts = new int[0];
+  double[] sumX = new double[0];
+  double[] sumY = new double[0];
+  double[] minX = new double[0];
+  double[] minY = new double[0];
+  double[] maxX = new double[0];
+  double[] maxY = new double[0];
+
+  double[] clusterX = new double[0];
+  double[] clusterY = new double[0];
+  double[] clusterSize = new double[0];
+  int[] clusterPoints = new int[0];
+  int clusterCount;
+
+  /**
+   * @apiNote clusters at {@link OpponentConstants#kClusterDistanceMeters}
+   */
+  public ScanClusterer(FieldWallModel walls) {
+    this(
+      walls,
+      OpponentConstants.kClusterDistanceMeters,
+      OpponentConstants.kClusterBuckets
+    );
+  }
+
+  /**
+   * @param clusterDistance meters, points closer than this are in the same cluster
+   * @param buckets the size of the hash grid, a power of 2
+   */
+  public ScanClusterer(FieldWallModel walls, double clusterDistance, int buckets) {
+    this.walls = walls;
+    this.clusterDistance = clusterDistance;
+    this.inverseCellSize = 1.0 / clusterDistance;
+    this.bucketMask = buckets - 1;
+    this.bucketHeads = new int[buckets];
+  }
+
+  /**
+   * @param scan the scan, with {@link LidarScan#setPose} set to where the lidar was on the field
+   * @return the amount of robot sized clusters found, 0 if the scan has no pose
+   */
+  public int cluster(LidarScan scan) {
+    clusterCount = 0;
+    if (!scan.hasPose()) {
+      return 0;
+    }
+
+    ensureCapacity(scan.size());
+    collectPoints(scan);
+    joinPoints();
+    collectClusters(scan.getPoseX(), scan.getPoseY());
+    return clusterCount;
+  }
+
+  /**
+   * @apiNote puts every point that is not a wall into field coordinates
+   */
+  void collectPoints(LidarScan scan) {
+    float[] angles = scan.angles();
+    float[] distances = scan.distances();
+    double x = scan.getPoseX();
+    double y = scan.getPoseY();
+    double heading = scan.getPoseHeading();
+    pointCount = 0;
+
+    for (int i = 0; i < scan.size(); i++) {
+      double distance = distances[i];
+      if (
+        distance <= ObstacleConstants.kSelfDistanceMeters ||
+        distance > MappingConstants.kMaxRangeMeters
+      ) {
+        continue;
+      }
+
+      // lidar angles go clockwise
+      double angle = heading - angles[i];
+      double px = x + distance * Math.cos(angle);
+      double py = y + distance * Math.sin(angle);
+      int wall = walls.nearestWall(px, py);
+      if (
+        walls.lineDistance(wall, px, py) < OpponentConstants.kStaticMarginMeters
+      ) {
+        continue;
+      }
+
+      pointX[pointCount] = px;
+      pointY[pointCount] = py;
+      pointCount++;
+    }
+  }
+
+  void joinPoints() {
+    Arrays.fill(bucketHeads, -1);
+    double maxDistanceSquared = clusterDistance * clusterDistance;
+
+    for (int i = 0; i < pointCount; i++) {
+      parent[i] = i;
+      int cellX = (int) Math.floor(pointX[i] * inverseCellSize);
+      int cellY = (int) Math.floor(pointY[i] * inverseCellSize);
+
+      for (int dx = -1; dx <= 1; dx++) {
+        for (int dy = -1; dy <= 1; dy++) {
+          // buckets can be shared by far apart cells, the distance check sorts that out
+          int j = bucketHeads[bucket(cellX + dx, cellY + dy)];
+          while (j != -1) {
+            double ex = pointX[j] - pointX[i];
+            double ey = pointY[j] - pointY[i];
+            if (ex * ex + ey * ey < maxDistanceSquared) {
+              union(i, j);
+            }
+
+            j = next[j];
+          }
+        }
+      }
+
+      int own = bucket(cellX, cellY);
+      next[i] = bucketHeads[own];
+      bucketHeads[own] = i;
+    }
+  }
+
+  int bucket(int cellX, int cellY) {
+    return ((cellX * 73856093) ^ (cellY * 19349663)) & bucketMask;
+  }
+
+  int find(int i) {
+    while (parent[i] != i) {
+      // path halving
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+
+    return i;
+  }
+
+  void union(int a, int b) {
+    int rootA = find(a);
+    int rootB = find(b);
+    if (rootA != rootB) {
+      parent[rootA] = rootB;
+    }
+  }
+
+  void collectClusters(double lidarX, double lidarY) {
+    for (int i = 0; i < pointCount; i++) {
+      counts[i] = 0;
+      sumX[i] = 0;
+      sumY[i] = 0;
+      minX[i] = Double.POSITIVE_INFINITY;
+      minY[i] = Double.POSITIVE_INFINITY;
+      maxX[i] = Double.NEGATIVE_INFINITY;
+      maxY[i] = Double.NEGATIVE_INFINITY;
+    }
+
+    for (int i = 0; i < pointCount; i++) {
+      int root = find(i);
+      counts[root]++;
+      sumX[root] += pointX[i];
+      sumY[root] += pointY[i];
+      minX[root] = Math.min(minX[root], pointX[i]);
+      minY[root] = Math.min(minY[root], pointY[i]);
+      maxX[root] = Math.max(maxX[root], pointX[i]);
+      maxY[root] = Math.max(maxY[root], pointY[i]);
+    }
+
+    for (int i = 0; i < pointCount; i++) {
+      if (counts[i] < OpponentConstants.kMinClusterPoints) {
+        continue;
+      }
+
+      double size = Math.hypot(maxX[i] - minX[i], maxY[i] - minY[i]);
+      if (size > OpponentConstants.kMaxClusterSizeMeters) {
+        continue;
+      }
+
+      // the points are the near side, push the center away from the lidar
+      double x = sumX[i] / counts[i];
+      double y = sumY[i] / counts[i];
+      double range = Math.hypot(x - lidarX, y - lidarY);
+      double push = OpponentConstants.kCenterDepthMeters / range;
+      clusterX[clusterCount] = x + (x - lidarX) * push;
+      clusterY[clusterCount] = y + (y - lidarY) * push;
+      clusterSize[clusterCount] = size;
+      clusterPoints[clusterCount] = counts[i];
+      clusterCount++;
+    }
+  }
+
+  void ensureCapacity(int capacity) {
+    if (next.length >= capacity) {
+      return;
+    }
+
+    next = new int[capacity];
+    parent = new int[capacity];
+    pointX = new double[capacity];
+    pointY = new double[capacity];
+    counts = new int[capacity];
+    sumX = new double[capacity];
+    sumY = new double[capacity];
+    minX = new double[capacity];
+    minY = new double[capacity];
+    maxX = new double[capacity];
+    maxY = new double[capacity];
+    clusterX = new double[capacity];
+    clusterY = new double[capacity];
+    clusterSize = new double[capacity];
+    clusterPoints = new int[capacity];
+  }
+
+  /**
+   * @return the amount of clusters the last scan had
+   */
+  public int getClusterCount() {
+    return clusterCount;
+  }
+
+  /**
+   * @return field x in meters of where the object's center probably is
+   */
+  public double getClusterX(int cluster) {
+    return clusterX[cluster];
+  }
+
+  /**
+   * @return field y in meters of where the object's center probably is
+   */
+  public double getClusterY(int cluster) {
+    return clusterY[cluster];
+  }
+
+  /**
+   * @return meters across the points that were seen
+   */
+  public double getClusterSize(int cluster) {
+    return clusterSize[cluster];
+  }
+
+  public int getClusterPoints(int cluster) {
+    return clusterPoints[cluster];
+  }
+}
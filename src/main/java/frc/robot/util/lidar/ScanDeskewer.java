@@ -0,0 +1,144 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.LidarConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+
+/**
+ * @author godbrigero
+ * @purpose undoes the smear of a lidar sweep taken while driving. One A1 sweep takes 100-200ms and every point is
+ * measured from wherever the robot was at that moment, so each point is moved into the frame the lidar had
+ * when the sweep ended (the scan's timestamp) using poses from a {@link PoseHistory}.
+ * @apiNote one deskewer per thread, it keeps scratch poses. Works in place on the scan and allocates nothing.
+ * A point's time comes from how far around the sweep it is from the first point, the A1 spins at a
+ * steady rate. The sweep length is measured from the gap between scans
+ */
+public class ScanDeskewer {
+
+  static final double kTwoPi = 2 * Math.PI;
+
+  final PoseHistory history;
+  final double offsetX;
+  final double offsetY;
+  final double offsetHeading;
+
+  final double[] pose = new double[3];
+  long lastScanNanos;
+  long sweepNanos = LidarConstants.kDefaultSweepNanos;
+
+  /**
+   * @apiNote uses the lidar offset in {@link LidarConstants}
+   * @param history robot center poses from odometry
+   */
+  public ScanDeskewer(PoseHistory history) {
+    this(
+      history,
+      LidarConstants.kLidarOffsetXMeters,
+      LidarConstants.kLidarOffsetYMeters,
+      LidarConstants.kLidarOffsetHeadingRadians
+    );
+  }
+
+  /**
+   * @param history robot center poses from odometry
+   * @param offsetX where the lidar is on the robot, meters forward of the center
+   * @param offsetY meters left of the center
+   * @param offsetHeading radians counter clockwise from the robot's front
+   */
+  public ScanDeskewer(
+    PoseHistory history,
+    double offsetX,
+    double offsetY,
+    double offsetHeading
+  ) {
+    this.history = history;
+    this.offsetX = offsetX;
+    this.offsetY = offsetY;
+    this.offsetHeading = offsetHeading;
+  }
+
+  /**
+   * @apiNote call with every scan in order so the sweep length stays measured, the pose on the scan is not touched
+   * @return false if there is no history yet and the scan was left as is
+   */
+  public boolean deskew(LidarScan scan) {
+    long end = scan.getTimestampNanos();
+    long gap = end - lastScanNanos;
+    lastScanNanos = end;
+    // a dropped scan or the first one, keep the last good measurement
+    if (
+      gap >= LidarConstants.kMinSweepNanos &&
+      gap <= LidarConstants.kMaxSweepNanos
+    ) {
+      sweepNanos = gap;
+    }
+
+    if (scan.size() == 0 || !lidarPoseAt(end)) {
+      return false;
+    }
+
+    double endX = pose[0];
+    double endY = pose[1];
+    double endHeading = pose[2];
+    double endCos = Math.cos(endHeading);
+    double endSin = Math.sin(endHeading);
+
+    float[] angles = scan.angles();
+    float[] distances = scan.distances();
+    double firstAngle = angles[0];
+
+    for (int i = 0; i < scan.size(); i++) {
+      double distance = distances[i];
+      if (distance <= 0) {
+        continue;
+      }
+
+      double swept = angles[i] - firstAngle;
+      if (swept < 0) {
+        swept += kTwoPi;
+      }
+
+      lidarPoseAt(end - (long) ((1 - swept / kTwoPi) * sweepNanos));
+
+      // into the field from where the lidar was for this point, lidar angles go clockwise
+      double fieldAngle = pose[2] - angles[i];
+      double dx = pose[0] + distance * Math.cos(fieldAngle) - endX;
+      double dy = pose[1] + distance * Math.sin(fieldAngle) - endY;
+
+      // and back out from where it was at the end
+      double localX = endCos * dx + endSin * dy;
+      double localY = -endSin * dx + endCos * dy;
+      double angle = -Math.atan2(localY, localX);
+      if (angle < 0) {
+        angle += kTwoPi;
+      }
+
+      angles[i] = (float) angle;
+      distances[i] = (float) Math.hypot(localX, localY);
+    }
+
+    return true;
+  }
+
+  /**
+   * @return false if there is no history, otherwise pose holds where the lidar was
+   */
+  boolean lidarPoseAt(long timestampNanos) {
+    if (!history.getPose(timestampNanos, pose)) {
+      return false;
+    }
+
+    double cos = Math.cos(pose[2]);
+    double sin = Math.sin(pose[2]);
+    pose[0] += cos * offsetX - sin * offsetY;
+    pose[1] += sin * offsetX + cos * offsetY;
+    pose[2] += offsetHeading;
+    return true;
+  }
+
+  /**
+   * @return the sweep length in use
+   */
+  public long getSweepNanos() {
+    return sweepNanos;
+  }
+}
@@ -0,0 +1,40 @@
+package frc.robot.util.lidar;
+
+/**
+ * @author godbrigero
+ * @purpose one trusted result of {@link ScanMatcher}, where the lidar really was when a scan was taken
+ * @apiNote immutable, made at most once per scan (~10 a second) so it can be handed between threads as is
+ */
+public class ScanMatch {
+
+  public final long timestampNanos;
+  public final double x;
+  public final double y;
+  public final double heading;
+  public final double rmse;
+  public final int inliers;
+
+  /**
+   * @param timestampNanos when the scan finished, from {@link System#nanoTime()}
+   * @param x meters
+   * @param y meters
+   * @param heading radians, counter clockwise
+   * @param rmse meters, how far the points were from the walls on average
+   * @param inliers the amount of points that were matched to a wall
+   */
+  public ScanMatch(
+    long timestampNanos,
+    double x,
+    double y,
+    double heading,
+    double rmse,
+    int inliers
+  ) {
+    this.timestampNanos = timestampNanos;
+    this.x = x;
+    this.y = y;
+    this.heading = heading;
+    this.rmse = rmse;
+    this.inliers = inliers;
+  }
+}
@@ -0,0 +1,211 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.LidarConstants;
+import frc.robot.Constants.MappingConstants;
+import frc.robot.Constants.MatchingConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+
+/**
+ * @author godbrigero
+ * @purpose point to line ICP of one lidar scan against a {@link FieldWallModel}. Starting from the pose on
+ * the scan it pairs every point with its nearest wall, solves the 3x3 Gauss Newton system for the
+ * (x, y, heading) step that pulls the points onto those walls and repeats until the step is tiny.
+ * @apiNote one matcher per thread, {@link #match} reuses its scratch arrays and allocates nothing.
+ * Points further than {@link MatchingConstants#kMaxCorrespondenceMeters} from every wall (robots, people,
+ * the stage) are left out. The pose is the lidar's, not the robot center's
+ */
+public class ScanMatcher {
+
+  final FieldWallModel walls;
+
+  // the scan's points in the lidar frame, counter clockwise, computed once per match
+  float[] localX;
+  float[] localY;
+  int count;
+
+  double x;
+  double y;
+  double heading;
+  double rmse;
+  int inliers;
+  int iterations;
+  long overBudgetMatches;
+
+  public ScanMatcher(FieldWallModel walls) {
+    this.walls = walls;
+    this.localX = new float[LidarConstants.kScanPointCapacity];
+    this.localY = new float[LidarConstants.kScanPointCapacity];
+  }
+
+  /**
+   * @apiNote the result (good or not) is left in {@link #getX()}, {@link #getY()} and {@link #getHeading()}.
+   * Gives up after {@link MatchingConstants#kMatchBudgetNanos} and keeps the pose it got to
+   * @param scan the scan, its pose is the starting guess and must be set
+   * @return true if the scan lined up well enough with the walls to be trusted
+   */
+  public boolean match(LidarScan scan) {
+    long deadline = System.nanoTime() + MatchingConstants.kMatchBudgetNanos;
+    prepare(scan);
+
+    x = scan.getPoseX();
+    y = scan.getPoseY();
+    heading = scan.getPoseHeading();
+    rmse = Double.POSITIVE_INFINITY;
+    inliers = 0;
+    iterations = 0;
+
+    while (iterations < MatchingConstants.kMaxIterations) {
+      iterations++;
+      double cos = Math.cos(heading);
+      double sin = Math.sin(heading);
+
+      // upper half of J^T J and J^T r, J = (nx, ny, d residual / d heading)
+      double hxx = 0, hxy = 0, hxh = 0, hyy = 0, hyh = 0, hhh = 0;
+      double gx = 0, gy = 0, gh = 0;
+      double squares = 0;
+      inliers = 0;
+
+      for (int i = 0; i < count; i++) {
+        double rx = cos * localX[i] - sin * localY[i];
+        double ry = sin * localX[i] + cos * localY[i];
+        double px = x + rx;
+        double py = y + ry;
+
+        int wall = walls.nearestWall(px, py);
+        double residual = walls.lineDistance(wall, px, py);
+        if (Math.abs(residual) > MatchingConstants.kMaxCorrespondenceMeters) {
+          continue;
+        }
+
+        double nx = walls.getNormalX(wall);
+        double ny = walls.getNormalY(wall);
+        double nh = ny * rx - nx * ry;
+
+        hxx += nx * nx;
+        hxy += nx * ny;
+        hxh += nx * nh;
+        hyy += ny * ny;
+        hyh += ny * nh;
+        hhh += nh * nh;
+        gx += nx * residual;
+        gy += ny * residual;
+        gh += nh * residual;
+        squares += residual * residual;
+        inliers++;
+      }
+
+      if (inliers < MatchingConstants.kMinInliers) {
+        return false;
+      }
+
+      rmse = Math.sqrt(squares / inliers);
+
+      // the normals are unit length so the translation block has trace = inliers, its smallest
+      // eigenvalue is how many points hold the weakest direction. One wall alone gives ~0
+      double halfTrace = (hxx + hyy) / 2;
+      double halfDifference = (hxx - hyy) / 2;
+      double weakest =
+        halfTrace - Math.sqrt(halfDifference * halfDifference + hxy * hxy);
+      if (weakest < MatchingConstants.kMinConstraint * inliers) {
+        return false;
+      }
+
+      // solve H step = -g with Cramer's rule, H is symmetric
+      double c00 = hyy * hhh - hyh * hyh;
+      double c01 = hxh * hyh - hxy * hhh;
+      double c02 = hxy * hyh - hxh * hyy;
+      double determinant = hxx * c00 + hxy * c01 + hxh * c02;
+      if (Math.abs(determinant) < 1e-12) {
+        return false;
+      }
+
+      double c11 = hxx * hhh - hxh * hxh;
+      double c12 = hxh * hxy - hxx * hyh;
+      double c22 = hxx * hyy - hxy * hxy;
+      double stepX = -(c00 * gx + c01 * gy + c02 * gh) / determinant;
+      double stepY = -(c01 * gx + c11 * gy + c12 * gh) / determinant;
+      double stepHeading = -(c02 * gx + c12 * gy + c22 * gh) / determinant;
+
+      x += stepX;
+      y += stepY;
+      heading += stepHeading;
+
+      if (
+        Math.abs(stepX) < MatchingConstants.kConvergedMeters &&
+        Math.abs(stepY) < MatchingConstants.kConvergedMeters &&
+        Math.abs(stepHeading) < MatchingConstants.kConvergedRadians
+      ) {
+        break;
+      }
+
+      if (System.nanoTime() > deadline) {
+        overBudgetMatches++;
+        break;
+      }
+    }
+
+    return rmse <= MatchingConstants.kMaxRmseMeters;
+  }
+
+  void prepare(LidarScan scan) {
+    if (localX.length < scan.size()) {
+      localX = new float[scan.size()];
+      localY = new float[scan.size()];
+    }
+
+    float[] angles = scan.angles();
+    float[] distances = scan.distances();
+    count = 0;
+    for (int i = 0; i < scan.size(); i++) {
+      float distance = distances[i];
+      if (distance <= 0 || distance > MappingConstants.kMaxRangeMeters) {
+        continue;
+      }
+
+      // lidar angles go clockwise
+      localX[count] = (float) (distance * Math.cos(-angles[i]));
+      localY[count] = (float) (distance * Math.sin(-angles[i]));
+      count++;
+    }
+  }
+
+  /**
+   * @return where the last match put the lidar, meters
+   */
+  public double getX() {
+    return x;
+  }
+
+  public double getY() {
+    return y;
+  }
+
+  /**
+   * @return radians, counter clockwise
+   */
+  public double getHeading() {
+    return heading;
+  }
+
+  /**
+   * @return root mean square distance of the inliers to their walls, before the last step
+   */
+  public double getRmse() {
+    return rmse;
+  }
+
+  public int getInliers() {
+    return inliers;
+  }
+
+  public int getIterations() {
+    return iterations;
+  }
+
+  /**
+   * @return the amount of matches that ran out of time, should stay 0 on the roboRIO
+   */
+  public long getOverBudgetMatches() {
+    return overBudgetMatches;
+  }
+}
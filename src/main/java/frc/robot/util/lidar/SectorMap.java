@@ -0,0 +1,166 @@
+package frc.robot.util.lidar;
+
+import frc.robot.Constants.LidarConstants;
+import frc.robot.Constants.ObstacleConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import java.util.Arrays;
+
+/**
+ * @author godbrigero
+ * @purpose the closest thing the lidar sees in each slice of the circle around the robot, rebuilt from every
+ * scan in one pass. {@link #getSpeedScale} uses it to slow the robot down before it runs into whatever is there
+ * @apiNote sectors are in the robot's frame, counter clockwise from its front, sector 0 is centered on the front.
+ * Robot loop only, updating and reading allocate nothing
+ */
+public class SectorMap {
+
+  static final double kTwoPi = 2 * Math.PI;
+
+  final int sectors;
+  final double sectorWidth;
+  final double offsetHeading;
+  final float[] minDistances;
+  // robot frame angle of the closest point of every sector
+  final float[] minAngles;
+
+  long timestampNanos;
+
+  /**
+   * @apiNote {@link ObstacleConstants#kSectorCount} sectors, the lidar turned like {@link LidarConstants} says
+   */
+  public SectorMap() {
+    this(
+      ObstacleConstants.kSectorCount,
+      LidarConstants.kLidarOffsetHeadingRadians
+    );
+  }
+
+  /**
+   * @param sectors the amount of slices
+   * @param offsetHeading radians counter clockwise from the robot's front to the lidar's
+   */
+  public SectorMap(int sectors, double offsetHeading) {
+    this.sectors = sectors;
+    this.sectorWidth = kTwoPi / sectors;
+    this.offsetHeading = offsetHeading;
+    this.minDistances = new float[sectors];
+    this.minAngles = new float[sectors];
+    Arrays.fill(minDistances, Float.POSITIVE_INFINITY);
+  }
+
+  /**
+   * @apiNote replaces the table with what this scan saw. Points without a return or on the robot itself are skipped
+   */
+  public void update(LidarScan scan) {
+    Arrays.fill(minDistances, Float.POSITIVE_INFINITY);
+    float[] angles = scan.angles();
+    float[] distances = scan.distances();
+
+    for (int i = 0; i < scan.size(); i++) {
+      float distance = distances[i];
+      if (distance <= ObstacleConstants.kSelfDistanceMeters) {
+        continue;
+      }
+
+      float angle = (float) (offsetHeading - angles[i]);
+      int sector = getSector(angle);
+      if (distance < minDistances[sector]) {
+        minDistances[sector] = distance;
+        minAngles[sector] = angle;
+      }
+    }
+
+    timestampNanos = scan.getTimestampNanos();
+  }
+
+  /**
+   * @param angle radians counter clockwise from the robot's front, any value
+   * @return the sector the angle is in
+   */
+  public int getSector(double angle) {
+    // shifted by half a sector so sector 0 is centered on the front
+    double turns = (angle + sectorWidth / 2) / kTwoPi;
+    int sector = (int) Math.floor((turns - Math.floor(turns)) * sectors);
+    return sector == sectors ? 0 : sector;
+  }
+
+  /**
+   * @return meters from the lidar to the closest point in the sector, infinity if it saw nothing
+   */
+  public float getMinDistance(int sector) {
+    return minDistances[sector];
+  }
+
+  public int getSectorCount() {
+    return sectors;
+  }
+
+  /**
+   * @apiNote treats the closest point of every sector as an obstacle and the robot as a circle of
+   * {@link ObstacleConstants#kRobotRadiusMeters}. For every obstacle in the robot's path it finds how fast
+   * the robot can go and still stop {@link ObstacleConstants#kStopMarginMeters} short of it after reacting and
+   * braking. Obstacles the robot would pass by (driving along a wall) do not slow it
+   * @param direction radians counter clockwise from the robot's front, the way the robot is being driven
+   * @param speed meters per second it is being asked to go that way
+   * @param nowNanos from {@link System#nanoTime()}
+   * @return what to multiply the translation by, [0, 1]. 1 if the last scan is too old to trust
+   */
+  public double getSpeedScale(double direction, double speed, long nowNanos) {
+    if (
+      speed <= 0 ||
+      nowNanos - timestampNanos > ObstacleConstants.kMaxScanAgeNanos
+    ) {
+      return 1;
+    }
+
+    double radius = ObstacleConstants.kRobotRadiusMeters;
+    double deceleration =
+      ObstacleConstants.kMaxDecelerationMetersPerSecondSquared;
+    double reaction = ObstacleConstants.kReactionSeconds;
+    double limit = speed;
+
+    for (int i = 0; i < sectors; i++) {
+      double distance = minDistances[i];
+      if (distance == Float.POSITIVE_INFINITY) {
+        continue;
+      }
+
+      double off = Math.abs(
+        Math.IEEEremainder(minAngles[i] - direction, kTwoPi)
+      );
+      if (off >= Math.PI / 2) {
+        continue;
+      }
+
+      double lateral = distance * Math.sin(off);
+      if (lateral >= radius) {
+        continue;
+      }
+
+      // how far the robot can go until its edge touches the obstacle, less the margin
+      double free =
+        distance * Math.cos(off) -
+        Math.sqrt(radius * radius - lateral * lateral) -
+        ObstacleConstants.kStopMarginMeters;
+      if (free <= 0) {
+        return 0;
+      }
+
+      // reaction * v + v^2 / 2a = free, solved for v
+      double allowed =
+        deceleration *
+        (-reaction +
+          Math.sqrt(reaction * reaction + 2 * free / deceleration));
+      limit = Math.min(limit, allowed);
+    }
+
+    return limit / speed;
+  }
+
+  /**
+   * @return when the scan the table came from finished
+   */
+  public long getTimestampNanos() {
+    return timestampNanos;
+  }
+}
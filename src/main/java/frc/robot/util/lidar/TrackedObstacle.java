@@ -0,0 +1,54 @@
+package frc.robot.util.lidar;
+
+/**
+ * @author godbrigero
+ * @purpose one object the lidar is following around the field, most likely another robot
+ * @apiNote immutable, a new set is made once per scan (~10 a second) so they can be handed between threads as is
+ */
+public class TrackedObstacle {
+
+  public final int id;
+  public final long timestampNanos;
+  public final double x;
+  public final double y;
+  public final double velocityX;
+  public final double velocityY;
+
+  /**
+   * @param id stays the same for as long as the object is tracked
+   * @param timestampNanos when the state is from, from {@link System#nanoTime()}
+   * @param x field meters
+   * @param y field meters
+   * @param velocityX meters per second
+   * @param velocityY meters per second
+   */
+  public TrackedObstacle(
+    int id,
+    long timestampNanos,
+    double x,
+    double y,
+    double velocityX,
+    double velocityY
+  ) {
+    this.id = id;
+    this.timestampNanos = timestampNanos;
+    this.x = x;
+    this.y = y;
+    this.velocityX = velocityX;
+    this.velocityY = velocityY;
+  }
+
+  /**
+   * @return where it will be at nowNanos if it keeps going the way it is, field meters
+   */
+  public double predictX(long nowNanos) {
+    return x + velocityX * (nowNanos - timestampNanos) / 1e9;
+  }
+
+  /**
+   * @return where it will be at nowNanos if it keeps going the way it is, field meters
+   */
+  public double predictY(long nowNanos) {
+    return y + velocityY * (nowNanos - timestampNanos) / 1e9;
+  }
+}
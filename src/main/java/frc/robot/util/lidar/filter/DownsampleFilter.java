@@ -0,0 +1,62 @@
+package frc.robot.util.lidar.filter;
+
+import frc.robot.Constants.FilterConstants;
+import frc.robot.inter.ScanFilter;
+
+/**
+ * @author godbrigero
+ * @purpose thins a scan down to at most one point per bin of angle, so what comes after (ray tracing, matching,
+ * clustering) does not pay for the A1's uneven and often needlessly fine resolution
+ * @apiNote the closest point of every bin is the one kept, so nothing that is in the way ever gets thinned out.
+ * Points are expected in the order the lidar sweeps them, a bin only merges points next to each other
+ */
+public class DownsampleFilter implements ScanFilter {
+
+  final double binRadians;
+
+  /**
+   * @apiNote bins of {@link FilterConstants#kDownsampleRadians}
+   */
+  public DownsampleFilter() {
+    this(FilterConstants.kDownsampleRadians);
+  }
+
+  /**
+   * @param binRadians how wide every bin is
+   */
+  public DownsampleFilter(double binRadians) {
+    this.binRadians = binRadians;
+  }
+
+  @Override
+  public String getName() {
+    return "downsample";
+  }
+
+  @Override
+  public int filter(
+    float[] angles,
+    float[] distances,
+    short[] qualities,
+    int size
+  ) {
+    int kept = 0;
+    long bin = Long.MIN_VALUE;
+    for (int i = 0; i < size; i++) {
+      long pointBin = (long) Math.floor(angles[i] / binRadians);
+      if (pointBin != bin) {
+        bin = pointBin;
+        angles[kept] = angles[i];
+        distances[kept] = distances[i];
+        qualities[kept] = qualities[i];
+        kept++;
+      } else if (distances[i] < distances[kept - 1]) {
+        angles[kept - 1] = angles[i];
+        distances[kept - 1] = distances[i];
+        qualities[kept - 1] = qualities[i];
+      }
+    }
+
+    return kept;
+  }
+}
@@ -0,0 +1,101 @@
+package frc.robot.util.lidar.filter;
+
+import frc.robot.Constants.FilterConstants;
+import frc.robot.inter.ScanFilter;
+
+/**
+ * @author godbrigero
+ * @purpose throws out points far off the median of their neighbours, the lone spikes the A1 gives on the
+ * edges of objects (a return mixed from the object and the wall behind it) and off shiny surfaces
+ * @apiNote the window wraps around the end of the scan since a revolution is a circle. A real object needs
+ * more than half a window of points to survive, at 0.75 degrees a point that is ~10cm at 3m
+ */
+public class OutlierFilter implements ScanFilter {
+
+  final int halfWindow;
+  final float maxRatio;
+  final float[] window;
+  // the distances before any were moved, every point is judged on the scan as it came in
+  float[] original = new float[0];
+
+  /**
+   * @apiNote {@link FilterConstants#kOutlierWindow} points, {@link FilterConstants#kOutlierMaxRatio} off
+   */
+  public OutlierFilter() {
+    this(FilterConstants.kOutlierWindow, FilterConstants.kOutlierMaxRatio);
+  }
+
+  /**
+   * @param window the amount of points the median is taken over, the point itself in the middle. Made odd
+   * @param maxRatio how far off the median a point may be, as a share of the median
+   */
+  public OutlierFilter(int window, double maxRatio) {
+    this.halfWindow = window / 2;
+    this.maxRatio = (float) maxRatio;
+    this.window = new float[halfWindow * 2 + 1];
+  }
+
+  @Override
+  public String getName() {
+    return "outlier";
+  }
+
+  @Override
+  public int filter(
+    float[] angles,
+    float[] distances,
+    short[] qualities,
+    int size
+  ) {
+    if (size < window.length) {
+      return size;
+    }
+
+    if (original.length < size) {
+      original = new float[distances.length];
+    }
+
+    System.arraycopy(distances, 0, original, 0, size);
+
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      float median = median(i, size);
+      if (Math.abs(original[i] - median) > median * maxRatio) {
+        continue;
+      }
+
+      angles[kept] = angles[i];
+      distances[kept] = original[i];
+      qualities[kept] = qualities[i];
+      kept++;
+    }
+
+    return kept;
+  }
+
+  /**
+   * @apiNote insertion sort into the window, it is only a handful of points
+   */
+  float median(int center, int size) {
+    int count = 0;
+    for (int offset = -halfWindow; offset <= halfWindow; offset++) {
+      int index = center + offset;
+      if (index < 0) {
+        index += size;
+      } else if (index >= size) {
+        index -= size;
+      }
+
+      float value = original[index];
+      int j = count++;
+      while (j > 0 && window[j - 1] > value) {
+        window[j] = window[j - 1];
+        j--;
+      }
+
+      window[j] = value;
+    }
+
+    return window[halfWindow];
+  }
+}
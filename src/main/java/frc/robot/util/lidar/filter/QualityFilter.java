@@ -0,0 +1,54 @@
+package frc.robot.util.lidar.filter;
+
+import frc.robot.Constants.FilterConstants;
+import frc.robot.inter.ScanFilter;
+
+/**
+ * @author godbrigero
+ * @purpose throws out points without a return (distance 0) and points whose signal is too weak to trust
+ */
+public class QualityFilter implements ScanFilter {
+
+  final short minQuality;
+
+  /**
+   * @apiNote at {@link FilterConstants#kMinQuality}
+   */
+  public QualityFilter() {
+    this(FilterConstants.kMinQuality);
+  }
+
+  /**
+   * @param minQuality the weakest signal kept, as the lidar reports it
+   */
+  public QualityFilter(short minQuality) {
+    this.minQuality = minQuality;
+  }
+
+  @Override
+  public String getName() {
+    return "quality";
+  }
+
+  @Override
+  public int filter(
+    float[] angles,
+    float[] distances,
+    short[] qualities,
+    int size
+  ) {
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      if (distances[i] <= 0 || qualities[i] < minQuality) {
+        continue;
+      }
+
+      angles[kept] = angles[i];
+      distances[kept] = distances[i];
+      qualities[kept] = qualities[i];
+      kept++;
+    }
+
+    return kept;
+  }
+}
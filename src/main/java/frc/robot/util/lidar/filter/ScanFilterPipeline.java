@@ -0,0 +1,173 @@
+package frc.robot.util.lidar.filter;
+
+import frc.robot.Constants.FilterConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.ScanQueue;
+import frc.robot.inter.LidarInterface;
+import frc.robot.inter.ScanFilter;
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author godbrigero
+ * @purpose sits between a lidar and everything that uses its scans and runs them through a list of
+ * {@link ScanFilter} stages on its own thread, so the robot loop gets clean scans without paying for them.
+ * @apiNote it is a {@link LidarInterface} itself, drain it instead of the lidar (and never drain the lidar too,
+ * this thread is its only consumer). Scans are filtered in place and passed on, they still belong to the lidar's
+ * pool. Every stage is timed, see {@link #getLastStageNanos} and {@link #getAverageStageNanos}
+ */
+public class ScanFilterPipeline implements LidarInterface, Closeable {
+
+  static final long kIdleParkNanos = 5_000_000;
+
+  final LidarInterface source;
+  final ScanFilter[] stages;
+  final ScanQueue<LidarScan> queue;
+  final Thread thread;
+
+  final AtomicLongArray lastStageNanos;
+  final AtomicLongArray totalStageNanos;
+  final AtomicLongArray removedPoints;
+  final AtomicLong filteredScans = new AtomicLong();
+  volatile boolean running = true;
+
+  // kept so draining does not make a new lambda every time
+  final ScanQueue.ScanConsumer<LidarScan> filterer = this::filter;
+
+  /**
+   * @apiNote quality, self mask, outliers and then downsampling, all from {@link FilterConstants}
+   * @param source the lidar, real or simulated
+   */
+  public ScanFilterPipeline(LidarInterface source) {
+    this(
+      source,
+      new QualityFilter(),
+      new SelfMaskFilter(),
+      new OutlierFilter(),
+      new DownsampleFilter()
+    );
+  }
+
+  /**
+   * @param source the lidar, real or simulated
+   * @param stages run in this order, each only on what the one before kept
+   */
+  public ScanFilterPipeline(LidarInterface source, ScanFilter... stages) {
+    this.source = source;
+    this.stages = stages.clone();
+    this.queue = new ScanQueue<>(FilterConstants.kFilterQueueCapacity);
+    this.lastStageNanos = new AtomicLongArray(stages.length);
+    this.totalStageNanos = new AtomicLongArray(stages.length);
+    this.removedPoints = new AtomicLongArray(stages.length);
+
+    this.thread = new Thread(this::run, "ScanFilterPipeline");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  void filter(long timestampNanos, LidarScan scan) {
+    int size = scan.size();
+    for (int i = 0; i < stages.length; i++) {
+      long start = System.nanoTime();
+      int kept = stages[i].filter(
+        scan.angles(),
+        scan.distances(),
+        scan.qualities(),
+        size
+      );
+      long elapsed = System.nanoTime() - start;
+
+      lastStageNanos.set(i, elapsed);
+      totalStageNanos.addAndGet(i, elapsed);
+      removedPoints.addAndGet(i, size - kept);
+      size = kept;
+    }
+
+    scan.setSize(size);
+    filteredScans.incrementAndGet();
+    if (!queue.offer(timestampNanos, scan)) {
+      scan.release();
+    }
+  }
+
+  void run() {
+    while (running) {
+      if (source.drainScans(filterer) == 0) {
+        LockSupport.parkNanos(kIdleParkNanos);
+      }
+    }
+  }
+
+  /**
+   * @apiNote call from one thread only (the robot loop). The consumer owns every scan it gets and has to
+   * {@link LidarScan#release()} it
+   */
+  @Override
+  public int drainScans(ScanQueue.ScanConsumer<LidarScan> consumer) {
+    return queue.drain(consumer);
+  }
+
+  /**
+   * @return the amount of filtered scans lost because no one drained them in time, the lidar's own are
+   * {@link #getSourceDroppedScans()}
+   */
+  @Override
+  public long getDroppedScans() {
+    return queue.getDroppedScans();
+  }
+
+  public long getSourceDroppedScans() {
+    return source.getDroppedScans();
+  }
+
+  @Override
+  public long getPoolMisses() {
+    return source.getPoolMisses();
+  }
+
+  public int getStageCount() {
+    return stages.length;
+  }
+
+  public String getStageName(int stage) {
+    return stages[stage].getName();
+  }
+
+  /**
+   * @return how long the stage took on the last scan
+   */
+  public long getLastStageNanos(int stage) {
+    return lastStageNanos.get(stage);
+  }
+
+  /**
+   * @return how long the stage takes on average over every scan so far, 0 before the first
+   */
+  public long getAverageStageNanos(int stage) {
+    long scans = filteredScans.get();
+    return scans == 0 ? 0 : totalStageNanos.get(stage) / scans;
+  }
+
+  /**
+   * @return the amount of points the stage threw out over every scan so far
+   */
+  public long getRemovedPoints(int stage) {
+    return removedPoints.get(stage);
+  }
+
+  public long getFilteredScans() {
+    return filteredScans.get();
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
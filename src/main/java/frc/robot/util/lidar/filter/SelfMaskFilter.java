@@ -0,0 +1,82 @@
+package frc.robot.util.lidar.filter;
+
+import frc.robot.Constants.FilterConstants;
+import frc.robot.inter.ScanFilter;
+
+/**
+ * @author godbrigero
+ * @purpose throws out what the lidar sees of the robot itself (bumpers, the arm's towers) by angle
+ * @apiNote a point is only masked if it is also closer than the max distance, past the robot's frame the same
+ * angles still see the field
+ */
+public class SelfMaskFilter implements ScanFilter {
+
+  static final double kTwoPi = 2 * Math.PI;
+
+  final float[] starts;
+  final float[] ends;
+  final float maxDistance;
+
+  /**
+   * @apiNote masks {@link FilterConstants#kSelfMaskRadians} up to {@link FilterConstants#kSelfMaskMaxMeters}
+   */
+  public SelfMaskFilter() {
+    this(FilterConstants.kSelfMaskRadians, FilterConstants.kSelfMaskMaxMeters);
+  }
+
+  /**
+   * @param ranges start, end pairs of lidar frame angles (radians clockwise, [0, 2pi)), a start past its end
+   * wraps through 0
+   * @param maxDistance meters, points this far or further are never masked
+   */
+  public SelfMaskFilter(double[] ranges, double maxDistance) {
+    this.starts = new float[ranges.length / 2];
+    this.ends = new float[ranges.length / 2];
+    for (int i = 0; i < starts.length; i++) {
+      starts[i] = (float) ranges[i * 2];
+      ends[i] = (float) ranges[i * 2 + 1];
+    }
+
+    this.maxDistance = (float) maxDistance;
+  }
+
+  @Override
+  public String getName() {
+    return "self";
+  }
+
+  @Override
+  public int filter(
+    float[] angles,
+    float[] distances,
+    short[] qualities,
+    int size
+  ) {
+    int kept = 0;
+    for (int i = 0; i < size; i++) {
+      if (distances[i] < maxDistance && isMasked(angles[i])) {
+        continue;
+      }
+
+      angles[kept] = angles[i];
+      distances[kept] = distances[i];
+      qualities[kept] = qualities[i];
+      kept++;
+    }
+
+    return kept;
+  }
+
+  boolean isMasked(float angle) {
+    for (int i = 0; i < starts.length; i++) {
+      boolean inside = starts[i] <= ends[i]
+        ? angle >= starts[i] && angle <= ends[i]
+        : angle >= starts[i] || angle <= ends[i];
+      if (inside) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
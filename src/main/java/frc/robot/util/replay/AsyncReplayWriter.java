@@ -0,0 +1,231 @@
+package frc.robot.util.replay;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author godbrigero
+ * @purpose takes frames from the scheduler thread through a {@link ReplayRingBuffer} and writes them
+ * to disk in big blocks from its own thread so a slow flash write never shows up as a loop overrun
+ */
+public class AsyncReplayWriter implements Closeable {
+
+  static final long kIdleParkNanos = 2_000_000;
+  static final long kMaxErrorParkNanos = 1_000_000_000;
+
+  final ReplayRingBuffer ring;
+  final WritableByteChannel channel;
+  final long flushIntervalNanos;
+  final long syncIntervalNanos;
+  final Thread thread;
+
+  final AtomicLong writtenFrames = new AtomicLong();
+  final AtomicLong writtenBytes = new AtomicLong();
+
+  ByteBuffer block;
+  long firstPendingNanos;
+  long lastSyncNanos = System.nanoTime();
+  boolean unsynced;
+  // the block is flipped and partly written (a write failed), the rest goes out before anything new goes in
+  boolean writing;
+  volatile boolean running = true;
+  volatile IOException lastError;
+  // what was last sent to the driver station, so a disk that keeps failing is reported once and not every loop
+  String reportedError;
+  long errorParkNanos = kIdleParkNanos;
+
+  /**
+   * @param channel where the blocks get written to. The writer owns it and closes it
+   * @param ringCapacity the amount of frames that can be waiting at once
+   * @param initialFrameBytes the preallocated size of each frame slot
+   * @param blockBytes the size of the blocks written to disk
+   * @param flushIntervalMs the longest a frame can wait in a half full block before being written
+   * @param syncIntervalMs how often written blocks are forced to the disk itself (fsync), so a brown out loses at most this much
+   * @param policy what to do when the ring is full
+   */
+  public AsyncReplayWriter(
+    WritableByteChannel channel,
+    int ringCapacity,
+    int initialFrameBytes,
+    int blockBytes,
+    long flushIntervalMs,
+    long syncIntervalMs,
+    BackpressurePolicy policy
+  ) {
+    this.ring = new ReplayRingBuffer(ringCapacity, initialFrameBytes, policy);
+    this.channel = channel;
+    this.block = ByteBuffer.allocateDirect(blockBytes);
+    this.flushIntervalNanos = flushIntervalMs * 1_000_000;
+    this.syncIntervalNanos = syncIntervalMs * 1_000_000;
+
+    this.thread = new Thread(this::run, "ReplayLoggerWriter");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * @apiNote call only from the logging thread
+   * @param frame the serialized frame, its remaining bytes are consumed
+   * @return false if the frame was dropped
+   */
+  public boolean offer(ByteBuffer frame) {
+    return ring.offer(frame);
+  }
+
+  void run() {
+    while (running) {
+      try {
+        boolean moved = drainOnce();
+        reportedError = null;
+        errorParkNanos = kIdleParkNanos;
+        if (!moved) {
+          LockSupport.parkNanos(kIdleParkNanos);
+        }
+      } catch (IOException | RuntimeException e) {
+        // a bug in a codec or the storage should not silently kill the thread and stall the ring for the rest of the match
+        lastError =
+          e instanceof IOException ? (IOException) e : new IOException(e);
+        if (!String.valueOf(e).equals(reportedError)) {
+          reportedError = String.valueOf(e);
+          DriverStation.reportError(
+            "Replay writer failed: " + reportedError,
+            false
+          );
+        }
+
+        // back off so a dead disk is not hammered, the ring fills up and its policy decides what happens to new frames
+        LockSupport.parkNanos(errorParkNanos);
+        errorParkNanos = Math.min(errorParkNanos * 2, kMaxErrorParkNanos);
+      }
+    }
+  }
+
+  /**
+   * @return true if any frame was moved out of the ring
+   */
+  boolean drainOnce() throws IOException {
+    if (writing) {
+      writeBlock();
+    }
+
+    boolean moved = false;
+    while (true) {
+      int copied = ring.poll(block);
+      if (copied > 0) {
+        if (block.position() == copied) {
+          firstPendingNanos = System.nanoTime();
+        }
+
+        moved = true;
+        writtenFrames.incrementAndGet();
+        continue;
+      }
+
+      if (copied < 0) {
+        writeBlock();
+        int next = ring.peekLength();
+        if (next > block.capacity()) {
+          block = ByteBuffer.allocateDirect(next);
+        }
+
+        continue;
+      }
+
+      break;
+    }
+
+    if (
+      block.position() > 0 &&
+      System.nanoTime() - firstPendingNanos >= flushIntervalNanos
+    ) {
+      writeBlock();
+    }
+
+    if (unsynced && System.nanoTime() - lastSyncNanos >= syncIntervalNanos) {
+      sync(channel);
+      lastSyncNanos = System.nanoTime();
+      unsynced = false;
+    }
+
+    return moved;
+  }
+
+  /**
+   * @apiNote if the channel throws, the block stays as it is and the next call writes only what is left of it,
+   * so nothing that already made it out is ever written twice
+   */
+  void writeBlock() throws IOException {
+    if (!writing) {
+      block.flip();
+      writing = true;
+    }
+
+    while (block.hasRemaining()) {
+      writtenBytes.addAndGet(channel.write(block));
+    }
+
+    block.clear();
+    writing = false;
+    unsynced = true;
+  }
+
+  /**
+   * @apiNote forces what was written to the channel onto the disk, if the channel knows how
+   */
+  public static void sync(WritableByteChannel channel) throws IOException {
+    if (channel instanceof FileChannel) {
+      ((FileChannel) channel).force(false);
+    } else if (channel instanceof SegmentedLogStorage) {
+      ((SegmentedLogStorage) channel).flush();
+    }
+  }
+
+  /**
+   * @apiNote stops the thread, writes whatever is left in the ring and closes the channel
+   */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    drainOnce();
+    writeBlock();
+    sync(channel);
+    channel.close();
+  }
+
+  /**
+   * @return the amount of frames (one per logged tick) that the ring had to throw away
+   */
+  public long getDroppedFrames() {
+    return ring.getDroppedFrames();
+  }
+
+  /**
+   * @return the amount of frames that made it out of the ring into a block
+   */
+  public long getWrittenFrames() {
+    return writtenFrames.get();
+  }
+
+  public long getWrittenBytes() {
+    return writtenBytes.get();
+  }
+
+  /**
+   * @return the last error the writer thread hit or null if it never failed
+   */
+  public IOException getLastError() {
+    return lastError;
+  }
+}
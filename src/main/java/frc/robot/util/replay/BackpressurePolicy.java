@@ -0,0 +1,20 @@
+package frc.robot.util.replay;
+
+/**
+ * @author godbrigero
+ * @purpose what the logger should do when the writer thread falls behind and the ring buffer is full
+ */
+public enum BackpressurePolicy {
+  /**
+   * @apiNote throws away the oldest record that has not been written yet so the newest data always makes it
+   */
+  DROP_OLDEST,
+  /**
+   * @apiNote throws away the record that is being offered, the ring is left untouched
+   */
+  DROP_NEWEST,
+  /**
+   * @apiNote waits on the scheduler thread until the writer frees a slot. Nothing is lost but the loop can overrun
+   */
+  BLOCK,
+}
@@ -0,0 +1,179 @@
+package frc.robot.util.replay;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @author godbrigero
+ * @purpose how the values of one device are turned into bytes. Each device picks one through
+ * {@link frc.robot.inter.ReplayLoggerDevice#getCodec()} and the choice is written in the log header
+ * so the reader knows how to decode it.
+ */
+public enum ReplayCodec {
+  /**
+   * @apiNote 8 bytes per value, lossless
+   */
+  RAW((byte) 0) {
+    @Override
+    public int maxEncodedBytes(int valueCount) {
+      return valueCount * Double.BYTES;
+    }
+
+    @Override
+    public void encode(SampleBuffer in, ByteBuffer out) {
+      double[] values = in.array();
+      for (int i = 0; i < in.size(); i++) {
+        out.putDouble(values[i]);
+      }
+    }
+
+    @Override
+    public void decode(ByteBuffer in, int valueCount, SampleBuffer out) {
+      out.setSize(valueCount);
+      double[] values = out.array();
+      for (int i = 0; i < valueCount; i++) {
+        values[i] = in.getDouble();
+      }
+    }
+  },
+
+  /**
+   * @apiNote 4 bytes per value, about 7 significant digits which is plenty for any sensor we have
+   */
+  FLOAT32((byte) 1) {
+    @Override
+    public int maxEncodedBytes(int valueCount) {
+      return valueCount * Float.BYTES;
+    }
+
+    @Override
+    public void encode(SampleBuffer in, ByteBuffer out) {
+      double[] values = in.array();
+      for (int i = 0; i < in.size(); i++) {
+        out.putFloat((float) values[i]);
+      }
+    }
+
+    @Override
+    public void decode(ByteBuffer in, int valueCount, SampleBuffer out) {
+      out.setSize(valueCount);
+      double[] values = out.array();
+      for (int i = 0; i < valueCount; i++) {
+        values[i] = in.getFloat();
+      }
+    }
+  },
+
+  /**
+   * @apiNote for lidar scans in meters. Each value is rounded to the millimeter, the difference from the
+   * previous value is zigzag encoded (so small negatives stay small) and written as a varint. Neighbouring
+   * lidar points are close to each other so most of them take 1 or 2 bytes instead of 8.
+   * Values further than {@link #kMaxMillimeters} from 0 are clamped so a delta can never overflow. NaN and the
+   * infinities are written as {@link #kNonFiniteMarker} followed by the raw double (18 bytes) and do not
+   * move the previous value, so they come back exactly instead of as 0 or a wrapped number
+   */
+  DELTA_VARINT_MM((byte) 2) {
+    @Override
+    public int maxEncodedBytes(int valueCount) {
+      return valueCount * (kMaxVarintBytes + Double.BYTES);
+    }
+
+    @Override
+    public void encode(SampleBuffer in, ByteBuffer out) {
+      double[] values = in.array();
+      long previous = 0;
+      for (int i = 0; i < in.size(); i++) {
+        if (!Double.isFinite(values[i])) {
+          putVarint(out, kNonFiniteMarker);
+          out.putDouble(values[i]);
+          continue;
+        }
+
+        long fixed = Math.round(values[i] * kMillimetersPerMeter);
+        fixed = Math.max(-kMaxMillimeters, Math.min(kMaxMillimeters, fixed));
+        long delta = fixed - previous;
+        previous = fixed;
+        putVarint(out, (delta << 1) ^ (delta >> 63));
+      }
+    }
+
+    @Override
+    public void decode(ByteBuffer in, int valueCount, SampleBuffer out) {
+      out.setSize(valueCount);
+      double[] values = out.array();
+      long previous = 0;
+      for (int i = 0; i < valueCount; i++) {
+        long zigzag = getVarint(in);
+        if (zigzag == kNonFiniteMarker) {
+          values[i] = in.getDouble();
+          continue;
+        }
+
+        previous += (zigzag >>> 1) ^ -(zigzag & 1);
+        values[i] = previous / kMillimetersPerMeter;
+      }
+    }
+  };
+
+  static final int kMaxVarintBytes = 10;
+  static final double kMillimetersPerMeter = 1000.0;
+  // with every value within this the biggest delta zigzags to under 2^63, so the all ones varint is free
+  static final long kMaxMillimeters = 1L << 60;
+  static final long kNonFiniteMarker = -1L;
+
+  public final byte id;
+
+  ReplayCodec(byte id) {
+    this.id = id;
+  }
+
+  /**
+   * @return the most bytes {@link #encode} can ever write for this many values
+   */
+  public abstract int maxEncodedBytes(int valueCount);
+
+  /**
+   * @apiNote writes in.size() values onto out, out must have {@link #maxEncodedBytes} remaining
+   */
+  public abstract void encode(SampleBuffer in, ByteBuffer out);
+
+  /**
+   * @apiNote reads valueCount values from in into out
+   */
+  public abstract void decode(ByteBuffer in, int valueCount, SampleBuffer out);
+
+  /**
+   * @return the codec with this id
+   * @throws IllegalArgumentException if there is none, the log is probably from a newer version
+   */
+  public static ReplayCodec fromId(byte id) {
+    for (ReplayCodec codec : values()) {
+      if (codec.id == id) {
+        return codec;
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown replay codec: " + id);
+  }
+
+  static void putVarint(ByteBuffer out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+
+    out.put((byte) value);
+  }
+
+  static long getVarint(ByteBuffer in) {
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = in.get();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+
+    return value;
+  }
+}
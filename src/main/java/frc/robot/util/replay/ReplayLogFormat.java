@@ -0,0 +1,129 @@
+package frc.robot.util.replay;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * @author godbrigero
+ * @purpose the layout of a replay log file. Everything is big endian and written front to back so the
+ * logger never has to seek.
+ *
+ * <pre>
+ * file   = header block*
+ * header = int magic ("RPLG"), short version, short deviceCount, device[deviceCount]
+ * device = short nameLength, byte[nameLength] utf8 name, byte type, byte codec
+ * block  = int magic ("RPBK"), int recordBytes, int crc32c(records), record*
+ * record = long fpgaTimeMicros, short deviceId, int valueCount, int payloadBytes, byte[payloadBytes]
+ * </pre>
+ *
+ * The payload is the values run through the {@link ReplayCodec} of the device. One block is one tick
+ * of the logger, the checksum lets a reader tell a block the robot died in the middle of writing
+ * (brown out) from a good one and drop it instead of the whole file.
+ */
+public final class ReplayLogFormat {
+
+  public static final int kMagic = 0x52504C47; // "RPLG"
+  public static final short kVersion = 3;
+  public static final int kBlockMagic = 0x5250424B; // "RPBK"
+
+  /**
+   * @apiNote the only type for now, the values are plain doubles
+   */
+  public static final byte kTypeDoubleArray = 1;
+
+  public static final int kRecordHeaderBytes =
+    Long.BYTES + Short.BYTES + Integer.BYTES + Integer.BYTES;
+
+  // offsets inside a record
+  public static final int kDeviceIdOffset = Long.BYTES;
+  public static final int kValueCountOffset = kDeviceIdOffset + Short.BYTES;
+  public static final int kPayloadBytesOffset = kValueCountOffset + Integer.BYTES;
+
+  public static final int kBlockHeaderBytes = Integer.BYTES * 3;
+
+  // offsets inside a block
+  public static final int kBlockLengthOffset = Integer.BYTES;
+  public static final int kBlockCrcOffset = Integer.BYTES * 2;
+
+  private ReplayLogFormat() {}
+
+  /**
+   * @return the most bytes {@link #putRecord} can need for this sample
+   */
+  public static int maxRecordSize(SampleBuffer sample, ReplayCodec codec) {
+    return kRecordHeaderBytes + codec.maxEncodedBytes(sample.size());
+  }
+
+  /**
+   * @param out where the record is put, must have {@link #maxRecordSize} bytes remaining
+   * @param fpgaTimeMicros the time the sample was taken
+   * @param deviceId the index of the device in the header
+   * @param sample the values
+   * @param codec the codec of the device in the header
+   */
+  public static void putRecord(
+    ByteBuffer out,
+    long fpgaTimeMicros,
+    int deviceId,
+    SampleBuffer sample,
+    ReplayCodec codec
+  ) {
+    int start = out.position();
+    out.putLong(fpgaTimeMicros);
+    out.putShort((short) deviceId);
+    out.putInt(sample.size());
+    out.putInt(0);
+
+    codec.encode(sample, out);
+    out.putInt(
+      start + kPayloadBytesOffset,
+      out.position() - start - kRecordHeaderBytes
+    );
+  }
+
+  /**
+   * @apiNote leaves room for the block header, put the records after this and then call {@link #finishBlock}
+   * @return where the block starts
+   */
+  public static int beginBlock(ByteBuffer out) {
+    int start = out.position();
+    out.position(start + kBlockHeaderBytes);
+    return start;
+  }
+
+  /**
+   * @apiNote fills in the block header of the records put since {@link #beginBlock}
+   * @param crc reused so a block costs no allocation
+   */
+  public static void finishBlock(ByteBuffer out, int blockStart, CRC32C crc) {
+    int end = out.position();
+    int recordsStart = blockStart + kBlockHeaderBytes;
+
+    int limit = out.limit();
+    crc.reset();
+    out.limit(end).position(recordsStart);
+    crc.update(out);
+    out.limit(limit);
+
+    out.putInt(blockStart, kBlockMagic);
+    out.putInt(blockStart + kBlockLengthOffset, end - recordsStart);
+    out.putInt(blockStart + kBlockCrcOffset, (int) crc.getValue());
+  }
+
+  /**
+   * @apiNote moves the position of in to the end of the block, the limit is left as it was
+   * @return true if the records of the block at blockStart match its checksum
+   */
+  public static boolean checkBlock(ByteBuffer in, int blockStart, CRC32C crc) {
+    int recordsStart = blockStart + kBlockHeaderBytes;
+    int length = in.getInt(blockStart + kBlockLengthOffset);
+    int expected = in.getInt(blockStart + kBlockCrcOffset);
+
+    int limit = in.limit();
+    crc.reset();
+    in.limit(recordsStart + length).position(recordsStart);
+    crc.update(in);
+    in.limit(limit);
+    return (int) crc.getValue() == expected;
+  }
+}
@@ -0,0 +1,140 @@
+package frc.robot.util.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author godbrigero
+ * @purpose the file header of a replay log, lists every device so a log can be read without knowing
+ * the order the devices were given to the logger in
+ */
+public class ReplayLogHeader {
+
+  public final short version;
+  public final String[] deviceNames;
+  public final byte[] deviceTypes;
+  public final ReplayCodec[] deviceCodecs;
+
+  /**
+   * @param deviceNames the name of each device, the index is the device id
+   * @param deviceTypes the {@link ReplayLogFormat} type of each device
+   * @param deviceCodecs the codec the values of each device are written with
+   */
+  public ReplayLogHeader(
+    String[] deviceNames,
+    byte[] deviceTypes,
+    ReplayCodec[] deviceCodecs
+  ) {
+    this(ReplayLogFormat.kVersion, deviceNames, deviceTypes, deviceCodecs);
+  }
+
+  ReplayLogHeader(
+    short version,
+    String[] deviceNames,
+    byte[] deviceTypes,
+    ReplayCodec[] deviceCodecs
+  ) {
+    if (
+      deviceNames.length != deviceTypes.length ||
+      deviceNames.length != deviceCodecs.length
+    ) {
+      throw new IllegalArgumentException(
+        "every device needs a name, a type and a codec"
+      );
+    }
+
+    this.version = version;
+    this.deviceNames = deviceNames;
+    this.deviceTypes = deviceTypes;
+    this.deviceCodecs = deviceCodecs;
+  }
+
+  public int getDeviceCount() {
+    return deviceNames.length;
+  }
+
+  /**
+   * @return the id of the device with this name or -1 if there is none
+   */
+  public int getDeviceId(String name) {
+    for (int i = 0; i < deviceNames.length; i++) {
+      if (deviceNames[i].equals(name)) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * @return the amount of bytes the header takes in the file
+   */
+  public int byteSize() {
+    int size = Integer.BYTES + Short.BYTES + Short.BYTES;
+    for (String name : deviceNames) {
+      size +=
+        Short.BYTES +
+        name.getBytes(StandardCharsets.UTF_8).length +
+        Byte.BYTES * 2;
+    }
+
+    return size;
+  }
+
+  public void write(ByteBuffer out) {
+    out.putInt(ReplayLogFormat.kMagic);
+    out.putShort(version);
+    out.putShort((short) deviceNames.length);
+    for (int i = 0; i < deviceNames.length; i++) {
+      byte[] name = deviceNames[i].getBytes(StandardCharsets.UTF_8);
+      out.putShort((short) name.length);
+      out.put(name);
+      out.put(deviceTypes[i]);
+      out.put(deviceCodecs[i].id);
+    }
+  }
+
+  /**
+   * @return the header as its own buffer, ready to be written
+   */
+  public ByteBuffer toByteBuffer() {
+    ByteBuffer buf = ByteBuffer.allocate(byteSize());
+    write(buf);
+    buf.flip();
+    return buf;
+  }
+
+  /**
+   * @param in a buffer positioned at the start of the file, left positioned at the first record
+   * @throws IOException if the magic or version do not match
+   */
+  public static ReplayLogHeader read(ByteBuffer in) throws IOException {
+    if (in.getInt() != ReplayLogFormat.kMagic) {
+      throw new IOException("Not a replay log!");
+    }
+
+    short version = in.getShort();
+    if (version != ReplayLogFormat.kVersion) {
+      throw new IOException("Unsupported replay log version: " + version);
+    }
+
+    int deviceCount = in.getShort();
+    String[] names = new String[deviceCount];
+    byte[] types = new byte[deviceCount];
+    ReplayCodec[] codecs = new ReplayCodec[deviceCount];
+    for (int i = 0; i < deviceCount; i++) {
+      byte[] name = new byte[in.getShort()];
+      in.get(name);
+      names[i] = new String(name, StandardCharsets.UTF_8);
+      types[i] = in.get();
+      try {
+        codecs[i] = ReplayCodec.fromId(in.get());
+      } catch (IllegalArgumentException e) {
+        throw new IOException(e.getMessage());
+      }
+    }
+
+    return new ReplayLogHeader(version, names, types, codecs);
+  }
+}
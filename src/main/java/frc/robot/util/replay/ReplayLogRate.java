@@ -0,0 +1,72 @@
+package frc.robot.util.replay;
+
+/**
+ * @author godbrigero
+ * @purpose how often the replay logger samples one device. Slow signals like the arm position should
+ * not take bandwidth away from the lidar
+ */
+public class ReplayLogRate {
+
+  public final int periodTicks;
+  public final double changeEpsilon;
+
+  /**
+   * @param periodTicks the device is sampled once every periodTicks ticks, 1 means every tick
+   * @param changeEpsilon if not negative a sample is only written when a value moved more than this since the last written one
+   */
+  public ReplayLogRate(int periodTicks, double changeEpsilon) {
+    if (periodTicks < 1) {
+      throw new IllegalArgumentException("periodTicks must be at least 1");
+    }
+
+    this.periodTicks = periodTicks;
+    this.changeEpsilon = changeEpsilon;
+  }
+
+  public static ReplayLogRate everyTick() {
+    return new ReplayLogRate(1, -1);
+  }
+
+  public static ReplayLogRate everyNTicks(int ticks) {
+    return new ReplayLogRate(ticks, -1);
+  }
+
+  /**
+   * @param epsilon the smallest change in any value that is worth writing
+   */
+  public static ReplayLogRate onChange(double epsilon) {
+    return new ReplayLogRate(1, epsilon);
+  }
+
+  /**
+   * @param epsilon the smallest change in any value that is worth writing
+   * @param ticks only check for a change every this many ticks
+   */
+  public static ReplayLogRate onChange(double epsilon, int ticks) {
+    return new ReplayLogRate(ticks, epsilon);
+  }
+
+  public boolean isChangeOnly() {
+    return changeEpsilon >= 0;
+  }
+
+  /**
+   * @return true if sample should be written given the last written one
+   */
+  public boolean hasChanged(SampleBuffer last, SampleBuffer sample) {
+    if (!isChangeOnly() || last.size() != sample.size()) {
+      return true;
+    }
+
+    double[] a = last.array();
+    double[] b = sample.array();
+    for (int i = 0; i < sample.size(); i++) {
+      // written this way so a NaN counts as a change
+      if (!(Math.abs(a[i] - b[i]) <= changeEpsilon)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
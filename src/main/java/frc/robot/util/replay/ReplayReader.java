@@ -0,0 +1,500 @@
+package frc.robot.util.replay;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * @author godbrigero
+ * @purpose reads replay logs written by {@link frc.robot.subsystems.ReplayLoggerSubsystem} without
+ * decoding the whole file. The file is memory mapped and a sparse index of (time, block offset) pairs lets
+ * {@link #seek(long)} jump close to a timestamp and only walk the last few records.
+ * @apiNote a torn last block (the robot browned out mid write) is cut off when the index is built and
+ * any other block that fails its checksum is skipped while reading, see {@link #getCorruptBlocks()}
+ * @apiNote the index can be saved next to the log as "name.idx" (see {@link #saveIndex()}) so the next open of
+ * the same log only reads the header and the index. A saved index is always used if it is there, but opening a log
+ * never writes anything unless asked to. A log that changed since then (size or modified time) simply gets indexed again.
+ * Segments from {@link SegmentedLogStorage} can be opened directly, only their committed bytes are read
+ *
+ * <pre>
+ * ReplayReader reader = new ReplayReader("match.rlog");
+ * reader.seek(startMicros);
+ * while (reader.next(lidarId)) {
+ *   reader.readValues(buffer);
+ * }
+ * </pre>
+ */
+public class ReplayReader implements Closeable {
+
+  static final int kIndexMagic = 0x52504933; // "RPI3", follows the format version
+  static final int kIndexSpacingBytes = 64 * 1024;
+
+  final FileChannel channel;
+  final MappedByteBuffer log;
+  final ByteBuffer payloadView;
+  final SampleBuffer decoded = new SampleBuffer();
+  final CRC32C crc = new CRC32C();
+  final ReplayLogHeader header;
+  final int firstBlockOffset;
+  final File indexFile;
+  final long logSize;
+  final long logModified;
+
+  long[] indexTimes;
+  int[] indexOffsets;
+  int indexSize;
+  int endOffset;
+
+  // the record the cursor is on, -1 before the first next()
+  int recordOffset = -1;
+  int nextOffset;
+  int blockEnd;
+  long timestamp;
+  int deviceId;
+  int valueCount;
+  boolean isDecoded;
+  // seek already read the record the next call to next() has to return
+  boolean holdRecord;
+  boolean verifyChecksums = true;
+  long corruptBlocks;
+
+  /**
+   * @apiNote does not write anything, a log that has no saved index is indexed in memory
+   * @param fileName the log to read
+   * @throws IOException if the file can not be read or is not a replay log
+   */
+  public ReplayReader(String fileName) throws IOException {
+    this(fileName, false);
+  }
+
+  /**
+   * @param fileName the log to read
+   * @param saveIndex if a log that had to be indexed gets its index saved next to it, failing to is ignored
+   * @throws IOException if the file can not be read or is not a replay log
+   */
+  public ReplayReader(String fileName, boolean saveIndex) throws IOException {
+    File file = new File(fileName);
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+    long start = 0;
+    long size = channel.size();
+    if (size >= SegmentedLogStorage.kSegmentHeaderBytes) {
+      ByteBuffer segmentHeader = ByteBuffer.allocate(
+        SegmentedLogStorage.kSegmentHeaderBytes
+      );
+      channel.read(segmentHeader, 0);
+      if (segmentHeader.getInt(0) == SegmentedLogStorage.kSegmentMagic) {
+        start = SegmentedLogStorage.kSegmentHeaderBytes;
+        size =
+          Math.min(
+            segmentHeader.getInt(SegmentedLogStorage.kCommittedOffset),
+            size
+          );
+      }
+    }
+
+    if (size > Integer.MAX_VALUE) {
+      channel.close();
+      throw new IOException("Replay log is too big to map: " + fileName);
+    }
+
+    this.log = channel.map(FileChannel.MapMode.READ_ONLY, start, size - start);
+    this.payloadView = log.duplicate();
+    this.header = ReplayLogHeader.read(log);
+    this.firstBlockOffset = log.position();
+    this.nextOffset = firstBlockOffset;
+    this.blockEnd = firstBlockOffset;
+
+    this.indexFile = new File(fileName + ".idx");
+    this.logSize = size;
+    this.logModified = file.lastModified();
+    if (!loadIndex(indexFile, logSize, logModified)) {
+      buildIndex();
+      if (saveIndex) {
+        saveIndex();
+      }
+    }
+  }
+
+  public ReplayLogHeader getHeader() {
+    return header;
+  }
+
+  /**
+   * @return the time of the first record or -1 if the log has none
+   */
+  public long getStartTime() {
+    return indexSize == 0 ? -1 : indexTimes[0];
+  }
+
+  /**
+   * @return the time of the last complete record or -1 if the log has none
+   */
+  public long getEndTime() {
+    if (indexSize == 0) {
+      return -1;
+    }
+
+    // walk from the last index entry, it is at most kIndexSpacingBytes away
+    int offset = indexOffsets[indexSize - 1];
+    long time = indexTimes[indexSize - 1];
+    while (offset < endOffset) {
+      int end = blockEnd(offset);
+      for (
+        int record = offset + ReplayLogFormat.kBlockHeaderBytes;
+        record < end;
+        record = recordEnd(record)
+      ) {
+        time = log.getLong(record);
+      }
+
+      offset = end;
+    }
+
+    return time;
+  }
+
+  /**
+   * @apiNote puts the cursor right before the first record at or after the time, call {@link #next()} to read it
+   * @param fpgaTimeMicros the time to go to
+   */
+  public void seek(long fpgaTimeMicros) {
+    int low = 0;
+    int high = indexSize - 1;
+    int entry = 0;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (indexTimes[mid] < fpgaTimeMicros) {
+        entry = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    recordOffset = -1;
+    holdRecord = false;
+    nextOffset = indexSize == 0 ? endOffset : indexOffsets[entry];
+    blockEnd = nextOffset;
+    while (next()) {
+      if (timestamp >= fpgaTimeMicros) {
+        holdRecord = true;
+        return;
+      }
+    }
+  }
+
+  /**
+   * @apiNote goes back to the first record
+   */
+  public void rewind() {
+    recordOffset = -1;
+    holdRecord = false;
+    nextOffset = firstBlockOffset;
+    blockEnd = firstBlockOffset;
+  }
+
+  /**
+   * @param verify if false blocks are not checked against their checksum while reading, faster but a corrupt block can give garbage
+   */
+  public void setVerifyChecksums(boolean verify) {
+    this.verifyChecksums = verify;
+  }
+
+  /**
+   * @return the amount of blocks skipped so far because their checksum did not match
+   */
+  public long getCorruptBlocks() {
+    return corruptBlocks;
+  }
+
+  /**
+   * @apiNote moves the cursor to the next record, the values are not decoded until asked for
+   * @return false if there are no more records
+   */
+  public boolean next() {
+    if (holdRecord) {
+      holdRecord = false;
+      return true;
+    }
+
+    if (nextOffset >= blockEnd && !enterBlock()) {
+      return false;
+    }
+
+    recordOffset = nextOffset;
+    timestamp = log.getLong(recordOffset);
+    deviceId = log.getShort(recordOffset + ReplayLogFormat.kDeviceIdOffset);
+    valueCount = log.getInt(recordOffset + ReplayLogFormat.kValueCountOffset);
+    nextOffset = recordEnd(recordOffset);
+    isDecoded = false;
+    return true;
+  }
+
+  /**
+   * @apiNote moves to the next record of one device, the records of the others are skipped without reading them
+   * @param deviceId the id from {@link ReplayLogHeader#getDeviceId(String)}
+   * @return false if that device has no more records
+   */
+  public boolean next(int deviceId) {
+    while (next()) {
+      if (this.deviceId == deviceId) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public int getDeviceId() {
+    return deviceId;
+  }
+
+  public int getValueCount() {
+    return valueCount;
+  }
+
+  /**
+   * @return one value of the current record. The first call decodes the whole record into a buffer
+   * owned by the reader, use {@link #readValues} to keep the values after the next {@link #next()}
+   */
+  public double getValue(int index) {
+    if (!isDecoded) {
+      readValues(decoded);
+      isDecoded = true;
+    }
+
+    return decoded.get(index);
+  }
+
+  /**
+   * @apiNote decodes the values of the current record into out with the codec of its device
+   */
+  public void readValues(SampleBuffer out) {
+    int payloadStart = recordOffset + ReplayLogFormat.kRecordHeaderBytes;
+    payloadView.limit(nextOffset).position(payloadStart);
+    header.deviceCodecs[deviceId].decode(payloadView, valueCount, out);
+  }
+
+  /**
+   * @return the amount of encoded bytes of the current record, without the record header
+   */
+  public int getPayloadBytes() {
+    return nextOffset - recordOffset - ReplayLogFormat.kRecordHeaderBytes;
+  }
+
+  /**
+   * @return the amount of entries in the sparse index
+   */
+  public int getIndexSize() {
+    return indexSize;
+  }
+
+  /**
+   * @apiNote moves into the block at nextOffset, skipping the ones that fail their checksum
+   * @return false if there are no blocks left
+   */
+  boolean enterBlock() {
+    while (nextOffset < endOffset) {
+      int start = nextOffset;
+      int end = blockEnd(start);
+      nextOffset = end;
+      // readValues leaves the view limited to the last record
+      payloadView.limit(payloadView.capacity());
+      if (
+        verifyChecksums &&
+        !ReplayLogFormat.checkBlock(payloadView, start, crc)
+      ) {
+        corruptBlocks++;
+        continue;
+      }
+
+      if (end > start + ReplayLogFormat.kBlockHeaderBytes) {
+        nextOffset = start + ReplayLogFormat.kBlockHeaderBytes;
+        blockEnd = end;
+        return true;
+      }
+    }
+
+    blockEnd = nextOffset;
+    return false;
+  }
+
+  int blockEnd(int offset) {
+    return (
+      offset +
+      ReplayLogFormat.kBlockHeaderBytes +
+      log.getInt(offset + ReplayLogFormat.kBlockLengthOffset)
+    );
+  }
+
+  int recordEnd(int offset) {
+    int payloadBytes = log.getInt(offset + ReplayLogFormat.kPayloadBytesOffset);
+    return offset + ReplayLogFormat.kRecordHeaderBytes + payloadBytes;
+  }
+
+  /**
+   * @apiNote walks the block headers only. A block that runs past the end of the file, or a last block
+   * that fails its checksum (the robot died mid write), ends the log
+   */
+  void buildIndex() {
+    indexTimes = new long[64];
+    indexOffsets = new int[64];
+    indexSize = 0;
+
+    int limit = log.limit();
+    int offset = firstBlockOffset;
+    int lastBlock = -1;
+    int lastIndexed = -kIndexSpacingBytes;
+    while (offset + ReplayLogFormat.kBlockHeaderBytes <= limit) {
+      int length = log.getInt(offset + ReplayLogFormat.kBlockLengthOffset);
+      long end = (long) offset + ReplayLogFormat.kBlockHeaderBytes + length;
+      if (
+        log.getInt(offset) != ReplayLogFormat.kBlockMagic ||
+        length < 0 ||
+        end > limit
+      ) {
+        break;
+      }
+
+      if (
+        length >= ReplayLogFormat.kRecordHeaderBytes &&
+        offset - lastIndexed >= kIndexSpacingBytes
+      ) {
+        addIndexEntry(
+          log.getLong(offset + ReplayLogFormat.kBlockHeaderBytes),
+          offset
+        );
+        lastIndexed = offset;
+      }
+
+      lastBlock = offset;
+      offset = (int) end;
+    }
+
+    if (
+      lastBlock >= 0 &&
+      !ReplayLogFormat.checkBlock(payloadView, lastBlock, crc)
+    ) {
+      offset = lastBlock;
+      if (indexSize > 0 && indexOffsets[indexSize - 1] == lastBlock) {
+        indexSize--;
+      }
+    }
+
+    endOffset = offset;
+  }
+
+  void addIndexEntry(long time, int offset) {
+    if (indexSize == indexTimes.length) {
+      long[] times = new long[indexSize * 2];
+      int[] offsets = new int[indexSize * 2];
+      System.arraycopy(indexTimes, 0, times, 0, indexSize);
+      System.arraycopy(indexOffsets, 0, offsets, 0, indexSize);
+      indexTimes = times;
+      indexOffsets = offsets;
+    }
+
+    indexTimes[indexSize] = time;
+    indexOffsets[indexSize] = offset;
+    indexSize++;
+  }
+
+  /**
+   * @return true if a saved index for a log of this exact size and modified time was found
+   */
+  boolean loadIndex(File indexFile, long logSize, long logModified) {
+    if (!indexFile.exists()) {
+      return false;
+    }
+
+    try (
+      FileChannel indexChannel = FileChannel.open(
+        indexFile.toPath(),
+        StandardOpenOption.READ
+      )
+    ) {
+      ByteBuffer buf = ByteBuffer.allocate((int) indexChannel.size());
+      while (buf.hasRemaining() && indexChannel.read(buf) >= 0) {}
+      buf.flip();
+
+      if (
+        buf.remaining() < Integer.BYTES + Long.BYTES * 3 ||
+        buf.getInt() != kIndexMagic ||
+        buf.getLong() != logSize ||
+        buf.getLong() != logModified
+      ) {
+        return false;
+      }
+
+      endOffset = (int) buf.getLong();
+      indexSize = buf.getInt();
+      indexTimes = new long[Math.max(indexSize, 1)];
+      indexOffsets = new int[Math.max(indexSize, 1)];
+      for (int i = 0; i < indexSize; i++) {
+        indexTimes[i] = buf.getLong();
+        indexOffsets[i] = buf.getInt();
+      }
+
+      return true;
+    } catch (IOException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @apiNote writes the index next to the log as "name.idx" for the next open, it is only a cache
+   * @return false if it could not be written (a read only usb stick), nothing else happens then
+   */
+  public boolean saveIndex() {
+    ByteBuffer buf = ByteBuffer.allocate(
+      Integer.BYTES +
+      Long.BYTES * 3 +
+      Integer.BYTES +
+      indexSize *
+      (Long.BYTES + Integer.BYTES)
+    );
+    buf.putInt(kIndexMagic);
+    buf.putLong(logSize);
+    buf.putLong(logModified);
+    buf.putLong(endOffset);
+    buf.putInt(indexSize);
+    for (int i = 0; i < indexSize; i++) {
+      buf.putLong(indexTimes[i]);
+      buf.putInt(indexOffsets[i]);
+    }
+    buf.flip();
+
+    try (
+      FileChannel indexChannel = FileChannel.open(
+        indexFile.toPath(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE
+      )
+    ) {
+      while (buf.hasRemaining()) {
+        indexChannel.write(buf);
+      }
+
+      return true;
+    } catch (IOException | RuntimeException e) {
+      // the index is only a cache, the next open just builds it again
+      return false;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
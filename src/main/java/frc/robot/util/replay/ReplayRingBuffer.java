@@ -0,0 +1,152 @@
+package frc.robot.util.replay;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author godbrigero
+ * @purpose single producer / single consumer ring of preallocated frames. The scheduler thread copies
+ * a serialized frame in and the writer thread copies it out, neither of them ever takes a lock.
+ * @apiNote the indexes only ever grow so the consumer can tell that a slot was dropped under it
+ * (DROP_OLDEST) by a failed compare and set instead of a lock
+ */
+public class ReplayRingBuffer {
+
+  static final long kBlockParkNanos = 100_000;
+
+  final byte[][] slots;
+  final int[] slotLengths;
+  final int mask;
+  final BackpressurePolicy policy;
+
+  final AtomicLong readIndex = new AtomicLong();
+  final AtomicLong droppedFrames = new AtomicLong();
+  volatile long writeIndex;
+
+  /**
+   * @param capacity the amount of frames the ring can hold, rounded up to a power of two
+   * @param initialFrameBytes the size every slot is preallocated with. Slots only grow if a bigger frame comes in
+   * @param policy what to do when the ring is full
+   */
+  public ReplayRingBuffer(
+    int capacity,
+    int initialFrameBytes,
+    BackpressurePolicy policy
+  ) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+
+    this.slots = new byte[size][initialFrameBytes];
+    this.slotLengths = new int[size];
+    this.mask = size - 1;
+    this.policy = policy;
+  }
+
+  /**
+   * @apiNote PRODUCER ONLY. Copies the remaining bytes of the frame into the ring and consumes them
+   * @param frame the serialized frame
+   * @return true if the frame was queued, false if it was dropped
+   */
+  public boolean offer(ByteBuffer frame) {
+    long w = writeIndex;
+    while (true) {
+      long r = readIndex.get();
+      if (w - r < slots.length) {
+        break;
+      }
+
+      switch (policy) {
+        case DROP_NEWEST:
+          droppedFrames.incrementAndGet();
+          frame.position(frame.limit());
+          return false;
+        case DROP_OLDEST:
+          // if this fails the consumer just took the slot so there is room now
+          if (readIndex.compareAndSet(r, r + 1)) {
+            droppedFrames.incrementAndGet();
+          }
+          break;
+        case BLOCK:
+          LockSupport.parkNanos(kBlockParkNanos);
+          break;
+      }
+    }
+
+    int slot = (int) (w & mask);
+    int length = frame.remaining();
+    byte[] buf = slots[slot];
+    if (buf.length < length) {
+      buf = new byte[length];
+      slots[slot] = buf;
+    }
+
+    frame.get(buf, 0, length);
+    slotLengths[slot] = length;
+    writeIndex = w + 1;
+    return true;
+  }
+
+  /**
+   * @apiNote CONSUMER ONLY. Copies the oldest frame onto the end of out
+   * @param out the block that is being filled for the disk
+   * @return the amount of bytes copied, 0 if the ring is empty and -1 if the next frame does not fit in out
+   */
+  public int poll(ByteBuffer out) {
+    while (true) {
+      long r = readIndex.get();
+      if (r >= writeIndex) {
+        return 0;
+      }
+
+      int slot = (int) (r & mask);
+      byte[] buf = slots[slot];
+      int length = Math.min(slotLengths[slot], buf.length);
+      if (length > out.remaining()) {
+        return -1;
+      }
+
+      int start = out.position();
+      out.put(buf, 0, length);
+      if (readIndex.compareAndSet(r, r + 1)) {
+        return length;
+      }
+
+      // the producer dropped this slot while we were copying it so the copy may be torn
+      out.position(start);
+    }
+  }
+
+  /**
+   * @return the size in bytes of the oldest frame or -1 if the ring is empty
+   */
+  public int peekLength() {
+    long r = readIndex.get();
+    if (r >= writeIndex) {
+      return -1;
+    }
+
+    return slotLengths[(int) (r & mask)];
+  }
+
+  /**
+   * @return the amount of frames waiting to be written
+   */
+  public int size() {
+    return (int) (writeIndex - readIndex.get());
+  }
+
+  public int capacity() {
+    return slots.length;
+  }
+
+  public long getDroppedFrames() {
+    return droppedFrames.get();
+  }
+}
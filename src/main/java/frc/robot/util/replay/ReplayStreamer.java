@@ -0,0 +1,378 @@
+package frc.robot.util.replay;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author godbrigero
+ * @purpose sends the same header and blocks that go into the log file to viewers on the network while
+ * the robot runs. Frames go through a {@link ReplayRingBuffer} that drops the oldest when it is full and
+ * every socket is non blocking, so a slow or dead viewer only ever loses frames and never slows the loop.
+ * @apiNote over tcp a viewer connects and gets the header and then whole blocks, so what it reads is a
+ * valid log. A viewer that can not keep up skips whole blocks, never half of one.
+ * Over udp every block is one datagram and the header is sent again every so often for viewers started late
+ */
+public class ReplayStreamer implements Closeable {
+
+  static final long kIdleParkNanos = 2_000_000;
+  static final long kMaxErrorParkNanos = 1_000_000_000;
+  static final int kMaxDatagramBytes = 65_507;
+
+  final ReplayRingBuffer ring;
+  final ByteBuffer headerBytes;
+  final ServerSocketChannel server;
+  final DatagramChannel datagram;
+  final InetSocketAddress target;
+  final int maxClients;
+  final long headerIntervalNanos;
+  final Thread thread;
+
+  final ArrayList<Client> clients = new ArrayList<>();
+  final AtomicLong sentFrames = new AtomicLong();
+  final AtomicLong droppedFrames = new AtomicLong();
+
+  ByteBuffer frame;
+  long lastHeaderNanos;
+  volatile int clientCount;
+  volatile boolean running = true;
+  // what was last sent to the driver station, so a socket that keeps failing is reported once and not every loop
+  String reportedError;
+  long errorParkNanos = kIdleParkNanos;
+
+  static class Client {
+
+    final SocketChannel channel;
+    ByteBuffer pending;
+
+    Client(SocketChannel channel, ByteBuffer pending) {
+      this.channel = channel;
+      this.pending = pending;
+    }
+  }
+
+  ReplayStreamer(
+    ReplayLogHeader header,
+    ServerSocketChannel server,
+    DatagramChannel datagram,
+    InetSocketAddress target,
+    int ringCapacity,
+    int initialFrameBytes,
+    int maxClients,
+    long headerIntervalMs
+  ) {
+    this.ring =
+      new ReplayRingBuffer(
+        ringCapacity,
+        initialFrameBytes,
+        BackpressurePolicy.DROP_OLDEST
+      );
+    this.headerBytes = header.toByteBuffer();
+    this.server = server;
+    this.datagram = datagram;
+    this.target = target;
+    this.maxClients = maxClients;
+    this.headerIntervalNanos = headerIntervalMs * 1_000_000;
+    this.lastHeaderNanos = System.nanoTime() - headerIntervalNanos;
+    this.frame = ByteBuffer.allocate(initialFrameBytes);
+
+    this.thread = new Thread(this::run, "ReplayStreamer");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * @apiNote listens for viewers on a tcp port
+   * @param header the header of the log being streamed
+   * @param port the port to listen on, 0 picks a free one (see {@link #getPort()})
+   * @param ringCapacity the amount of frames that can be waiting before the oldest get dropped
+   * @param initialFrameBytes the preallocated size of each frame
+   * @param maxClients viewers over this are disconnected right away
+   * @throws IOException if the port can not be bound
+   */
+  public static ReplayStreamer tcp(
+    ReplayLogHeader header,
+    int port,
+    int ringCapacity,
+    int initialFrameBytes,
+    int maxClients
+  ) throws IOException {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(port));
+    server.configureBlocking(false);
+    return new ReplayStreamer(
+      header,
+      server,
+      null,
+      null,
+      ringCapacity,
+      initialFrameBytes,
+      maxClients,
+      0
+    );
+  }
+
+  /**
+   * @apiNote sends every block as a datagram to one address, nothing has to connect first
+   * @param header the header of the log being streamed, resent every headerIntervalMs
+   * @param target where the datagrams go (the driver station)
+   * @param ringCapacity the amount of frames that can be waiting before the oldest get dropped
+   * @param initialFrameBytes the preallocated size of each frame
+   * @param headerIntervalMs how often the header is sent again
+   * @throws IOException if the socket can not be opened
+   */
+  public static ReplayStreamer udp(
+    ReplayLogHeader header,
+    InetSocketAddress target,
+    int ringCapacity,
+    int initialFrameBytes,
+    long headerIntervalMs
+  ) throws IOException {
+    DatagramChannel datagram = DatagramChannel.open();
+    datagram.configureBlocking(false);
+    return new ReplayStreamer(
+      header,
+      null,
+      datagram,
+      target,
+      ringCapacity,
+      initialFrameBytes,
+      0,
+      headerIntervalMs
+    );
+  }
+
+  /**
+   * @apiNote call only from the logging thread. Does nothing when streaming over tcp and no one is listening
+   * @param frame one whole block, its remaining bytes are consumed
+   * @return false if the frame was not queued
+   */
+  public boolean offer(ByteBuffer frame) {
+    if (server != null && clientCount == 0) {
+      frame.position(frame.limit());
+      return false;
+    }
+
+    return ring.offer(frame);
+  }
+
+  void run() {
+    while (running) {
+      try {
+        boolean moved = streamOnce();
+        reportedError = null;
+        errorParkNanos = kIdleParkNanos;
+        if (!moved) {
+          LockSupport.parkNanos(kIdleParkNanos);
+        }
+      } catch (IOException e) {
+        if (!String.valueOf(e).equals(reportedError)) {
+          reportedError = String.valueOf(e);
+          DriverStation.reportError(
+            "Replay streamer failed: " + reportedError,
+            false
+          );
+        }
+
+        LockSupport.parkNanos(errorParkNanos);
+        errorParkNanos = Math.min(errorParkNanos * 2, kMaxErrorParkNanos);
+      }
+    }
+  }
+
+  /**
+   * @return true if any frame was taken out of the ring
+   */
+  boolean streamOnce() throws IOException {
+    if (server != null) {
+      acceptClients();
+    } else {
+      sendHeaderIfDue();
+    }
+
+    boolean moved = false;
+    while (true) {
+      frame.clear();
+      int copied = ring.poll(frame);
+      if (copied < 0) {
+        frame =
+          ByteBuffer.allocate(
+            Math.max(ring.peekLength(), frame.capacity() * 2)
+          );
+        continue;
+      }
+
+      if (copied == 0) {
+        break;
+      }
+
+      moved = true;
+      frame.flip();
+      if (server != null) {
+        sendToClients(frame);
+      } else {
+        sendDatagram(frame);
+      }
+    }
+
+    // whatever did not fit in the socket buffers last time
+    for (int i = clients.size() - 1; i >= 0; i--) {
+      flush(i);
+    }
+
+    return moved;
+  }
+
+  void acceptClients() throws IOException {
+    SocketChannel channel;
+    while ((channel = server.accept()) != null) {
+      if (clients.size() >= maxClients) {
+        channel.close();
+        continue;
+      }
+
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+
+      // the header goes first so the viewer reads a valid log from its very first byte
+      ByteBuffer pending = ByteBuffer.allocate(
+        Math.max(headerBytes.capacity(), frame.capacity())
+      );
+      headerBytes.rewind();
+      pending.put(headerBytes).flip();
+      clients.add(new Client(channel, pending));
+    }
+
+    clientCount = clients.size();
+  }
+
+  void sendToClients(ByteBuffer frame) {
+    int start = frame.position();
+    for (int i = clients.size() - 1; i >= 0; i--) {
+      Client client = clients.get(i);
+      // still busy with an older block, skip this one whole so the viewer stays on a block boundary
+      if (!flush(i)) {
+        droppedFrames.incrementAndGet();
+        continue;
+      }
+
+      if (client.pending.capacity() < frame.remaining()) {
+        client.pending = ByteBuffer.allocate(frame.remaining());
+      }
+
+      client.pending.clear();
+      client.pending.put(frame).flip();
+      frame.position(start);
+      sentFrames.incrementAndGet();
+      flush(i);
+    }
+  }
+
+  /**
+   * @return true if the client has nothing left to send, a client that errors is dropped
+   */
+  boolean flush(int clientIndex) {
+    Client client = clients.get(clientIndex);
+    if (!client.pending.hasRemaining()) {
+      return true;
+    }
+
+    try {
+      client.channel.write(client.pending);
+      return !client.pending.hasRemaining();
+    } catch (IOException e) {
+      // the viewer went away, not worth a stack trace
+      try {
+        client.channel.close();
+      } catch (IOException ignored) {}
+
+      clients.remove(clientIndex);
+      clientCount = clients.size();
+      return false;
+    }
+  }
+
+  void sendDatagram(ByteBuffer frame) throws IOException {
+    if (
+      frame.remaining() > kMaxDatagramBytes || datagram.send(frame, target) == 0
+    ) {
+      droppedFrames.incrementAndGet();
+      return;
+    }
+
+    sentFrames.incrementAndGet();
+  }
+
+  void sendHeaderIfDue() throws IOException {
+    long now = System.nanoTime();
+    if (now - lastHeaderNanos < headerIntervalNanos) {
+      return;
+    }
+
+    lastHeaderNanos = now;
+    headerBytes.rewind();
+    datagram.send(headerBytes, target);
+  }
+
+  /**
+   * @return the tcp port viewers connect to, -1 when streaming over udp
+   */
+  public int getPort() {
+    return server == null ? -1 : server.socket().getLocalPort();
+  }
+
+  /**
+   * @return the amount of tcp viewers connected right now
+   */
+  public int getClientCount() {
+    return clientCount;
+  }
+
+  /**
+   * @return the amount of frames handed to a socket, once per viewer
+   */
+  public long getSentFrames() {
+    return sentFrames.get();
+  }
+
+  /**
+   * @return the amount of frames thrown away, because the ring was full or a viewer was too slow
+   */
+  public long getDroppedFrames() {
+    return droppedFrames.get() + ring.getDroppedFrames();
+  }
+
+  /**
+   * @apiNote stops the thread, sends what is already queued as far as the sockets take it and closes everything
+   */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    streamOnce();
+    for (Client client : clients) {
+      client.channel.close();
+    }
+
+    clients.clear();
+    clientCount = 0;
+    if (server != null) {
+      server.close();
+    } else {
+      datagram.close();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package frc.robot.util.replay;
+
+/**
+ * @author godbrigero
+ * @purpose a growable double[] that a {@link frc.robot.inter.ReplayLoggerDevice} fills every tick.
+ * The logger keeps one per device so once it has grown to the biggest sample nothing gets allocated
+ */
+public class SampleBuffer {
+
+  double[] data;
+  int size;
+
+  public SampleBuffer() {
+    this(16);
+  }
+
+  /**
+   * @param initialCapacity the amount of doubles to preallocate
+   */
+  public SampleBuffer(int initialCapacity) {
+    this.data = new double[Math.max(initialCapacity, 1)];
+  }
+
+  /**
+   * @apiNote makes sure the buffer can hold capacity doubles, keeps what is already in it
+   * @param capacity the amount of doubles needed
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity <= data.length) {
+      return;
+    }
+
+    double[] grown = new double[Math.max(capacity, data.length * 2)];
+    System.arraycopy(data, 0, grown, 0, size);
+    data = grown;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public void add(double value) {
+    if (size == data.length) {
+      ensureCapacity(size + 1);
+    }
+
+    data[size++] = value;
+  }
+
+  /**
+   * @apiNote replaces the contents with the first length values of values
+   */
+  public void set(double[] values, int length) {
+    ensureCapacity(length);
+    System.arraycopy(values, 0, data, 0, length);
+    size = length;
+  }
+
+  public void set(double[] values) {
+    set(values, values.length);
+  }
+
+  /**
+   * @apiNote for devices that want to write straight into the array. Call {@link #ensureCapacity(int)} first and {@link #setSize(int)} after
+   * @return the backing array, only the first {@link #size()} values are valid
+   */
+  public double[] array() {
+    return data;
+  }
+
+  public void setSize(int size) {
+    ensureCapacity(size);
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public double get(int index) {
+    return data[index];
+  }
+}
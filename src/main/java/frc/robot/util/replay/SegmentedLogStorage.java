@@ -0,0 +1,290 @@
+package frc.robot.util.replay;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * @author godbrigero
+ * @purpose storage for replay logs made of fixed size memory mapped segment files. A write is a memory
+ * copy instead of a syscall and the logs on disk never go over a set budget.
+ * @apiNote every segment starts with a small segment header and then the {@link ReplayLogHeader} so
+ * each one can be read on its own by {@link ReplayReader}. A single write() is never split between two
+ * segments, so callers must write whole frames (the logger and {@link AsyncReplayWriter} both do).
+ * Rolling over forces the full segment to disk, maps a new one and may delete old ones, so write from
+ * {@link AsyncReplayWriter}'s thread and never from the robot loop
+ *
+ * <pre>
+ * segment header = int magic ("RPSG"), short version, short headerBytes, long sequence,
+ *                  long createdMillis, int committedBytes, int reserved
+ * </pre>
+ */
+public class SegmentedLogStorage implements WritableByteChannel {
+
+  public static final int kSegmentMagic = 0x52505347; // "RPSG"
+  public static final short kSegmentVersion = 1;
+  public static final int kSegmentHeaderBytes = 32;
+  public static final int kCommittedOffset = 24;
+  public static final String kSegmentExtension = ".rseg";
+
+  final File directory;
+  final String baseName;
+  final int segmentBytes;
+  final long diskBudgetBytes;
+  final ByteBuffer logHeader;
+
+  // oldest first, includes the one being written
+  final ArrayDeque<File> segments = new ArrayDeque<>();
+
+  FileChannel currentChannel;
+  MappedByteBuffer current;
+  long nextSequence;
+  boolean open = true;
+
+  /**
+   * @param directory where the segments go, created if missing
+   * @param baseName segments are named baseName.sequence.rseg
+   * @param segmentBytes the size of every segment file
+   * @param diskBudgetBytes the oldest segments of this baseName get deleted to stay under this
+   * @param logHeader the header put at the start of every segment
+   * @throws IOException if the first segment can not be made
+   */
+  public SegmentedLogStorage(
+    File directory,
+    String baseName,
+    int segmentBytes,
+    long diskBudgetBytes,
+    ReplayLogHeader logHeader
+  ) throws IOException {
+    this.logHeader = logHeader.toByteBuffer();
+    if (segmentBytes <= kSegmentHeaderBytes + this.logHeader.remaining()) {
+      throw new IllegalArgumentException("segmentBytes is too small");
+    }
+
+    this.directory = directory;
+    this.baseName = baseName;
+    this.segmentBytes = segmentBytes;
+    this.diskBudgetBytes = diskBudgetBytes;
+
+    directory.mkdirs();
+
+    // pick up after whatever is already there instead of overwriting it
+    for (File segment : listSegments(directory, baseName)) {
+      segments.add(segment);
+      nextSequence = Math.max(nextSequence, sequenceOf(segment) + 1);
+    }
+
+    roll();
+  }
+
+  /**
+   * @return the segments of baseName in the directory, oldest first
+   */
+  public static File[] listSegments(File directory, String baseName) {
+    File[] files = directory.listFiles((dir, name) ->
+      name.startsWith(baseName + ".") &&
+      name.endsWith(kSegmentExtension) &&
+      sequenceOf(name, baseName) >= 0
+    );
+    if (files == null) {
+      return new File[0];
+    }
+
+    Arrays.sort(
+      files,
+      (a, b) -> Long.compare(sequenceOf(a, baseName), sequenceOf(b, baseName))
+    );
+    return files;
+  }
+
+  static long sequenceOf(File file, String baseName) {
+    return sequenceOf(file.getName(), baseName);
+  }
+
+  static long sequenceOf(String name, String baseName) {
+    try {
+      return Long.parseLong(
+        name.substring(
+          baseName.length() + 1,
+          name.length() - kSegmentExtension.length()
+        )
+      );
+    } catch (RuntimeException e) {
+      return -1;
+    }
+  }
+
+  long sequenceOf(File file) {
+    return sequenceOf(file, baseName);
+  }
+
+  /**
+   * @apiNote maps the next segment, closes the current one (if any) and deletes old ones over the budget.
+   * The next segment is mapped first so a failed map leaves the current one in place to retry with
+   */
+  void roll() throws IOException {
+    File file = new File(
+      directory,
+      baseName + "." + nextSequence + kSegmentExtension
+    );
+
+    FileChannel nextChannel = new RandomAccessFile(file, "rw").getChannel();
+    MappedByteBuffer next;
+    try {
+      next =
+        nextChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    } catch (IOException | RuntimeException e) {
+      nextChannel.close();
+      throw e;
+    }
+
+    try {
+      closeCurrent();
+    } finally {
+      currentChannel = nextChannel;
+      current = next;
+    }
+
+    current.putInt(kSegmentMagic);
+    current.putShort(kSegmentVersion);
+    current.putShort((short) kSegmentHeaderBytes);
+    current.putLong(nextSequence);
+    current.putLong(System.currentTimeMillis());
+    current.putInt(kSegmentHeaderBytes);
+    current.putInt(0);
+    current.put(logHeader.duplicate());
+    commit();
+
+    nextSequence++;
+    segments.add(file);
+    enforceBudget();
+  }
+
+  void enforceBudget() {
+    // every segment is the same size on disk so counting them is enough
+    long budgetSegments = Math.max(diskBudgetBytes / segmentBytes, 1);
+    while (segments.size() > budgetSegments) {
+      File oldest = segments.pollFirst();
+      if (!oldest.delete()) {
+        DriverStation.reportWarning(
+          "Could not delete old replay segment " + oldest,
+          false
+        );
+      }
+
+      // the index a ReplayReader may have left next to it
+      new File(oldest.getPath() + ".idx").delete();
+    }
+  }
+
+  void commit() {
+    current.putInt(kCommittedOffset, current.position());
+  }
+
+  /**
+   * @apiNote copies the whole buffer into the current segment, rolling over first if it does not fit
+   * @throws IOException if one write is bigger than a whole segment
+   */
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    if (!open) {
+      throw new IOException("Segmented log is closed");
+    }
+
+    if (current == null) {
+      throw new IOException("Segmented log has no segment mapped");
+    }
+
+    int length = src.remaining();
+    if (length > current.remaining()) {
+      if (
+        length > segmentBytes - kSegmentHeaderBytes - logHeader.remaining()
+      ) {
+        throw new IOException(
+          "A " + length + " byte write does not fit in a segment"
+        );
+      }
+
+      roll();
+    }
+
+    current.put(src);
+    commit();
+    return length;
+  }
+
+  /**
+   * @apiNote forces the current segment to disk
+   */
+  public void flush() {
+    if (open && current != null) {
+      current.force();
+    }
+  }
+
+  /**
+   * @return the segment being written to
+   */
+  public File getCurrentSegment() {
+    return segments.peekLast();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!open) {
+      return;
+    }
+
+    open = false;
+    closeCurrent();
+  }
+
+  /**
+   * @apiNote forces the current segment to disk, unmaps it and closes its file. Nothing may touch
+   * current after this until the next one is mapped
+   */
+  void closeCurrent() throws IOException {
+    if (current == null) {
+      return;
+    }
+
+    current.force();
+    unmap(current);
+    current = null;
+    currentChannel.close();
+    currentChannel = null;
+  }
+
+  /**
+   * @apiNote frees the mapping now instead of whenever the garbage collector gets to it, through
+   * Unsafe.invokeCleaner since there is no public api for it. If that is not there the collector still does it
+   */
+  static void unmap(MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Method invokeCleaner = unsafeClass.getMethod(
+        "invokeCleaner",
+        ByteBuffer.class
+      );
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // left to the garbage collector
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package frc.robot.util.swerve;
+
+import frc.robot.Constants.SwerveConstants;
+
+/**
+ * @author godbrigero
+ * @purpose turns a chassis motion (x, y, rotation) into a speed and an angle for every swerve module. The module
+ * geometry is worked out once in the constructor so a call is a multiply-add, a hypot and an atan2 per module.
+ * @apiNote same conventions as {@link frc.robot.subsystems.SwerveSubsystem#drive}: x is to the right, y forward,
+ * rotation is clockwise and in units of the speed of the module furthest from the center, angles are in turns
+ * from -0.5 to 0.5 with 0 forward and positive clockwise. Results go into reused arrays, nothing is allocated.
+ * One thread only (the robot loop)
+ */
+public class SwerveKinematics {
+
+  static final double kTwoPi = 2 * Math.PI;
+  // below this a module is not really being driven, its angle is left alone instead of snapping to atan2(0, 0)
+  static final double kStoppedSpeed = 1e-9;
+
+  final int modules;
+  final double[] moduleX;
+  final double[] moduleY;
+  // how much a unit of rotation moves each module, x and y
+  final double[] rotationX;
+  final double[] rotationY;
+  final double maxRadius;
+
+  final double[] speeds;
+  final double[] angles;
+  // turns per second every module's angle is moving at, see the discretized calculate
+  final double[] angleVelocities;
+  // what each module is asked for in x and y, before desaturating
+  final double[] velocityX;
+  final double[] velocityY;
+  // what the last calculate scaled everything by to desaturate
+  double scale = 1;
+
+  /**
+   * @apiNote the four corners of {@link SwerveConstants#kDriveBaseLength} by {@link SwerveConstants#kDriveBaseWidth},
+   * in the order front left, front right, rear left, rear right
+   */
+  public static SwerveKinematics fromConstants() {
+    double l = SwerveConstants.kDriveBaseLength / 2;
+    double w = SwerveConstants.kDriveBaseWidth / 2;
+    return new SwerveKinematics(
+      new double[] { -w, w, -w, w },
+      new double[] { l, l, -l, -l }
+    );
+  }
+
+  /**
+   * @param moduleX meters to the right of the center of rotation, of every module
+   * @param moduleY meters forward of the center of rotation, of every module
+   */
+  public SwerveKinematics(double[] moduleX, double[] moduleY) {
+    if (moduleX.length != moduleY.length || moduleX.length == 0) {
+      throw new IllegalArgumentException("need an x and a y for every module");
+    }
+
+    this.modules = moduleX.length;
+    this.moduleX = moduleX.clone();
+    this.moduleY = moduleY.clone();
+
+    double radius = 0;
+    for (int i = 0; i < modules; i++) {
+      radius = Math.max(radius, Math.hypot(moduleX[i], moduleY[i]));
+    }
+
+    this.maxRadius = radius;
+    this.rotationX = new double[modules];
+    this.rotationY = new double[modules];
+    for (int i = 0; i < modules; i++) {
+      // turning clockwise moves a module at (x, y) along (y, -x)
+      rotationX[i] = moduleY[i] / radius;
+      rotationY[i] = -moduleX[i] / radius;
+    }
+
+    this.speeds = new double[modules];
+    this.angles = new double[modules];
+    this.angleVelocities = new double[modules];
+    this.velocityX = new double[modules];
+    this.velocityY = new double[modules];
+  }
+
+  /**
+   * @apiNote fills {@link #speeds()} and {@link #angles()}. A module that is not moving keeps its last angle
+   * @param x the translation to the right
+   * @param y the translation forward
+   * @param r the clockwise rotation, the speed it gives the furthest module
+   * @param maxSpeed every speed is scaled down by the same amount until none is over this, keeping the motion's shape
+   */
+  public void calculate(double x, double y, double r, double maxSpeed) {
+    double fastest = maxSpeed;
+    for (int i = 0; i < modules; i++) {
+      double vx = x + r * rotationX[i];
+      double vy = y + r * rotationY[i];
+      velocityX[i] = vx;
+      velocityY[i] = vy;
+      speeds[i] = Math.hypot(vx, vy);
+      fastest = Math.max(fastest, speeds[i]);
+    }
+
+    scale = maxSpeed / fastest;
+    for (int i = 0; i < modules; i++) {
+      speeds[i] *= scale;
+      angleVelocities[i] = 0;
+      if (speeds[i] > kStoppedSpeed) {
+        angles[i] = Math.atan2(velocityX[i], velocityY[i]) / kTwoPi;
+      }
+    }
+  }
+
+  /**
+   * @apiNote second order: holding a translation while rotating for a whole loop curves the robot off the line it was
+   * asked to drive, so this finds the motion that ends up where the robot should be after dtSeconds and calculates that
+   * (the pose log of the straight line, like WPILib's ChassisSpeeds.discretize). Also fills {@link #angleVelocities()}
+   * with how fast every module has to steer to keep the translation fixed on the field while the robot turns
+   * @param x the translation to the right
+   * @param y the translation forward
+   * @param r the clockwise rotation, the speed it gives the furthest module
+   * @param maxSpeed every speed is scaled down by the same amount until none is over this, keeping the motion's shape
+   * @param metersPerSecond what a speed of 1 is, to get the rotation in radians per second
+   * @param dtSeconds how long the motion is held for, the loop period
+   */
+  public void calculate(
+    double x,
+    double y,
+    double r,
+    double maxSpeed,
+    double metersPerSecond,
+    double dtSeconds
+  ) {
+    // clockwise radians per second
+    double omega = r * metersPerSecond / maxRadius;
+    double halfStep = omega * dtSeconds / 2;
+    // halfStep / tan(halfStep), its series near 0
+    double ratio = Math.abs(halfStep) < 1e-6
+      ? 1 - halfStep * halfStep / 3
+      : halfStep / Math.tan(halfStep);
+
+    double discreteX = ratio * x - halfStep * y;
+    double discreteY = ratio * y + halfStep * x;
+    calculate(discreteX, discreteY, r, maxSpeed);
+
+    // a translation fixed on the field turns the other way in the robot's frame, module velocities follow it
+    for (int i = 0; i < modules; i++) {
+      if (speeds[i] <= kStoppedSpeed) {
+        angleVelocities[i] = 0;
+        continue;
+      }
+
+      double speedSquared =
+        velocityX[i] * velocityX[i] + velocityY[i] * velocityY[i];
+      double along = velocityX[i] * discreteX + velocityY[i] * discreteY;
+      angleVelocities[i] = -omega * scale * along / speedSquared / kTwoPi;
+    }
+  }
+
+  public int size() {
+    return modules;
+  }
+
+  /**
+   * @return the speed of a module from the last {@link #calculate}, never negative
+   */
+  public double getSpeed(int module) {
+    return speeds[module];
+  }
+
+  /**
+   * @return the angle of a module from the last {@link #calculate}, in turns
+   */
+  public double getAngle(int module) {
+    return angles[module];
+  }
+
+  /**
+   * @return how fast a module's angle is moving from the last discretized {@link #calculate}, turns per second
+   * clockwise. 0 after the plain one
+   */
+  public double getAngleVelocity(int module) {
+    return angleVelocities[module];
+  }
+
+  /**
+   * @return the backing array of speeds, do not change it
+   */
+  public double[] speeds() {
+    return speeds;
+  }
+
+  /**
+   * @return the backing array of angles in turns, do not change it
+   */
+  public double[] angles() {
+    return angles;
+  }
+
+  /**
+   * @return the backing array of angle velocities in turns per second, do not change it
+   */
+  public double[] angleVelocities() {
+    return angleVelocities;
+  }
+
+  /**
+   * @return meters from the center of rotation to the furthest module, what a rotation of 1 is measured at
+   */
+  public double getMaxRadius() {
+    return maxRadius;
+  }
+
+  public double getModuleX(int module) {
+    return moduleX[module];
+  }
+
+  public double getModuleY(int module) {
+    return moduleY[module];
+  }
+}
@@ -0,0 +1,289 @@
+package frc.robot.util.swerve;
+
+import frc.robot.Constants.SwerveConstants;
+
+/**
+ * @author godbrigero
+ * @purpose sits between what the driver asks for and the modules and only lets the chassis change as fast as the
+ * modules can follow. The chassis velocity moves toward the request at most the acceleration limit per loop, and not
+ * so far that any module would have to steer faster than {@link SwerveConstants#kMaxSteerTurnsPerSecond} to keep up.
+ * A full stick reversal then slows the robot down through zero instead of flipping every module and slamming the drive
+ * @apiNote same units and conventions as {@link SwerveKinematics}. Bounded: every call is at most
+ * {@link SwerveConstants#kSetpointIterations} + 2 kinematics calculations (a fixed count bisection, no solver that can
+ * run long). Modules may be driven backwards, so an angle is only ever steered up to a quarter turn. One thread only,
+ * allocates nothing
+ */
+public class SwerveSetpointGenerator {
+
+  static final double kStopped = 1e-9;
+
+  final SwerveKinematics kinematics;
+  final int modules;
+  final double maxSteerTurnsPerSecond;
+  final double steerFreeSpeed;
+  final int iterations;
+  final boolean discretize;
+
+  // the last setpoint
+  double x;
+  double y;
+  double r;
+  final double[] speeds;
+  final double[] angles;
+  final double[] angleVelocities;
+  // from the current generate call, for the discretized kinematics
+  double metersPerSecond;
+  double dtSeconds;
+
+  /**
+   * @apiNote the limits in {@link SwerveConstants}, discretized if {@link SwerveConstants#kDiscretize}
+   */
+  public SwerveSetpointGenerator(SwerveKinematics kinematics) {
+    this(
+      kinematics,
+      SwerveConstants.kMaxSteerTurnsPerSecond,
+      SwerveConstants.kSteerFreeSpeed,
+      SwerveConstants.kSetpointIterations,
+      SwerveConstants.kDiscretize
+    );
+  }
+
+  /**
+   * @param kinematics the geometry, the generator calculates with it so its arrays change on every call
+   * @param maxSteerTurnsPerSecond how fast a module can turn
+   * @param steerFreeSpeed modules going slower than this are not held to the steering limit while the robot moves, a
+   * slow wheel barely scuffs and one the robot pivots around would otherwise stop everything
+   * @param iterations bisection steps, how finely the feasible setpoint is found
+   * @param discretize if the final setpoint is calculated with the second order correction
+   */
+  public SwerveSetpointGenerator(
+    SwerveKinematics kinematics,
+    double maxSteerTurnsPerSecond,
+    double steerFreeSpeed,
+    int iterations,
+    boolean discretize
+  ) {
+    this.kinematics = kinematics;
+    this.modules = kinematics.size();
+    this.maxSteerTurnsPerSecond = maxSteerTurnsPerSecond;
+    this.steerFreeSpeed = steerFreeSpeed;
+    this.iterations = iterations;
+    this.discretize = discretize;
+    this.speeds = new double[modules];
+    this.angles = new double[modules];
+    this.angleVelocities = new double[modules];
+  }
+
+  /**
+   * @apiNote moves the setpoint toward the request as far as the limits allow, read it back with the getters
+   * @param desiredX the translation to the right
+   * @param desiredY the translation forward
+   * @param desiredR the clockwise rotation, the speed it gives the furthest module
+   * @param maxAcceleration how much the translation and the rotation may each change per second, in the same
+   * units as them
+   * @param metersPerSecond what a speed of 1 is, for the discretized kinematics
+   * @param dtSeconds the loop period
+   */
+  public void generate(
+    double desiredX,
+    double desiredY,
+    double desiredR,
+    double maxAcceleration,
+    double metersPerSecond,
+    double dtSeconds
+  ) {
+    double dx = desiredX - x;
+    double dy = desiredY - y;
+    double dr = desiredR - r;
+    double maxChange = maxAcceleration * dtSeconds;
+    double maxSteer = maxSteerTurnsPerSecond * dtSeconds;
+
+    double limit = 1;
+    double translationChange = Math.hypot(dx, dy);
+    if (translationChange > maxChange) {
+      limit = maxChange / translationChange;
+    }
+
+    if (Math.abs(dr) > maxChange) {
+      limit = Math.min(limit, maxChange / Math.abs(dr));
+    }
+
+    this.metersPerSecond = metersPerSecond;
+    this.dtSeconds = dtSeconds;
+    if (!isFeasible(limit, dx, dy, dr, maxSteer)) {
+      if (isStopped()) {
+        // standing still the modules can turn to where they need to be first without dragging the robot anywhere
+        steerInPlace(maxSteer, dtSeconds);
+        return;
+      }
+
+      // the setpoint we have is feasible (no change at all, see isFeasible), find how far toward the request still is
+      double low = 0;
+      double high = limit;
+      for (int i = 0; i < iterations; i++) {
+        double middle = (low + high) / 2;
+        if (isFeasible(middle, dx, dy, dr, maxSteer)) {
+          low = middle;
+        } else {
+          high = middle;
+        }
+      }
+
+      limit = low;
+    }
+
+    x += dx * limit;
+    y += dy * limit;
+    r += dr * limit;
+    calculate(x, y, r);
+
+    System.arraycopy(kinematics.speeds(), 0, speeds, 0, modules);
+    System.arraycopy(kinematics.angles(), 0, angles, 0, modules);
+    System.arraycopy(
+      kinematics.angleVelocities(),
+      0,
+      angleVelocities,
+      0,
+      modules
+    );
+  }
+
+  /**
+   * @apiNote the kinematics the setpoint is stored with, the feasibility check has to use the same ones or the setpoint
+   * we have can fail its own check and get stuck
+   */
+  void calculate(double x, double y, double r) {
+    if (discretize) {
+      kinematics.calculate(x, y, r, 1.0, metersPerSecond, dtSeconds);
+    } else {
+      kinematics.calculate(x, y, r, 1.0);
+    }
+  }
+
+  /**
+   * @return true if every module can steer to where the setpoint a fraction of the way to the request needs it,
+   * always for no change at all
+   */
+  boolean isFeasible(
+    double fraction,
+    double dx,
+    double dy,
+    double dr,
+    double maxSteer
+  ) {
+    if (fraction <= 0) {
+      return true;
+    }
+
+    calculate(x + dx * fraction, y + dy * fraction, r + dr * fraction);
+
+    // from a stop every module is held to the limit, steerInPlace gets them there
+    boolean stopped = isStopped();
+    for (int i = 0; i < modules; i++) {
+      if (!stopped && speeds[i] <= steerFreeSpeed) {
+        continue;
+      }
+
+      double distance = steerDistance(angles[i], kinematics.getAngle(i));
+      if (Math.abs(distance) > maxSteer) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @apiNote the setpoint stays at a stop, the modules steer toward the angles the first step of the request needs
+   */
+  void steerInPlace(double maxSteer, double dtSeconds) {
+    // the kinematics still hold the angles for the full acceleration step from the failed check
+    for (int i = 0; i < modules; i++) {
+      double distance = steerDistance(angles[i], kinematics.getAngle(i));
+      double step = Math.max(-maxSteer, Math.min(maxSteer, distance));
+      angles[i] = wrap(angles[i] + step);
+      angleVelocities[i] = step / dtSeconds;
+      speeds[i] = 0;
+    }
+
+    x = 0;
+    y = 0;
+    r = 0;
+  }
+
+  boolean isStopped() {
+    return (
+      Math.abs(x) < kStopped && Math.abs(y) < kStopped && Math.abs(r) < kStopped
+    );
+  }
+
+  /**
+   * @return the shortest way from one angle to another in turns, counting driving backwards, [-0.25, 0.25]
+   */
+  static double steerDistance(double from, double to) {
+    double distance = to - from;
+    return distance - Math.rint(distance * 2) / 2;
+  }
+
+  /**
+   * @return the angle put back within -0.5 to 0.5 turns
+   */
+  static double wrap(double angle) {
+    return angle - Math.rint(angle);
+  }
+
+  /**
+   * @apiNote back to standing still, for when the robot is disabled or the modules are reset
+   */
+  public void reset() {
+    x = 0;
+    y = 0;
+    r = 0;
+    for (int i = 0; i < modules; i++) {
+      speeds[i] = 0;
+      angleVelocities[i] = 0;
+    }
+  }
+
+  /**
+   * @return the translation to the right the last setpoint is at
+   */
+  public double getX() {
+    return x;
+  }
+
+  /**
+   * @return the translation forward the last setpoint is at
+   */
+  public double getY() {
+    return y;
+  }
+
+  /**
+   * @return the clockwise rotation the last setpoint is at
+   */
+  public double getRotation() {
+    return r;
+  }
+
+  /**
+   * @return the speed of a module at the last setpoint, never negative
+   */
+  public double getSpeed(int module) {
+    return speeds[module];
+  }
+
+  /**
+   * @return the angle of a module at the last setpoint, in turns
+   */
+  public double getAngle(int module) {
+    return angles[module];
+  }
+
+  /**
+   * @return how fast a module's angle is moving at the last setpoint, turns per second clockwise
+   */
+  public double getAngleVelocity(int module) {
+    return angleVelocities[module];
+  }
+}
@@ -0,0 +1,150 @@
+package frc.robot.util.swerve;
+
+import frc.robot.Constants.ArmConstants;
+import frc.robot.Constants.SwerveConstants;
+import frc.robot.Constants.TippingConstants;
+
+/**
+ * @author godbrigero
+ * @purpose how hard the robot can accelerate without tipping over, from how high its center of gravity is (the arm
+ * raises it) and how far it is already leaning. Feeds the acceleration limit of {@link SwerveSetpointGenerator}
+ * @apiNote a robot with its center of gravity h up and its wheels d out from it lifts them at an acceleration of
+ * g * d / h, and leaning by some angle already used up that much of the atan(d / h) it had. The limit is a
+ * {@link TippingConstants#kSafetyFactor} of that, never above {@link SwerveConstants#kMaxAccelerationMetersPerSecondSquared}
+ * and never below {@link TippingConstants#kMinAccelerationMetersPerSecondSquared}. The narrower side of the drive base
+ * is used whatever the direction. Call {@link #update} once a loop, allocates nothing
+ */
+public class TipLimiter {
+
+  static final double kGravity = 9.81;
+
+  final double supportDistance;
+  final double stowedHeight;
+  final double raisedHeight;
+  final double maxAcceleration;
+  final double minAcceleration;
+  final double safetyFactor;
+  final double deadbandRadians;
+  final double filterAlpha;
+
+  double tiltRadians;
+  double centerOfGravityHeight;
+  double limit;
+
+  /**
+   * @apiNote the drive base and limits in {@link SwerveConstants} and {@link TippingConstants}
+   */
+  public TipLimiter() {
+    this(
+      Math.min(SwerveConstants.kDriveBaseLength, SwerveConstants.kDriveBaseWidth) /
+      2,
+      TippingConstants.kStowedCenterOfGravityMeters,
+      TippingConstants.kRaisedCenterOfGravityMeters,
+      SwerveConstants.kMaxAccelerationMetersPerSecondSquared,
+      TippingConstants.kMinAccelerationMetersPerSecondSquared,
+      TippingConstants.kSafetyFactor,
+      TippingConstants.kTiltDeadbandDegrees,
+      TippingConstants.kTiltFilterSeconds,
+      SwerveConstants.kLoopPeriodSeconds
+    );
+  }
+
+  /**
+   * @param supportDistance meters from the center of gravity out to the wheels, along the ground
+   * @param stowedHeight meters off the floor of the center of gravity with the arm down
+   * @param raisedHeight meters off the floor of the center of gravity with the arm at
+   * {@link ArmConstants#kArmScoringPosition}
+   * @param maxAcceleration m/s^2, what the drive is limited to anyway
+   * @param minAcceleration m/s^2, the limit never goes under this
+   * @param safetyFactor how much of the tipping acceleration to allow, (0, 1]
+   * @param deadbandDegrees leaning less than this counts as flat
+   * @param filterSeconds time constant of the low pass on the tilt
+   * @param dtSeconds how often {@link #update} is called
+   */
+  public TipLimiter(
+    double supportDistance,
+    double stowedHeight,
+    double raisedHeight,
+    double maxAcceleration,
+    double minAcceleration,
+    double safetyFactor,
+    double deadbandDegrees,
+    double filterSeconds,
+    double dtSeconds
+  ) {
+    this.supportDistance = supportDistance;
+    this.stowedHeight = stowedHeight;
+    this.raisedHeight = raisedHeight;
+    this.maxAcceleration = maxAcceleration;
+    this.minAcceleration = minAcceleration;
+    this.safetyFactor = safetyFactor;
+    this.deadbandRadians = Math.toRadians(deadbandDegrees);
+    this.filterAlpha = dtSeconds / (filterSeconds + dtSeconds);
+    this.centerOfGravityHeight = stowedHeight;
+    this.limit = maxAcceleration;
+  }
+
+  /**
+   * @param pitchDegrees from the NavX
+   * @param rollDegrees from the NavX
+   * @param armPosition where the arm is, in the arm encoder's turns
+   * @return the acceleration limit in m/s^2, also {@link #getLimit()}
+   */
+  public double update(
+    double pitchDegrees,
+    double rollDegrees,
+    double armPosition
+  ) {
+    double pitch = Math.toRadians(pitchDegrees);
+    double roll = Math.toRadians(rollDegrees);
+    // small angles, the lean of the robot's floor plane
+    double measured = Math.sqrt(pitch * pitch + roll * roll);
+    tiltRadians += filterAlpha * (measured - tiltRadians);
+
+    centerOfGravityHeight = getCenterOfGravityHeight(armPosition);
+    double margin =
+      Math.atan2(supportDistance, centerOfGravityHeight) -
+      Math.max(0, tiltRadians - deadbandRadians);
+
+    double tipping = margin > 0 ? kGravity * Math.tan(margin) : 0;
+    limit =
+      Math.max(
+        minAcceleration,
+        Math.min(maxAcceleration, tipping * safetyFactor)
+      );
+    return limit;
+  }
+
+  /**
+   * @apiNote the arm swings up, so its share of the height goes with the sine of its angle
+   * @param armPosition where the arm is, in the arm encoder's turns
+   * @return meters off the floor
+   */
+  public double getCenterOfGravityHeight(double armPosition) {
+    double raised =
+      Math.sin(
+        (armPosition - ArmConstants.kArmFlatPosition) * 2 * Math.PI
+      ) /
+      Math.sin(
+        (ArmConstants.kArmScoringPosition - ArmConstants.kArmFlatPosition) *
+        2 *
+        Math.PI
+      );
+    raised = Math.max(0, Math.min(1, raised));
+    return stowedHeight + (raisedHeight - stowedHeight) * raised;
+  }
+
+  /**
+   * @return the acceleration limit from the last {@link #update}, m/s^2
+   */
+  public double getLimit() {
+    return limit;
+  }
+
+  /**
+   * @return how far the robot is leaning, filtered, radians
+   */
+  public double getTiltRadians() {
+    return tiltRadians;
+  }
+}
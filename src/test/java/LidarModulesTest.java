@@ -1,11 +1,19 @@
 import frc.robot.inter.ReplayLoggerDevice;
 import frc.robot.subsystems.ReplayLoggerSubsystem;
-import java.io.DataInputStream;
-import java.io.File;
-import java.io.FileInputStream;
+import frc.robot.util.replay.BackpressurePolicy;
+import frc.robot.util.replay.ReplayLogFormat;
+import frc.robot.util.replay.ReplayLogHeader;
+import frc.robot.util.replay.ReplayLogRate;
+import frc.robot.util.replay.ReplayReader;
+import frc.robot.util.replay.SampleBuffer;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32C;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import util.TestUtils;
 
@@ -77,24 +85,191 @@ public class LidarModulesTest {
       scan.clear();
     }
 
-    try (
-      FileInputStream fileInputStream = new FileInputStream(new File(fileName));
-      DataInputStream dataInputStream = new DataInputStream(fileInputStream)
-    ) {
-      int scanCount = 0;
-      while (dataInputStream.available() > 0) {
-        int amtScans = dataInputStream.readInt();
-        for (int i = 0; i < amtScans; i++) {
-          double value = dataInputStream.readDouble();
-          if (fakeScans[scanCount][i] != value) {
-            throw new Exception("Incorrect read!");
-          }
-        }
-
-        scanCount++;
+    logger.close();
+    assertLogMatches(fileName, "device0", fakeScans);
+  }
+
+  /**
+   * @apiNote reads the log by hand from the header down so the format is checked byte for byte
+   */
+  void assertLogMatches(String file, String deviceName, double[][] scans)
+    throws IOException {
+    ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(Path.of(file)));
+    ReplayLogHeader header = ReplayLogHeader.read(log);
+    Assertions.assertEquals(1, header.getDeviceCount());
+    Assertions.assertEquals(deviceName, header.deviceNames[0]);
+
+    long lastTime = Long.MIN_VALUE;
+    CRC32C crc = new CRC32C();
+    for (double[] curScan : scans) {
+      // every tick is its own block and holds the one record
+      int blockStart = log.position();
+      Assertions.assertEquals(ReplayLogFormat.kBlockMagic, log.getInt());
+      Assertions.assertEquals(
+        ReplayLogFormat.kRecordHeaderBytes + curScan.length * Double.BYTES,
+        log.getInt()
+      );
+      log.getInt();
+      int recordsStart = log.position();
+      Assertions.assertTrue(ReplayLogFormat.checkBlock(log, blockStart, crc));
+      log.position(recordsStart);
+
+      long time = log.getLong();
+      Assertions.assertTrue(time >= lastTime);
+      lastTime = time;
+
+      Assertions.assertEquals(0, log.getShort());
+      Assertions.assertEquals(curScan.length, log.getInt());
+      Assertions.assertEquals(curScan.length * Double.BYTES, log.getInt());
+      for (double value : curScan) {
+        Assertions.assertEquals(value, log.getDouble());
+      }
+    }
+
+    Assertions.assertFalse(log.hasRemaining());
+  }
+
+  @Test
+  void testAsyncWrittenData() throws Exception {
+    double[][] fakeScans = TestUtils.generateFakeScans(50);
+    double[][] scan = new double[1][];
+
+    ReplayLoggerDevice fakeDevice = new ReplayLoggerDevice() {
+      @Override
+      public double[] getData() {
+        return scan[0];
+      }
+
+      @Override
+      public String getName() {
+        return "lidar";
+      }
+    };
+
+    ReplayLoggerSubsystem logger = new ReplayLoggerSubsystem(
+      new ReplayLoggerDevice[] { fakeDevice },
+      fileName + "Async",
+      0,
+      BackpressurePolicy.BLOCK
+    );
+
+    for (double[] curScan : fakeScans) {
+      scan[0] = curScan;
+      logger.forceLog();
+    }
+
+    logger.close();
+    Assertions.assertEquals(0, logger.getDroppedFrames());
+    Assertions.assertEquals(fakeScans.length, logger.getWrittenFrames());
+
+    assertLogMatches(fileName + "Async", "lidar", fakeScans);
+  }
+
+  @Test
+  void fillDataAdaptsBothGetData() {
+    double[] fakeScan = TestUtils.getLidarScanFake(360);
+    List<Double> fakeScanList = new ArrayList<>();
+    for (double value : fakeScan) {
+      fakeScanList.add(value);
+    }
+
+    ReplayLoggerDevice arrayDevice = new ReplayLoggerDevice() {
+      @Override
+      public double[] getData() {
+        return fakeScan;
+      }
+    };
+    ReplayLoggerDevice listDevice = new ReplayLoggerDevice() {
+      @Override
+      public List<Double> getData(boolean d) {
+        return fakeScanList;
+      }
+    };
+    ReplayLoggerDevice emptyDevice = new ReplayLoggerDevice() {};
+
+    SampleBuffer buffer = new SampleBuffer(4);
+    for (ReplayLoggerDevice device : new ReplayLoggerDevice[] {
+      arrayDevice,
+      listDevice,
+    }) {
+      buffer.clear();
+      Assertions.assertTrue(device.fillData(buffer));
+      Assertions.assertEquals(fakeScan.length, buffer.size());
+      for (int i = 0; i < fakeScan.length; i++) {
+        Assertions.assertEquals(fakeScan[i], buffer.get(i));
       }
-    } catch (IOException e) {
-      e.printStackTrace();
     }
+
+    Assertions.assertFalse(emptyDevice.fillData(buffer));
+    Assertions.assertEquals(fakeScan.length, buffer.size());
+  }
+
+  @Test
+  void devicesAreSampledAtTheirOwnRate() throws IOException {
+    int[] calls = new int[3];
+    double[] armPosition = new double[] { 0 };
+
+    ReplayLoggerDevice fast = new ReplayLoggerDevice() {
+      @Override
+      public double[] getData() {
+        calls[0]++;
+        return new double[] { calls[0] };
+      }
+    };
+    ReplayLoggerDevice slow = new ReplayLoggerDevice() {
+      @Override
+      public double[] getData() {
+        calls[1]++;
+        return new double[] { calls[1] };
+      }
+
+      @Override
+      public ReplayLogRate getLogRate() {
+        return ReplayLogRate.everyNTicks(4);
+      }
+    };
+    ReplayLoggerDevice arm = new ReplayLoggerDevice() {
+      @Override
+      public double[] getData() {
+        calls[2]++;
+        return armPosition;
+      }
+
+      @Override
+      public ReplayLogRate getLogRate() {
+        return ReplayLogRate.onChange(0.01);
+      }
+    };
+
+    ReplayLoggerSubsystem logger = new ReplayLoggerSubsystem(
+      new ReplayLoggerDevice[] { fast, slow, arm },
+      fileName + "Rates",
+      2
+    );
+    logger.startStopLogger(true);
+    for (int tick = 0; tick < 20; tick++) {
+      // the arm only really moves on tick 10
+      armPosition[0] = tick == 10 ? 0.2 : 0.001 * (tick % 2);
+      logger.tick25Ms();
+    }
+
+    logger.close();
+
+    // ticksPerUpdate is the period now, not period - 1
+    Assertions.assertEquals(10, calls[0]);
+    Assertions.assertEquals(5, calls[1]);
+    Assertions.assertEquals(20, calls[2]);
+
+    int[] written = new int[3];
+    try (ReplayReader reader = new ReplayReader(fileName + "Rates")) {
+      while (reader.next()) {
+        written[reader.getDeviceId()]++;
+      }
+    }
+
+    Assertions.assertEquals(10, written[0]);
+    Assertions.assertEquals(5, written[1]);
+    // first sample, the jump to 0.2 and the jump back
+    Assertions.assertEquals(3, written[2]);
   }
 }
@@ -0,0 +1,114 @@
+import ev3dev.sensors.slamtec.model.Scan;
+import ev3dev.sensors.slamtec.model.ScanDistance;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.LidarScanPool;
+import frc.robot.inter.ReplayLoggerDevice;
+import frc.robot.subsystems.ReplayLoggerSubsystem;
+import frc.robot.util.replay.ReplayReader;
+import frc.robot.util.replay.SampleBuffer;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ */
+public class LidarScanTest {
+
+  public String fileName = "TestLidarScan";
+
+  Scan makeScan(int points) {
+    List<ScanDistance> distances = new ArrayList<>();
+    for (int i = 0; i < points; i++) {
+      // whole degrees and centimeters, the way RPLidar4J hands them over
+      distances.add(new ScanDistance(i, 100f + i, 15, i == 0));
+    }
+
+    return new Scan(distances);
+  }
+
+  @Test
+  void convertsTheDriverScanOnce() {
+    LidarScan scan = new LidarScan(10);
+    scan.set(makeScan(360), 1234);
+
+    Assertions.assertEquals(360, scan.size());
+    Assertions.assertEquals(1234, scan.getTimestampNanos());
+    Assertions.assertEquals(Math.toRadians(90), scan.getAngle(90), 1e-6);
+    Assertions.assertEquals(1.9f, scan.getDistance(90), 1e-6);
+    Assertions.assertEquals(15, scan.getQuality(90));
+
+    SampleBuffer out = new SampleBuffer();
+    Assertions.assertTrue(scan.fillData(out));
+    Assertions.assertEquals(720, out.size());
+    Assertions.assertEquals(scan.getDistance(5), out.get(5), 1e-6);
+    Assertions.assertEquals(
+      scan.getAngle(5),
+      LidarScan.loggedAngleToRadians(out.get(360 + 5)),
+      1e-6
+    );
+
+    // the same scan is never logged twice
+    Assertions.assertFalse(scan.fillData(out));
+  }
+
+  @Test
+  void logsThroughTheReplayLogger() throws Exception {
+    LidarScan latest = new LidarScan(360);
+    ReplayLoggerSubsystem logger = new ReplayLoggerSubsystem(
+      new ReplayLoggerDevice[] { latest },
+      fileName,
+      1
+    );
+
+    LidarScan incoming = new LidarScan(360);
+    for (int i = 0; i < 5; i++) {
+      incoming.set(makeScan(360), i);
+      latest.copyFrom(incoming);
+      logger.forceLog();
+      // nothing new so nothing is written
+      logger.forceLog();
+    }
+
+    logger.close();
+    new File(fileName + ".idx").delete();
+    try (ReplayReader reader = new ReplayReader(fileName)) {
+      Assertions.assertEquals("lidar", reader.getHeader().deviceNames[0]);
+      int count = 0;
+      while (reader.next()) {
+        Assertions.assertEquals(720, reader.getValueCount());
+        Assertions.assertEquals(1.0, reader.getValue(0), 0.0005);
+        // within half of the A1's 1/64 degree step after going through the codec
+        Assertions.assertEquals(
+          Math.toRadians(359),
+          LidarScan.loggedAngleToRadians(reader.getValue(719)),
+          Math.toRadians(1.0 / 128)
+        );
+        count++;
+      }
+
+      Assertions.assertEquals(5, count);
+    }
+  }
+
+  @Test
+  void poolReusesReleasedScans() {
+    LidarScanPool pool = new LidarScanPool(2, 360);
+    LidarScan first = pool.acquire();
+    LidarScan second = pool.acquire();
+    Assertions.assertNotSame(first, second);
+    Assertions.assertEquals(0, pool.getMisses());
+
+    LidarScan extra = pool.acquire();
+    Assertions.assertEquals(1, pool.getMisses());
+
+    first.release();
+    Assertions.assertSame(first, pool.acquire());
+    second.release();
+    extra.release();
+    Assertions.assertSame(second, pool.acquire());
+    Assertions.assertSame(extra, pool.acquire());
+  }
+}
@@ -0,0 +1,93 @@
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.util.lidar.LidarMapper;
+import frc.robot.util.lidar.OccupancyGrid;
+import frc.robot.util.replay.SampleBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ */
+public class OccupancyGridTest {
+
+  /**
+   * @apiNote a scan from the middle of a ~3m square room in a 4m grid, the walls are in the middle of cells (0.475 and 3.525)
+   */
+  LidarScan makeRoomScan(int points) {
+    LidarScan scan = new LidarScan(points);
+    scan.clear(0);
+    for (int i = 0; i < points; i++) {
+      double angle = 2 * Math.PI * i / points;
+      double distance =
+        1.525 /
+        Math.max(Math.abs(Math.cos(angle)), Math.abs(Math.sin(angle)));
+      scan.add((float) angle, (float) distance, (short) 15);
+    }
+
+    scan.setPose(2, 2, 0);
+    return scan;
+  }
+
+  void assertRoomMapped(OccupancyGrid grid) {
+    Assertions.assertTrue(grid.isOccupied(3.525, 2.0));
+    Assertions.assertTrue(grid.isOccupied(2.0, 0.475));
+    Assertions.assertFalse(grid.isOccupied(2.0, 2.0));
+    Assertions.assertTrue(grid.getLogOdds(2.5, 2.5) < 0);
+    // behind the walls was never seen
+    Assertions.assertEquals(0, grid.getLogOdds(3.8, 2.0));
+  }
+
+  @Test
+  void scansBuildWallsAndFreeSpace() {
+    OccupancyGrid grid = new OccupancyGrid(4, 4, 0.05);
+    LidarScan scan = makeRoomScan(360);
+    for (int i = 0; i < 5; i++) {
+      grid.integrateScan(scan);
+    }
+
+    assertRoomMapped(grid);
+    Assertions.assertTrue(grid.getProbability(3.525, 2.0) > 0.9);
+    // the ray stops where the wall cell starts
+    Assertions.assertEquals(1.5, grid.castRay(2, 2, 0, 10), 0.001);
+    Assertions.assertEquals(1.5, grid.castRay(2, 2, Math.PI / 2, 10), 0.001);
+    Assertions.assertEquals(1.0, grid.castRay(2, 2, Math.PI, 1.0));
+    Assertions.assertTrue(grid.isRayClear(2, 2, 3, 2.5));
+    Assertions.assertFalse(grid.isRayClear(2, 2, 3.8, 2));
+  }
+
+  @Test
+  void snapshotRoundTrips() {
+    // the size of the real field, most of it never seen
+    OccupancyGrid grid = new OccupancyGrid(16.541, 8.211, 0.05);
+    grid.integrateScan(makeRoomScan(360));
+
+    SampleBuffer snapshot = new SampleBuffer();
+    grid.snapshot(snapshot);
+    Assertions.assertTrue(snapshot.size() < grid.cells().length / 10);
+
+    OccupancyGrid copy = OccupancyGrid.fromSnapshot(snapshot);
+    Assertions.assertEquals(grid.getColumns(), copy.getColumns());
+    Assertions.assertArrayEquals(grid.cells(), copy.cells());
+  }
+
+  @Test
+  void mapperTracesScansInTheBackground() throws Exception {
+    LidarMapper mapper = new LidarMapper(new OccupancyGrid(4, 4, 0.05));
+    LidarScan scan = makeRoomScan(1440);
+    for (int i = 0; i < 5; i++) {
+      Assertions.assertTrue(mapper.submit(scan));
+      Thread.sleep(10);
+    }
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (mapper.getIntegratedScans() < 5) {
+      Assertions.assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(1);
+    }
+
+    mapper.close();
+    assertRoomMapped(mapper.getGrid());
+    // a scan is 100ms at 10Hz, tracing one has to be a small part of that
+    Assertions.assertTrue(mapper.getLastUpdateNanos() < 20_000_000);
+  }
+}
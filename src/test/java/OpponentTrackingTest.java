@@ -0,0 +1,102 @@
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.SimulatedLidar;
+import frc.robot.util.lidar.FieldWallModel;
+import frc.robot.util.lidar.OpponentTracker;
+import frc.robot.util.lidar.PoseHistory;
+import frc.robot.util.lidar.ScanClusterer;
+import frc.robot.util.lidar.TrackedObstacle;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ * @apiNote the lidar sits still at (4, 4) facing down the field, the simulated robots are circles
+ */
+public class OpponentTrackingTest {
+
+  static final long kPeriodNanos = 100_000_000L;
+
+  FieldWallModel walls = FieldWallModel.crescendo();
+  PoseHistory history = new PoseHistory(16);
+  SimulatedLidar lidar = new SimulatedLidar(
+    walls,
+    history,
+    10,
+    720,
+    0.005,
+    0.02,
+    new Random(1)
+  );
+  LidarScan scan = new LidarScan(720);
+  ScanClusterer clusterer = new ScanClusterer(walls);
+
+  {
+    history.record(0, 4, 4, 0);
+    history.record(100 * kPeriodNanos, 4, 4, 0);
+  }
+
+  void scanAt(long timestampNanos) {
+    lidar.generateScan(scan, timestampNanos);
+    scan.setPose(4, 4, 0);
+    clusterer.cluster(scan);
+  }
+
+  @Test
+  void onlyRobotsAreClustered() {
+    scanAt(kPeriodNanos);
+    Assertions.assertEquals(0, clusterer.getClusterCount());
+
+    lidar.setRobots(new double[] { 7, 4, 4, 6.5, 12, 1 });
+    scanAt(kPeriodNanos);
+    Assertions.assertEquals(3, clusterer.getClusterCount());
+    for (int i = 0; i < 3; i++) {
+      Assertions.assertTrue(clusterer.getClusterSize(i) < 1);
+    }
+
+    // the center is found from the near side alone
+    boolean found = false;
+    for (int i = 0; i < 3; i++) {
+      double dx = clusterer.getClusterX(i) - 7;
+      double dy = clusterer.getClusterY(i) - 4;
+      if (Math.hypot(dx, dy) < 0.1) {
+        found = true;
+      }
+    }
+
+    Assertions.assertTrue(found);
+  }
+
+  @Test
+  void movingRobotIsTracked() {
+    OpponentTracker tracker = new OpponentTracker();
+
+    for (int i = 1; i <= 20; i++) {
+      long now = i * kPeriodNanos;
+      // 1.5m/s across the field, a blip by the wall for one scan
+      double x = 7 + 0.15 * i;
+      lidar.setRobots(
+        i == 5 ? new double[] { x, 2, 10, 6 } : new double[] { x, 2 }
+      );
+      scanAt(now);
+      tracker.update(now, clusterer);
+
+      if (i == 2) {
+        Assertions.assertEquals(0, tracker.getConfirmedCount());
+      }
+    }
+
+    TrackedObstacle[] obstacles = tracker.getConfirmed();
+    Assertions.assertEquals(1, obstacles.length);
+    Assertions.assertEquals(0, obstacles[0].id);
+    Assertions.assertEquals(10, obstacles[0].x, 0.15);
+    Assertions.assertEquals(2, obstacles[0].y, 0.15);
+    Assertions.assertEquals(1.5, obstacles[0].velocityX, 0.3);
+    Assertions.assertEquals(0, obstacles[0].velocityY, 0.3);
+    Assertions.assertEquals(
+      10.15,
+      obstacles[0].predictX(21 * kPeriodNanos),
+      0.15
+    );
+  }
+}
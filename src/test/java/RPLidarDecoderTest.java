@@ -0,0 +1,129 @@
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.LidarScanPool;
+import frc.robot.extern_libs.lidar.RPLidarDecoder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ * @apiNote the streams in src/test/resources/rplidar are what an A1 sends from the middle of a 4m x 3m room,
+ * response descriptor and all. The standard one starts 100 samples before a revolution ends and misses every
+ * 37th return, the express one corrects every angle by 1 degree
+ */
+public class RPLidarDecoderTest {
+
+  List<LidarScan> scans = new ArrayList<>();
+  LidarScanPool pool = new LidarScanPool(8, 1500);
+  RPLidarDecoder decoder = new RPLidarDecoder(
+    pool,
+    (timestampNanos, scan) -> {
+      LidarScan copy = new LidarScan(scan.size());
+      copy.copyFrom(scan);
+      scans.add(copy);
+      scan.release();
+    }
+  );
+
+  byte[] readStream(String name) throws IOException {
+    try (InputStream in = getClass().getResourceAsStream("/rplidar/" + name)) {
+      return in.readAllBytes();
+    }
+  }
+
+  /**
+   * @apiNote feeds the stream in uneven reads through one small buffer, the way a serial port hands it over
+   */
+  void replay(byte[] stream) {
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    int read = 0;
+    int chunk = 1;
+    while (read < stream.length) {
+      int length = Math.min(
+        Math.min(chunk, buffer.remaining()),
+        stream.length - read
+      );
+      buffer.put(stream, read, length);
+      read += length;
+      chunk = chunk * 7 % 97 + 1;
+
+      buffer.flip();
+      decoder.decode(buffer, read);
+      buffer.compact();
+    }
+  }
+
+  void assertRoom(LidarScan scan) {
+    for (int i = 0; i < scan.size(); i++) {
+      double angle = scan.getAngle(i);
+      Assertions.assertTrue(angle >= 0 && angle < 2 * Math.PI);
+      if (scan.getDistance(i) == 0) {
+        continue;
+      }
+
+      double room = Math.min(
+        2.0 / Math.abs(Math.cos(angle)),
+        1.5 / Math.abs(Math.sin(angle))
+      );
+      Assertions.assertEquals(room, scan.getDistance(i), 0.005);
+    }
+  }
+
+  @Test
+  void standardScanStream() throws IOException {
+    replay(readStream("standard_scan.bin"));
+
+    // the revolution it started in and the one it ended in are not whole
+    Assertions.assertEquals(2, scans.size());
+    Assertions.assertEquals(0, decoder.getSkippedBytes());
+    int missing = 0;
+    for (LidarScan scan : scans) {
+      Assertions.assertEquals(360, scan.size());
+      Assertions.assertEquals(Math.toRadians(0.5), scan.getAngle(0), 1e-4);
+      Assertions.assertEquals(15, scan.getQuality(0));
+      assertRoom(scan);
+      for (int i = 0; i < scan.size(); i++) {
+        missing += scan.getDistance(i) == 0 ? 1 : 0;
+      }
+    }
+
+    Assertions.assertEquals(2 * 360 / 37, missing, 1);
+  }
+
+  @Test
+  void expressScanStream() throws IOException {
+    replay(readStream("express_scan.bin"));
+
+    Assertions.assertEquals(3, scans.size());
+    Assertions.assertEquals(0, decoder.getSkippedBytes());
+    for (LidarScan scan : scans) {
+      // 0.75 degrees a sample
+      Assertions.assertEquals(480, scan.size(), 1);
+      assertRoom(scan);
+    }
+  }
+
+  @Test
+  void noiseIsSkippedAndTheStreamPicksBackUp() throws IOException {
+    byte[] stream = readStream("express_scan.bin");
+    // garbage before the descriptor and one flipped byte in the third packet
+    byte[] noisy = new byte[stream.length + 3];
+    noisy[0] = 0x12;
+    noisy[1] = (byte) 0xA5;
+    noisy[2] = 0x77;
+    System.arraycopy(stream, 0, noisy, 3, stream.length);
+    noisy[3 + 7 + 2 * 84 + 40] ^= 0x10;
+
+    replay(noisy);
+
+    Assertions.assertTrue(decoder.getSkippedBytes() >= 3);
+    Assertions.assertEquals(3, scans.size());
+    for (LidarScan scan : scans) {
+      assertRoom(scan);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+import frc.robot.util.replay.ReplayCodec;
+import frc.robot.util.replay.SampleBuffer;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ */
+public class ReplayCodecTest {
+
+  /**
+   * @return the amount of bytes the scan took
+   */
+  int roundTrip(ReplayCodec codec, double[] scan, double tolerance) {
+    SampleBuffer in = new SampleBuffer();
+    in.set(scan);
+
+    ByteBuffer encoded = ByteBuffer.allocate(codec.maxEncodedBytes(scan.length));
+    codec.encode(in, encoded);
+    int bytes = encoded.position();
+    encoded.flip();
+
+    SampleBuffer out = new SampleBuffer();
+    codec.decode(encoded, scan.length, out);
+    Assertions.assertFalse(encoded.hasRemaining());
+    Assertions.assertEquals(scan.length, out.size());
+    for (int i = 0; i < scan.length; i++) {
+      Assertions.assertEquals(scan[i], out.get(i), tolerance);
+    }
+
+    return bytes;
+  }
+
+  @Test
+  void everyCodecRoundTrips() {
+    double[] scan = TestUtils.getLidarScanFake(360);
+    roundTrip(ReplayCodec.RAW, scan, 0);
+    roundTrip(ReplayCodec.FLOAT32, scan, 1e-5);
+    roundTrip(ReplayCodec.DELTA_VARINT_MM, scan, 0.0005);
+  }
+
+  @Test
+  void deltaVarintHandlesNegativesAndJumps() {
+    roundTrip(
+      ReplayCodec.DELTA_VARINT_MM,
+      new double[] { 0, -12.345, 12.345, 0.001, 1e6, -1e6, 0 },
+      0.0005
+    );
+  }
+
+  @Test
+  void deltaVarintKeepsNonFiniteValues() {
+    SampleBuffer in = new SampleBuffer();
+    in.set(
+      new double[] {
+        1.5,
+        Double.NaN,
+        1.501,
+        Double.POSITIVE_INFINITY,
+        Double.NEGATIVE_INFINITY,
+        -Double.MAX_VALUE,
+        Double.MAX_VALUE,
+        3,
+      }
+    );
+    ByteBuffer encoded = ByteBuffer.allocate(
+      ReplayCodec.DELTA_VARINT_MM.maxEncodedBytes(in.size())
+    );
+    ReplayCodec.DELTA_VARINT_MM.encode(in, encoded);
+    encoded.flip();
+
+    SampleBuffer out = new SampleBuffer();
+    ReplayCodec.DELTA_VARINT_MM.decode(encoded, in.size(), out);
+    Assertions.assertFalse(encoded.hasRemaining());
+    Assertions.assertEquals(1.5, out.get(0), 0.0005);
+    Assertions.assertTrue(Double.isNaN(out.get(1)));
+    Assertions.assertEquals(1.501, out.get(2), 0.0005);
+    Assertions.assertEquals(Double.POSITIVE_INFINITY, out.get(3));
+    Assertions.assertEquals(Double.NEGATIVE_INFINITY, out.get(4));
+    // clamped instead of wrapping around into a wrong sign
+    Assertions.assertTrue(out.get(5) < -1e14);
+    Assertions.assertTrue(out.get(6) > 1e14);
+    Assertions.assertEquals(3, out.get(7), 0.0005);
+  }
+
+  @Test
+  void deltaVarintIsAtLeastFourTimesSmaller() {
+    // real scans in meters change by millimeters between points, the fake ones by up to a meter
+    double[] scan = TestUtils.getLidarScanFake(360);
+    int raw = roundTrip(ReplayCodec.RAW, scan, 0);
+    int delta = roundTrip(ReplayCodec.DELTA_VARINT_MM, scan, 0.0005);
+    Assertions.assertTrue(raw >= delta * 4, raw + " vs " + delta);
+  }
+}
@@ -0,0 +1,241 @@
+import frc.robot.util.replay.ReplayCodec;
+import frc.robot.util.replay.ReplayLogFormat;
+import frc.robot.util.replay.ReplayLogHeader;
+import frc.robot.util.replay.ReplayReader;
+import frc.robot.util.replay.SampleBuffer;
+import frc.robot.util.replay.SegmentedLogStorage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32C;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ */
+public class ReplayReaderTest {
+
+  public String fileName = "TestReplayReader";
+
+  /**
+   * @apiNote writes amount ticks of a lidar scan and a 3 value pose, tick i is at i * 20ms
+   */
+  double[][] writeLog(String file, int amount, int tornBytes)
+    throws IOException {
+    double[][] scans = TestUtils.generateFakeScans(amount);
+    ReplayLogHeader header = new ReplayLogHeader(
+      new String[] { "lidar", "pose" },
+      new byte[] {
+        ReplayLogFormat.kTypeDoubleArray,
+        ReplayLogFormat.kTypeDoubleArray,
+      },
+      new ReplayCodec[] { ReplayCodec.DELTA_VARINT_MM, ReplayCodec.RAW }
+    );
+
+    SampleBuffer scan = new SampleBuffer();
+    SampleBuffer pose = new SampleBuffer();
+    CRC32C crc = new CRC32C();
+    ByteBuffer out = ByteBuffer.allocate(
+      header.byteSize() +
+      amount *
+      (
+        ReplayLogFormat.kBlockHeaderBytes +
+        ReplayLogFormat.kRecordHeaderBytes * 2 +
+        363 * Double.BYTES
+      )
+    );
+    header.write(out);
+    for (int i = 0; i < amount; i++) {
+      int blockStart = ReplayLogFormat.beginBlock(out);
+      scan.set(scans[i]);
+      pose.set(new double[] { i, -i, 0.5 });
+      ReplayLogFormat.putRecord(
+        out,
+        i * 20_000L,
+        0,
+        scan,
+        ReplayCodec.DELTA_VARINT_MM
+      );
+      ReplayLogFormat.putRecord(out, i * 20_000L, 1, pose, ReplayCodec.RAW);
+      ReplayLogFormat.finishBlock(out, blockStart, crc);
+    }
+
+    Files.write(
+      Path.of(file),
+      java.util.Arrays.copyOf(out.array(), out.position() - tornBytes)
+    );
+    new File(file + ".idx").delete();
+    return scans;
+  }
+
+  @Test
+  void seekFindsTheRightRecord() throws IOException {
+    double[][] scans = writeLog(fileName, 500, 0);
+
+    try (ReplayReader reader = new ReplayReader(fileName)) {
+      Assertions.assertEquals("pose", reader.getHeader().deviceNames[1]);
+      Assertions.assertTrue(reader.getIndexSize() > 1);
+      Assertions.assertEquals(0, reader.getStartTime());
+      Assertions.assertEquals(499 * 20_000L, reader.getEndTime());
+
+      // between two ticks lands on the later one
+      reader.seek(321 * 20_000L - 5);
+      Assertions.assertTrue(reader.next(0));
+      Assertions.assertEquals(321 * 20_000L, reader.getTimestamp());
+
+      SampleBuffer buffer = new SampleBuffer();
+      reader.readValues(buffer);
+      Assertions.assertEquals(scans[321].length, buffer.size());
+      for (int i = 0; i < buffer.size(); i++) {
+        Assertions.assertEquals(scans[321][i], buffer.get(i), 0.0005);
+      }
+
+      reader.seek(Long.MAX_VALUE);
+      Assertions.assertFalse(reader.next());
+    }
+  }
+
+  @Test
+  void perDeviceIterationSkipsOthers() throws IOException {
+    writeLog(fileName, 200, 0);
+
+    try (ReplayReader reader = new ReplayReader(fileName)) {
+      int poseId = reader.getHeader().getDeviceId("pose");
+      int count = 0;
+      while (reader.next(poseId)) {
+        Assertions.assertEquals(3, reader.getValueCount());
+        Assertions.assertEquals(count, reader.getValue(0));
+        count++;
+      }
+
+      Assertions.assertEquals(200, count);
+    }
+  }
+
+  @Test
+  void savedIndexIsReusedAndTornTailIgnored() throws IOException {
+    writeLog(fileName, 300, 10);
+
+    // only reading never leaves an index behind
+    new File(fileName + ".idx").delete();
+    try (ReplayReader reader = new ReplayReader(fileName)) {
+      Assertions.assertTrue(reader.getIndexSize() > 0);
+    }
+
+    Assertions.assertFalse(new File(fileName + ".idx").exists());
+
+    int firstIndexSize;
+    try (ReplayReader reader = new ReplayReader(fileName, true)) {
+      firstIndexSize = reader.getIndexSize();
+      // the last block lost its end so all of tick 299 is thrown away, not just the pose
+      Assertions.assertEquals(298 * 20_000L, reader.getEndTime());
+    }
+
+    Assertions.assertTrue(new File(fileName + ".idx").exists());
+    try (ReplayReader reader = new ReplayReader(fileName)) {
+      Assertions.assertEquals(firstIndexSize, reader.getIndexSize());
+      int count = 0;
+      while (reader.next()) {
+        count++;
+      }
+
+      Assertions.assertEquals(598, count);
+      Assertions.assertEquals(0, reader.getCorruptBlocks());
+    }
+  }
+
+  @Test
+  void corruptBlockIsSkipped() throws IOException {
+    writeLog(fileName, 100, 0);
+
+    // flip one byte in the middle of the file, which lands inside some tick's block
+    byte[] bytes = Files.readAllBytes(Path.of(fileName));
+    bytes[bytes.length / 2] ^= 0x55;
+    Files.write(Path.of(fileName), bytes);
+    new File(fileName + ".idx").delete();
+
+    try (ReplayReader reader = new ReplayReader(fileName)) {
+      Assertions.assertEquals(99 * 20_000L, reader.getEndTime());
+      int count = 0;
+      while (reader.next()) {
+        count++;
+      }
+
+      Assertions.assertEquals(198, count);
+      Assertions.assertEquals(1, reader.getCorruptBlocks());
+    }
+  }
+
+  @Test
+  void segmentsRollOverWithinBudget() throws IOException {
+    File directory = new File("TestSegments");
+    for (File old : SegmentedLogStorage.listSegments(directory, "match")) {
+      old.delete();
+    }
+
+    ReplayLogHeader header = new ReplayLogHeader(
+      new String[] { "lidar" },
+      new byte[] { ReplayLogFormat.kTypeDoubleArray },
+      new ReplayCodec[] { ReplayCodec.RAW }
+    );
+    SampleBuffer scan = new SampleBuffer();
+    CRC32C crc = new CRC32C();
+    ByteBuffer frame = ByteBuffer.allocate(
+      ReplayLogFormat.kBlockHeaderBytes +
+      ReplayLogFormat.kRecordHeaderBytes +
+      360 * Double.BYTES
+    );
+
+    // ~4 scans per segment and room for 3 segments
+    int segmentBytes = 12 * 1024;
+    for (int run = 0; run < 2; run++) {
+      try (
+        SegmentedLogStorage storage = new SegmentedLogStorage(
+          directory,
+          "match",
+          segmentBytes,
+          3L * segmentBytes,
+          header
+        )
+      ) {
+        for (int i = 0; i < 20; i++) {
+          scan.set(TestUtils.getLidarScanFake(360));
+          frame.clear();
+          int blockStart = ReplayLogFormat.beginBlock(frame);
+          ReplayLogFormat.putRecord(
+            frame,
+            (run * 20 + i) * 20_000L,
+            0,
+            scan,
+            ReplayCodec.RAW
+          );
+          ReplayLogFormat.finishBlock(frame, blockStart, crc);
+          frame.flip();
+          storage.write(frame);
+        }
+      }
+    }
+
+    File[] segments = SegmentedLogStorage.listSegments(directory, "match");
+    Assertions.assertEquals(3, segments.length);
+
+    // the second run went after the first one instead of over it, so the newest scan is the last of run 2
+    long lastTime = -1;
+    for (File segment : segments) {
+      try (ReplayReader reader = new ReplayReader(segment.getPath())) {
+        Assertions.assertEquals("lidar", reader.getHeader().deviceNames[0]);
+        while (reader.next()) {
+          Assertions.assertEquals(360, reader.getValueCount());
+          Assertions.assertTrue(reader.getTimestamp() > lastTime);
+          lastTime = reader.getTimestamp();
+        }
+      }
+    }
+
+    Assertions.assertEquals(39 * 20_000L, lastTime);
+  }
+}
@@ -0,0 +1,172 @@
+import frc.robot.util.replay.AsyncReplayWriter;
+import frc.robot.util.replay.BackpressurePolicy;
+import frc.robot.util.replay.ReplayRingBuffer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ */
+public class ReplayRingBufferTest {
+
+  ByteBuffer frame(int value) {
+    ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES);
+    buf.putInt(value).flip();
+    return buf;
+  }
+
+  int[] drain(ReplayRingBuffer ring) {
+    ByteBuffer out = ByteBuffer.allocate(1024);
+    while (ring.poll(out) > 0) {}
+    out.flip();
+
+    int[] values = new int[out.remaining() / Integer.BYTES];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = out.getInt();
+    }
+
+    return values;
+  }
+
+  @Test
+  void dropNewestKeepsOldFrames() {
+    ReplayRingBuffer ring = new ReplayRingBuffer(
+      4,
+      Integer.BYTES,
+      BackpressurePolicy.DROP_NEWEST
+    );
+
+    for (int i = 0; i < 6; i++) {
+      ring.offer(frame(i));
+    }
+
+    int[] values = drain(ring);
+    Assertions.assertEquals(2, ring.getDroppedFrames());
+    Assertions.assertEquals(4, values.length);
+    Assertions.assertEquals(0, values[0]);
+    Assertions.assertEquals(3, values[3]);
+  }
+
+  @Test
+  void dropOldestKeepsNewFrames() {
+    ReplayRingBuffer ring = new ReplayRingBuffer(
+      4,
+      Integer.BYTES,
+      BackpressurePolicy.DROP_OLDEST
+    );
+
+    for (int i = 0; i < 6; i++) {
+      ring.offer(frame(i));
+    }
+
+    int[] values = drain(ring);
+    Assertions.assertEquals(2, ring.getDroppedFrames());
+    Assertions.assertEquals(4, values.length);
+    Assertions.assertEquals(2, values[0]);
+    Assertions.assertEquals(5, values[3]);
+  }
+
+  @Test
+  void concurrentDropOldestNeverTearsFrames() throws Exception {
+    ReplayRingBuffer ring = new ReplayRingBuffer(
+      8,
+      Integer.BYTES * 2,
+      BackpressurePolicy.DROP_OLDEST
+    );
+    int amount = 200_000;
+
+    Thread producer = new Thread(() -> {
+      ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * 2);
+      for (int i = 0; i < amount; i++) {
+        buf.clear();
+        buf.putInt(i).putInt(~i).flip();
+        ring.offer(buf);
+      }
+    });
+    producer.start();
+
+    ByteBuffer out = ByteBuffer.allocate(Integer.BYTES * 2);
+    long received = 0;
+    int last = -1;
+    while (producer.isAlive() || ring.size() > 0) {
+      out.clear();
+      if (ring.poll(out) == 0) {
+        continue;
+      }
+
+      out.flip();
+      int value = out.getInt();
+      Assertions.assertEquals(~value, out.getInt());
+      Assertions.assertTrue(value > last);
+      last = value;
+      received++;
+    }
+
+    producer.join();
+    Assertions.assertEquals(amount, received + ring.getDroppedFrames());
+  }
+
+  @Test
+  void failedWriteNeverRepeatsBytes() throws Exception {
+    ByteArrayOutputStream written = new ByteArrayOutputStream();
+    int[] calls = new int[1];
+    WritableByteChannel channel = new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) throws IOException {
+        if (++calls[0] == 3) {
+          throw new IOException("disk hiccup");
+        }
+
+        int amount = Math.min(2, src.remaining());
+        for (int i = 0; i < amount; i++) {
+          written.write(src.get());
+        }
+
+        return amount;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {}
+    };
+
+    AsyncReplayWriter writer = new AsyncReplayWriter(
+      channel,
+      8,
+      Integer.BYTES,
+      64,
+      0,
+      1000,
+      BackpressurePolicy.BLOCK
+    );
+
+    int amount = 4;
+    for (int i = 0; i < amount; i++) {
+      writer.offer(frame(i));
+    }
+
+    long deadline = System.nanoTime() + 2_000_000_000L;
+    while (
+      writer.getLastError() == null && System.nanoTime() < deadline
+    ) {
+      Thread.sleep(1);
+    }
+
+    writer.close();
+    Assertions.assertNotNull(writer.getLastError());
+
+    ByteBuffer out = ByteBuffer.wrap(written.toByteArray());
+    Assertions.assertEquals(amount * Integer.BYTES, out.remaining());
+    for (int i = 0; i < amount; i++) {
+      Assertions.assertEquals(i, out.getInt());
+    }
+  }
+}
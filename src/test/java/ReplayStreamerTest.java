@@ -0,0 +1,161 @@
+import frc.robot.inter.ReplayLoggerDevice;
+import frc.robot.subsystems.ReplayLoggerSubsystem;
+import frc.robot.util.replay.ReplayLogFormat;
+import frc.robot.util.replay.ReplayLogHeader;
+import frc.robot.util.replay.ReplayReader;
+import frc.robot.util.replay.ReplayStreamer;
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ */
+public class ReplayStreamerTest {
+
+  public String fileName = "TestStreamer";
+
+  ReplayLoggerSubsystem makeLogger(double[][] scan) throws IOException {
+    ReplayLoggerDevice fakeDevice = new ReplayLoggerDevice() {
+      @Override
+      public double[] getData() {
+        return scan[0];
+      }
+
+      @Override
+      public String getName() {
+        return "lidar";
+      }
+    };
+
+    return new ReplayLoggerSubsystem(
+      new ReplayLoggerDevice[] { fakeDevice },
+      fileName,
+      1
+    );
+  }
+
+  void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      Assertions.assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  void tcpViewerReadsAValidLog() throws Exception {
+    double[][] fakeScans = TestUtils.generateFakeScans(20);
+    double[][] scan = new double[1][];
+    ReplayLoggerSubsystem logger = makeLogger(scan);
+    ReplayStreamer streamer = logger.startStreaming(0);
+
+    try (Socket viewer = new Socket("localhost", streamer.getPort())) {
+      waitFor(() -> streamer.getClientCount() == 1);
+      for (double[] curScan : fakeScans) {
+        scan[0] = curScan;
+        logger.forceLog();
+      }
+
+      waitFor(() -> streamer.getSentFrames() == fakeScans.length);
+      logger.close();
+
+      // what came over the socket is a log like any other
+      Files.write(
+        Path.of(fileName + "Viewer"),
+        viewer.getInputStream().readAllBytes()
+      );
+    }
+
+    new File(fileName + "Viewer.idx").delete();
+    try (ReplayReader reader = new ReplayReader(fileName + "Viewer")) {
+      Assertions.assertEquals("lidar", reader.getHeader().deviceNames[0]);
+      for (double[] curScan : fakeScans) {
+        Assertions.assertTrue(reader.next());
+        Assertions.assertEquals(curScan.length, reader.getValueCount());
+        for (int i = 0; i < curScan.length; i++) {
+          Assertions.assertEquals(curScan[i], reader.getValue(i));
+        }
+      }
+
+      Assertions.assertFalse(reader.next());
+    }
+  }
+
+  @Test
+  void slowViewerNeverStallsTheLoop() throws Exception {
+    double[][] scan = new double[][] { TestUtils.getLidarScanFake(1440) };
+    ReplayLoggerSubsystem logger = makeLogger(scan);
+    ReplayStreamer streamer = logger.startStreaming(0);
+
+    // connects and then never reads a byte
+    try (Socket viewer = new Socket("localhost", streamer.getPort())) {
+      waitFor(() -> streamer.getClientCount() == 1);
+
+      long slowestTick = 0;
+      for (int i = 0; i < 1000; i++) {
+        long start = System.nanoTime();
+        logger.forceLog();
+        slowestTick = Math.max(slowestTick, System.nanoTime() - start);
+      }
+
+      waitFor(() -> streamer.getDroppedFrames() > 0);
+      // a tick is 25ms, one blocked on the socket would never come back
+      Assertions.assertTrue(slowestTick < 25_000_000, "slowest " + slowestTick);
+      logger.close();
+    }
+  }
+
+  @Test
+  void udpSendsHeaderThenBlocks() throws Exception {
+    double[][] scan = new double[][] { TestUtils.getLidarScanFake(360) };
+    ReplayLoggerSubsystem logger = makeLogger(scan);
+
+    try (
+      DatagramSocket viewer = new DatagramSocket(
+        0,
+        InetAddress.getLoopbackAddress()
+      )
+    ) {
+      viewer.setSoTimeout(5000);
+      logger.startStreaming(
+        new InetSocketAddress(
+          InetAddress.getLoopbackAddress(),
+          viewer.getLocalPort()
+        )
+      );
+
+      DatagramPacket packet = new DatagramPacket(new byte[65_536], 65_536);
+      viewer.receive(packet);
+      ReplayLogHeader header = ReplayLogHeader.read(
+        ByteBuffer.wrap(packet.getData(), 0, packet.getLength())
+      );
+      Assertions.assertEquals("lidar", header.deviceNames[0]);
+
+      logger.forceLog();
+      viewer.receive(packet);
+      ByteBuffer block = ByteBuffer.wrap(
+        packet.getData(),
+        0,
+        packet.getLength()
+      );
+      Assertions.assertEquals(ReplayLogFormat.kBlockMagic, block.getInt());
+      Assertions.assertEquals(
+        packet.getLength() - ReplayLogFormat.kBlockHeaderBytes,
+        block.getInt()
+      );
+      logger.close();
+    }
+  }
+}
@@ -0,0 +1,118 @@
+import frc.robot.Constants.LidarConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.util.lidar.FieldWallModel;
+import frc.robot.util.lidar.PoseHistory;
+import frc.robot.util.lidar.ScanDeskewer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ */
+public class ScanDeskewerTest {
+
+  static final long kStart = 1_000_000_000L;
+  static final long kStep = 20_000_000L;
+
+  // driving at 3m/s while turning at 1rad/s
+  double x(double seconds) {
+    return 4 + 3 * seconds;
+  }
+
+  double y(double seconds) {
+    return 3 + 0.5 * seconds;
+  }
+
+  double heading(double seconds) {
+    return 0.2 + seconds;
+  }
+
+  double seconds(long nanos) {
+    return (nanos - kStart) / 1e9;
+  }
+
+  @Test
+  void historyInterpolatesAndWrapsHeading() {
+    PoseHistory history = new PoseHistory(4);
+    double[] pose = new double[3];
+    Assertions.assertFalse(history.getPose(0, pose));
+
+    // more than the capacity, the oldest ones are gone. The heading wraps from +pi to -pi between 3 and 4
+    for (int i = 0; i < 6; i++) {
+      double heading = Math.IEEEremainder(Math.PI - 0.14 + i * 0.04, 2 * Math.PI);
+      history.record(kStart + i * kStep, i, 2 * i, heading);
+    }
+
+    Assertions.assertTrue(history.getPose(kStart + 3 * kStep + kStep / 2, pose));
+    Assertions.assertEquals(3.5, pose[0], 1e-9);
+    Assertions.assertEquals(7, pose[1], 1e-9);
+    Assertions.assertEquals(0, Math.IEEEremainder(pose[2] - Math.PI, 2 * Math.PI), 1e-9);
+
+    // outside of what is kept it holds the nearest pose
+    history.getPose(kStart, pose);
+    Assertions.assertEquals(3, pose[0], 1e-9);
+    history.getPose(kStart + 100 * kStep, pose);
+    Assertions.assertEquals(5, pose[0], 1e-9);
+  }
+
+  @Test
+  void movingScanLinesUpWithTheWallsAgain() {
+    FieldWallModel walls = FieldWallModel.crescendo();
+    PoseHistory history = new PoseHistory(LidarConstants.kPoseHistoryCapacity);
+    for (int i = 0; i < 20; i++) {
+      long time = kStart + i * kStep;
+      history.record(
+        time,
+        x(seconds(time)),
+        y(seconds(time)),
+        heading(seconds(time))
+      );
+    }
+
+    // every point is measured from where the lidar was at that moment
+    long end = kStart + 15 * kStep;
+    long sweep = LidarConstants.kDefaultSweepNanos;
+    int points = 720;
+    LidarScan scan = new LidarScan(points);
+    scan.clear(end);
+    for (int i = 0; i < points; i++) {
+      double angle = 2 * Math.PI * i / points;
+      double t = seconds(end - (long) ((1 - (double) i / points) * sweep));
+      double distance = walls.castRay(x(t), y(t), heading(t) - angle, 12);
+      scan.add((float) angle, distance < 12 ? (float) distance : 0, (short) 15);
+    }
+
+    double endX = x(seconds(end));
+    double endY = y(seconds(end));
+    double endHeading = heading(seconds(end));
+    double before = worstWallDistance(walls, scan, endX, endY, endHeading);
+    Assertions.assertTrue(before > 0.1, "smeared by " + before);
+
+    new ScanDeskewer(history, 0, 0, 0).deskew(scan);
+    double after = worstWallDistance(walls, scan, endX, endY, endHeading);
+    Assertions.assertTrue(after < 0.005, "still off by " + after);
+  }
+
+  double worstWallDistance(
+    FieldWallModel walls,
+    LidarScan scan,
+    double x,
+    double y,
+    double heading
+  ) {
+    double worst = 0;
+    for (int i = 0; i < scan.size(); i++) {
+      if (scan.getDistance(i) <= 0) {
+        continue;
+      }
+
+      double angle = heading - scan.getAngle(i);
+      double px = x + scan.getDistance(i) * Math.cos(angle);
+      double py = y + scan.getDistance(i) * Math.sin(angle);
+      double distance = walls.lineDistance(walls.nearestWall(px, py), px, py);
+      worst = Math.max(worst, Math.abs(distance));
+    }
+
+    return worst;
+  }
+}
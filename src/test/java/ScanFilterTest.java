@@ -0,0 +1,128 @@
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.SimulatedLidar;
+import frc.robot.inter.ScanFilter;
+import frc.robot.util.lidar.FieldWallModel;
+import frc.robot.util.lidar.PoseHistory;
+import frc.robot.util.lidar.filter.DownsampleFilter;
+import frc.robot.util.lidar.filter.OutlierFilter;
+import frc.robot.util.lidar.filter.QualityFilter;
+import frc.robot.util.lidar.filter.ScanFilterPipeline;
+import frc.robot.util.lidar.filter.SelfMaskFilter;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ */
+public class ScanFilterTest {
+
+  /**
+   * @apiNote 360 points a degree apart, 2m away, with a dropout, a weak return, a bumper and a spike in it
+   */
+  LidarScan makeScan() {
+    LidarScan scan = new LidarScan(360);
+    scan.clear(1);
+    for (int i = 0; i < 360; i++) {
+      scan.add((float) Math.toRadians(i + 0.5), 2, (short) 47);
+    }
+
+    scan.distances()[10] = 0;
+    scan.qualities()[20] = 3;
+    scan.distances()[90] = 0.2f;
+    scan.distances()[91] = 0.2f;
+    scan.distances()[200] = 5;
+    return scan;
+  }
+
+  int filter(ScanFilter stage, LidarScan scan) {
+    int kept = stage.filter(
+      scan.angles(),
+      scan.distances(),
+      scan.qualities(),
+      scan.size()
+    );
+    scan.setSize(kept);
+    return kept;
+  }
+
+  @Test
+  void stagesThrowOutWhatTheyShould() {
+    LidarScan scan = makeScan();
+
+    Assertions.assertEquals(358, filter(new QualityFilter((short) 10), scan));
+    Assertions.assertEquals(
+      356,
+      filter(
+        new SelfMaskFilter(
+          new double[] { Math.toRadians(89), Math.toRadians(92) },
+          0.5
+        ),
+        scan
+      )
+    );
+    Assertions.assertEquals(355, filter(new OutlierFilter(5, 0.15), scan));
+    for (int i = 0; i < scan.size(); i++) {
+      Assertions.assertEquals(2, scan.getDistance(i));
+    }
+
+    // kept in order
+    Assertions.assertEquals(Math.toRadians(9.5), scan.getAngle(9), 1e-6);
+    Assertions.assertEquals(Math.toRadians(11.5), scan.getAngle(10), 1e-6);
+
+    // every 4 degree bin still has a point
+    Assertions.assertEquals(
+      90,
+      filter(new DownsampleFilter(Math.toRadians(4)), scan)
+    );
+  }
+
+  @Test
+  void downsamplingKeepsTheClosestPoint() {
+    LidarScan scan = makeScan();
+    scan.distances()[4] = 1.2f;
+
+    filter(new DownsampleFilter(Math.toRadians(4)), scan);
+    Assertions.assertEquals(90, scan.size());
+    Assertions.assertEquals(1.2f, scan.getDistance(1));
+    Assertions.assertEquals(Math.toRadians(4.5), scan.getAngle(1), 1e-6);
+  }
+
+  @Test
+  void pipelineFiltersScansFromTheLidar() throws InterruptedException {
+    PoseHistory history = new PoseHistory(16);
+    history.record(System.nanoTime(), 8, 4, 0);
+    SimulatedLidar lidar = new SimulatedLidar(
+      FieldWallModel.crescendo(),
+      history,
+      20,
+      720,
+      0.005,
+      0.05,
+      new Random(1)
+    );
+    ScanFilterPipeline pipeline = new ScanFilterPipeline(lidar);
+    int[] received = new int[1];
+
+    lidar.start();
+    Thread.sleep(300);
+    lidar.close();
+    Thread.sleep(50);
+    pipeline.close();
+    pipeline.drainScans((timestampNanos, scan) -> {
+      Assertions.assertTrue(scan.size() > 300 && scan.size() <= 360);
+      for (int i = 0; i < scan.size(); i++) {
+        Assertions.assertTrue(scan.getDistance(i) > 0);
+      }
+
+      received[0]++;
+      scan.release();
+    });
+
+    Assertions.assertTrue(received[0] >= 4);
+    Assertions.assertEquals(4, pipeline.getStageCount());
+    Assertions.assertEquals("quality", pipeline.getStageName(0));
+    Assertions.assertTrue(pipeline.getRemovedPoints(0) > 0);
+    Assertions.assertTrue(pipeline.getAverageStageNanos(2) > 0);
+  }
+}
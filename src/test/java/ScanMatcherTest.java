@@ -0,0 +1,82 @@
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.util.lidar.FieldWallModel;
+import frc.robot.util.lidar.LidarLocalizer;
+import frc.robot.util.lidar.ScanMatch;
+import frc.robot.util.lidar.ScanMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ */
+public class ScanMatcherTest {
+
+  LidarScan makeScan(
+    FieldWallModel walls,
+    double x,
+    double y,
+    double heading,
+    double guessX,
+    double guessY,
+    double guessHeading
+  ) {
+    LidarScan scan = TestUtils.generateWallScan(walls, 720, x, y, heading, 0);
+    scan.setPose(guessX, guessY, guessHeading);
+    return scan;
+  }
+
+  @Test
+  void pullsAnOffGuessOntoTheWalls() {
+    FieldWallModel walls = FieldWallModel.crescendo();
+    ScanMatcher matcher = new ScanMatcher(walls);
+    LidarScan scan = makeScan(walls, 3, 2, 0.3, 3.2, 1.85, 0.38);
+
+    Assertions.assertTrue(matcher.match(scan));
+    Assertions.assertEquals(3, matcher.getX(), 0.01);
+    Assertions.assertEquals(2, matcher.getY(), 0.01);
+    Assertions.assertEquals(0.3, matcher.getHeading(), 0.005);
+    Assertions.assertTrue(matcher.getRmse() < 0.01);
+  }
+
+  @Test
+  void oneWallIsNotEnough() {
+    FieldWallModel wall = new FieldWallModel(
+      new double[] { 0, 0, 16, 0 },
+      16,
+      8,
+      0.05,
+      1
+    );
+    ScanMatcher matcher = new ScanMatcher(wall);
+
+    // sliding along the wall looks the same, so this can not be trusted
+    Assertions.assertFalse(matcher.match(makeScan(wall, 5, 2, 0, 5.3, 2, 0)));
+  }
+
+  @Test
+  void localizerHandsBackMatches() throws InterruptedException {
+    FieldWallModel walls = FieldWallModel.crescendo();
+    List<ScanMatch> matches = new ArrayList<>();
+
+    try (LidarLocalizer localizer = new LidarLocalizer(walls)) {
+      LidarScan scan = makeScan(walls, 12, 6, -2, 11.9, 6.1, -2.05);
+      Assertions.assertTrue(localizer.submit(scan));
+
+      long deadline = System.currentTimeMillis() + 5000;
+      while (localizer.drainMatches((time, match) -> matches.add(match)) == 0) {
+        Assertions.assertTrue(System.currentTimeMillis() < deadline);
+        Thread.sleep(1);
+      }
+
+      Assertions.assertEquals(0, localizer.getRejectedScans());
+      ScanMatch match = matches.get(0);
+      Assertions.assertEquals(scan.getTimestampNanos(), match.timestampNanos);
+      Assertions.assertEquals(12, match.x, 0.01);
+      Assertions.assertEquals(6, match.y, 0.01);
+      Assertions.assertEquals(-2, match.heading, 0.005);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+import frc.robot.extern_libs.lidar.ScanQueue;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ */
+public class ScanQueueTest {
+
+  @Test
+  void drainsInOrderAndDropsWhenFull() {
+    ScanQueue<double[]> queue = new ScanQueue<>(4);
+    for (int i = 0; i < 5; i++) {
+      Assertions.assertEquals(i < 4, queue.offer(i, new double[] { i }));
+    }
+
+    Assertions.assertEquals(1, queue.getDroppedScans());
+    long[] expected = new long[] { 0 };
+    int drained = queue.drain((time, scan) -> {
+      Assertions.assertEquals(expected[0], time);
+      Assertions.assertEquals(expected[0], scan[0]);
+      expected[0]++;
+    });
+
+    Assertions.assertEquals(4, drained);
+    Assertions.assertEquals(0, queue.drain((time, scan) -> Assertions.fail()));
+
+    // the slots go back to the producers after a drain
+    Assertions.assertTrue(queue.offer(10, new double[] { 10 }));
+  }
+
+  @Test
+  void manyProducersNeverLoseOrTearScans() throws Exception {
+    int producers = 4;
+    int perProducer = 50_000;
+    ScanQueue<long[]> queue = new ScanQueue<>(64);
+
+    Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; p++) {
+      int producer = p;
+      threads[p] =
+        new Thread(() -> {
+          for (int i = 0; i < perProducer; i++) {
+            // the timestamp and both values have to arrive together
+            long[] scan = new long[] { producer, i };
+            while (!queue.offer(producer * 1_000_000L + i, scan)) {
+              Thread.onSpinWait();
+            }
+          }
+        });
+      threads[p].start();
+    }
+
+    long[] nextExpected = new long[producers];
+    int[] received = new int[1];
+    ScanQueue.ScanConsumer<long[]> consumer = (time, scan) -> {
+      int producer = (int) scan[0];
+      Assertions.assertEquals(producer * 1_000_000L + scan[1], time);
+      // one producer's scans stay in order
+      Assertions.assertEquals(nextExpected[producer], scan[1]);
+      nextExpected[producer]++;
+      received[0]++;
+    };
+
+    while (received[0] < producers * perProducer) {
+      queue.drain(consumer);
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assertions.assertEquals(0, queue.drain(consumer));
+  }
+}
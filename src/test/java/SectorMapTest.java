@@ -0,0 +1,72 @@
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.util.lidar.FieldWallModel;
+import frc.robot.util.lidar.SectorMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ */
+public class SectorMapTest {
+
+  /**
+   * @apiNote a robot facing a wall 1.5m in front of it, with a wall to its left running alongside
+   */
+  LidarScan makeCornerScan(double left) {
+    FieldWallModel walls = new FieldWallModel(
+      new double[] { 1.5, -5, 1.5, 5, -5, left, 5, left },
+      10,
+      10,
+      0.05,
+      5
+    );
+    LidarScan scan = new LidarScan(720);
+    scan.clear(1_000_000_000L);
+    for (int i = 0; i < 720; i++) {
+      double angle = 2 * Math.PI * i / 720;
+      // lidar angles go clockwise
+      double distance = walls.castRay(0, 0, -angle, 12);
+      scan.add((float) angle, distance < 12 ? (float) distance : 0, (short) 15);
+    }
+
+    return scan;
+  }
+
+  @Test
+  void tableHoldsTheClosestPointPerSector() {
+    SectorMap map = new SectorMap(36, 0);
+    map.update(makeCornerScan(0.5));
+
+    Assertions.assertEquals(0, map.getSector(0.01));
+    Assertions.assertEquals(0, map.getSector(-0.01));
+    Assertions.assertEquals(9, map.getSector(Math.PI / 2));
+    Assertions.assertEquals(1.5, map.getMinDistance(0), 0.001);
+    Assertions.assertEquals(0.5, map.getMinDistance(9), 0.001);
+    // nothing behind or to the right
+    Assertions.assertEquals(
+      Float.POSITIVE_INFINITY,
+      map.getMinDistance(map.getSector(-Math.PI / 2))
+    );
+  }
+
+  @Test
+  void slowsDownOnlyTowardObstacles() {
+    SectorMap map = new SectorMap(36, 0);
+    map.update(makeCornerScan(0.5));
+    long now = 1_000_000_000L;
+
+    // 1.05m to stop in with 0.15s to react and 5m/s^2 of braking is ~2.58m/s
+    Assertions.assertEquals(2.576 / 4, map.getSpeedScale(0, 4, now), 0.001);
+    // slow enough is left alone
+    Assertions.assertEquals(1, map.getSpeedScale(0, 0.5, now));
+    // backing away and driving along the left wall
+    Assertions.assertEquals(1, map.getSpeedScale(Math.PI, 4, now));
+    // the left wall leaves 5cm, barely a crawl
+    Assertions.assertEquals(0.28, map.getSpeedScale(Math.PI / 2, 1, now), 0.01);
+    // and inside the margin nothing at all
+    map.update(makeCornerScan(0.4));
+    Assertions.assertEquals(0, map.getSpeedScale(Math.PI / 2, 1, now));
+    // an old table is not trusted
+    Assertions.assertEquals(1, map.getSpeedScale(0, 4, now + 1_000_000_000L));
+  }
+}
@@ -0,0 +1,99 @@
+import frc.robot.Constants.LidarConstants;
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.extern_libs.lidar.SimulatedLidar;
+import frc.robot.util.lidar.FieldWallModel;
+import frc.robot.util.lidar.PoseHistory;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ */
+public class SimulatedLidarTest {
+
+  static final long kEndNanos = 2_000_000_000L;
+
+  FieldWallModel walls = FieldWallModel.crescendo();
+  PoseHistory history = new PoseHistory(16);
+
+  SimulatedLidar makeLidar(double noise, double dropout) {
+    history.record(kEndNanos - 500_000_000L, 8, 4, 0.3);
+    history.record(kEndNanos + 500_000_000L, 8, 4, 0.3);
+    return new SimulatedLidar(
+      walls,
+      history,
+      10,
+      720,
+      noise,
+      dropout,
+      new Random(1)
+    );
+  }
+
+  @Test
+  void scanSeesTheWalls() {
+    SimulatedLidar lidar = makeLidar(0.005, 0.05);
+    LidarScan scan = new LidarScan(720);
+    Assertions.assertTrue(lidar.generateScan(scan, kEndNanos));
+    Assertions.assertEquals(720, scan.size());
+
+    int dropped = 0;
+    for (int i = 0; i < scan.size(); i++) {
+      if (scan.getDistance(i) == 0) {
+        Assertions.assertEquals(0, scan.getQuality(i));
+        dropped++;
+        continue;
+      }
+
+      // lidar angles go clockwise
+      double expected = walls.castRay(8, 4, 0.3 - scan.getAngle(i), 12);
+      Assertions.assertEquals(expected, scan.getDistance(i), expected * 0.03);
+    }
+
+    // 5% up close, more further out
+    Assertions.assertTrue(dropped > 720 * 0.05 && dropped < 720 * 0.2);
+  }
+
+  @Test
+  void otherRobotsBlockTheWalls() {
+    SimulatedLidar lidar = makeLidar(0, 0);
+    // straight in front, the lidar's angle 0
+    lidar.setRobots(
+      new double[] { 8 + 2 * Math.cos(0.3), 4 + 2 * Math.sin(0.3) }
+    );
+    LidarScan scan = new LidarScan(720);
+    lidar.generateScan(scan, kEndNanos);
+
+    Assertions.assertEquals(
+      2 - LidarConstants.kSimRobotRadiusMeters,
+      scan.getDistance(0),
+      0.01
+    );
+    // behind it is still the wall
+    Assertions.assertEquals(
+      walls.castRay(8, 4, 0.3 - scan.getAngle(360), 12),
+      scan.getDistance(360),
+      1e-4
+    );
+  }
+
+  @Test
+  void threadSendsAScanEveryRevolution() throws InterruptedException {
+    SimulatedLidar lidar = makeLidar(0.005, 0.02);
+    history.record(System.nanoTime(), 8, 4, 0.3);
+    int[] received = new int[1];
+
+    lidar.start();
+    Thread.sleep(550);
+    lidar.close();
+    lidar.drainScans((timestampNanos, scan) -> {
+      Assertions.assertEquals(720, scan.size());
+      received[0]++;
+      scan.release();
+    });
+
+    Assertions.assertEquals(5, received[0], 1);
+    Assertions.assertEquals(0, lidar.getDroppedScans());
+  }
+}
@@ -0,0 +1,160 @@
+import frc.robot.util.swerve.SwerveKinematics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import util.TestUtils;
+
+/**
+ * @author godbrigero
+ */
+public class SwerveKinematicsTest {
+
+  @Test
+  void matchesTheOldDriveMath() {
+    double l = 0.3;
+    double w = 0.25;
+    SwerveKinematics kinematics = new SwerveKinematics(
+      new double[] { -w, w, -w, w },
+      new double[] { l, l, -l, -l }
+    );
+
+    for (int n = 0; n < 1000; n++) {
+      double x = TestUtils.randomInstance.nextDouble() * 2 - 1;
+      double y = TestUtils.randomInstance.nextDouble() * 2 - 1;
+      double r = TestUtils.randomInstance.nextDouble() * 2 - 1;
+      kinematics.calculate(x, y, r, 1);
+
+      // what SwerveSubsystem.drive used to do
+      double radius = Math.sqrt(l * l + w * w);
+      double a = x - r * (l / radius);
+      double b = x + r * (l / radius);
+      double c = y - r * (w / radius);
+      double d = y + r * (w / radius);
+      double[] speeds = {
+        Math.hypot(b, d),
+        Math.hypot(b, c),
+        Math.hypot(a, d),
+        Math.hypot(a, c),
+      };
+      double[] angles = {
+        Math.atan2(b, d) / Math.PI / 2,
+        Math.atan2(b, c) / Math.PI / 2,
+        Math.atan2(a, d) / Math.PI / 2,
+        Math.atan2(a, c) / Math.PI / 2,
+      };
+      double denominator = Math.max(
+        Math.max(Math.max(speeds[0], speeds[1]), Math.max(speeds[2], speeds[3])),
+        1
+      );
+
+      for (int i = 0; i < 4; i++) {
+        Assertions.assertEquals(
+          speeds[i] / denominator,
+          kinematics.getSpeed(i),
+          1e-12
+        );
+        Assertions.assertEquals(angles[i], kinematics.getAngle(i), 1e-12);
+      }
+    }
+  }
+
+  @Test
+  void anyModuleLayoutWorks() {
+    // three modules in a triangle, off center
+    SwerveKinematics kinematics = new SwerveKinematics(
+      new double[] { 0, 0.4, -0.4 },
+      new double[] { 0.5, -0.2, -0.2 }
+    );
+    Assertions.assertEquals(3, kinematics.size());
+
+    // spinning in place, every wheel is square to its line to the center and the furthest goes the full speed
+    kinematics.calculate(0, 0, 0.5, 1);
+    Assertions.assertEquals(0.5, kinematics.getSpeed(0), 1e-12);
+    Assertions.assertEquals(0.25, kinematics.getAngle(0), 1e-12);
+    Assertions.assertEquals(
+      0.5 * Math.hypot(0.4, 0.2) / 0.5,
+      kinematics.getSpeed(1),
+      1e-12
+    );
+
+    // too fast for the wheels, scaled down together
+    kinematics.calculate(1, 0, 1, 1);
+    Assertions.assertEquals(1, kinematics.getSpeed(0), 1e-12);
+    Assertions.assertTrue(kinematics.getSpeed(1) < 1);
+
+    // stopping keeps the angles instead of snapping them all forward
+    kinematics.calculate(0, 0, 0, 1);
+    Assertions.assertEquals(0, kinematics.getSpeed(0));
+    Assertions.assertEquals(0.25, kinematics.getAngle(0), 1e-12);
+  }
+
+  @Test
+  void discretizedMotionEndsOnTheLine() {
+    SwerveKinematics kinematics = new SwerveKinematics(
+      new double[] { -0.25, 0.25, -0.25, 0.25 },
+      new double[] { 0.25, 0.25, -0.25, -0.25 }
+    );
+    double metersPerSecond = 4.5;
+    double dt = 0.02;
+    kinematics.calculate(0, 1, 1, 10, metersPerSecond, dt);
+
+    // the translation is the average of the modules, the rotation cancels out on a square
+    double translationX = 0;
+    double translationY = 0;
+    for (int i = 0; i < 4; i++) {
+      double angle = kinematics.getAngle(i) * 2 * Math.PI;
+      translationX += kinematics.getSpeed(i) * Math.sin(angle) / 4;
+      translationY += kinematics.getSpeed(i) * Math.cos(angle) / 4;
+    }
+
+    // hold it for the loop while turning clockwise, it should end straight ahead
+    double omega = metersPerSecond / kinematics.getMaxRadius();
+    double x = 0;
+    double y = 0;
+    int steps = 10000;
+    for (int step = 0; step < steps; step++) {
+      double heading = omega * dt * (step + 0.5) / steps;
+      x +=
+        (translationX * Math.cos(heading) + translationY * Math.sin(heading)) *
+        metersPerSecond *
+        dt /
+        steps;
+      y +=
+        (translationY * Math.cos(heading) - translationX * Math.sin(heading)) *
+        metersPerSecond *
+        dt /
+        steps;
+    }
+
+    Assertions.assertEquals(0, x, 1e-6);
+    Assertions.assertEquals(metersPerSecond * dt, y, 1e-6);
+  }
+
+  @Test
+  void angleVelocityFollowsTheTurningTranslation() {
+    SwerveKinematics kinematics = SwerveKinematics.fromConstants();
+    double metersPerSecond = 4.5;
+    double x = 0.3;
+    double y = 0.6;
+    double r = 0.4;
+    // no loop to integrate over and nothing desaturated, just the steering rates
+    kinematics.calculate(x, y, r, 10, metersPerSecond, 0);
+    double[] velocities = kinematics.angleVelocities().clone();
+    double[] before = kinematics.angles().clone();
+
+    // a moment later the robot has turned clockwise, so the same field translation is turned the other way
+    double omega = r * metersPerSecond / kinematics.getMaxRadius();
+    double step = 1e-6;
+    double cos = Math.cos(omega * step);
+    double sin = Math.sin(omega * step);
+    kinematics.calculate(x * cos - y * sin, y * cos + x * sin, r, 10);
+
+    for (int i = 0; i < 4; i++) {
+      Assertions.assertEquals(
+        velocities[i],
+        (kinematics.getAngle(i) - before[i]) / step,
+        1e-4
+      );
+      Assertions.assertEquals(0, kinematics.getAngleVelocity(i));
+    }
+  }
+}
@@ -0,0 +1,56 @@
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
+import edu.wpi.first.math.kinematics.SwerveModulePosition;
+import frc.robot.subsystems.SwerveModule;
+import frc.robot.subsystems.SwerveSubsystem;
+import frc.robot.util.lidar.PoseHistory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ * @apiNote the wheel odometry the lidar code is built on, with the module angles the way the encoders report them
+ */
+public class SwerveOdometryTest {
+
+  static final long kStep = 20_000_000L;
+
+  SwerveModulePosition[] positions(double meters, double turns) {
+    SwerveModulePosition[] positions = new SwerveModulePosition[4];
+    for (int i = 0; i < 4; i++) {
+      positions[i] = SwerveModule.toModulePosition(meters, turns);
+    }
+
+    return positions;
+  }
+
+  @Test
+  void strafingRightIsNegativeY() {
+    // every module a quarter turn clockwise, pointed right
+    SwerveDriveOdometry odometry = new SwerveDriveOdometry(
+      SwerveSubsystem.createOdometryKinematics(),
+      new Rotation2d(),
+      positions(0, 0.25)
+    );
+    PoseHistory history = new PoseHistory(64);
+    for (int i = 1; i <= 50; i++) {
+      Pose2d pose = odometry.update(
+        new Rotation2d(),
+        positions(i * 0.02, 0.25)
+      );
+      history.record(
+        i * kStep,
+        pose.getX(),
+        pose.getY(),
+        pose.getRotation().getRadians()
+      );
+    }
+
+    double[] pose = new double[3];
+    Assertions.assertTrue(history.getPose(50 * kStep, pose));
+    Assertions.assertEquals(0, pose[0], 1e-6);
+    Assertions.assertEquals(-1, pose[1], 1e-6);
+    Assertions.assertEquals(0, pose[2], 1e-6);
+  }
+}
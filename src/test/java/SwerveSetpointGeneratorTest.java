@@ -0,0 +1,123 @@
+import frc.robot.util.swerve.SwerveKinematics;
+import frc.robot.util.swerve.SwerveSetpointGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ * @apiNote a 0.5m square robot, speeds change at most 2 a second (0.04 a loop) and modules steer 1.5 turns a second
+ * (0.03 turns a loop)
+ */
+public class SwerveSetpointGeneratorTest {
+
+  static final double kDt = 0.02;
+  static final double kAcceleration = 2;
+
+  SwerveKinematics kinematics = new SwerveKinematics(
+    new double[] { -0.25, 0.25, -0.25, 0.25 },
+    new double[] { 0.25, 0.25, -0.25, -0.25 }
+  );
+  SwerveSetpointGenerator generator = new SwerveSetpointGenerator(
+    kinematics,
+    1.5,
+    0.05,
+    10,
+    false
+  );
+  double maxSteer = 0.03;
+  double[] lastAngles = new double[4];
+
+  void step(double x, double y, double r) {
+    generator.generate(x, y, r, kAcceleration, 4.5, kDt);
+    for (int i = 0; i < 4; i++) {
+      // steered at most the limit, counting driving backwards
+      double distance = generator.getAngle(i) - lastAngles[i];
+      distance -= Math.rint(distance * 2) / 2;
+      Assertions.assertTrue(Math.abs(distance) <= maxSteer + 1e-9);
+      lastAngles[i] = generator.getAngle(i);
+    }
+  }
+
+  @Test
+  void startingTurnsTheModulesBeforeDriving() {
+    // the modules start pointed forward, driving right needs a quarter turn
+    for (int i = 0; i < 8; i++) {
+      step(1, 0, 0);
+      Assertions.assertEquals(0, generator.getX());
+      Assertions.assertEquals(0, generator.getSpeed(0));
+    }
+
+    step(1, 0, 0);
+    Assertions.assertEquals(kAcceleration * kDt, generator.getX(), 1e-9);
+    Assertions.assertEquals(0.25, generator.getAngle(0), 1e-9);
+  }
+
+  @Test
+  void reversingSlowsDownThroughZero() {
+    for (int i = 0; i < 40; i++) {
+      step(0, 1, 0);
+    }
+
+    Assertions.assertEquals(1, generator.getY(), 1e-9);
+
+    // the modules never steer, they drive backwards once the robot is through zero
+    double lastY = generator.getY();
+    for (int i = 0; i < 50; i++) {
+      step(0, -1, 0);
+      Assertions.assertEquals(
+        -kAcceleration * kDt,
+        generator.getY() - lastY,
+        1e-9
+      );
+      lastY = generator.getY();
+    }
+
+    Assertions.assertEquals(-1, generator.getY(), 1e-9);
+    Assertions.assertEquals(0.5, Math.abs(generator.getAngle(0)), 1e-9);
+  }
+
+  @Test
+  void steeringLimitHoldsBackTheChassis() {
+    // 0.25 turns a second, slow enough that a sharp turn is held back by it and not the acceleration
+    generator = new SwerveSetpointGenerator(kinematics, 0.25, 0.05, 10, false);
+    maxSteer = 0.005;
+    for (int i = 0; i < 50; i++) {
+      step(0, 1, 0);
+    }
+
+    // veering right at full speed
+    step(1, 1, 0);
+    Assertions.assertTrue(generator.getX() > 0);
+    Assertions.assertTrue(generator.getX() < kAcceleration * kDt);
+    for (int i = 0; i < 100; i++) {
+      step(1, 1, 0);
+    }
+
+    Assertions.assertEquals(1, generator.getX(), 1e-9);
+    Assertions.assertEquals(1, generator.getY(), 1e-9);
+  }
+
+  @Test
+  void discretizedSetpointComesBackToAStop() {
+    generator = new SwerveSetpointGenerator(kinematics, 1.5, 0.05, 10, true);
+    for (int x = -1; x <= 1; x++) {
+      for (int y = -1; y <= 1; y++) {
+        for (int r = -1; r <= 1; r += 2) {
+          generator.reset();
+          for (int i = 0; i < 200; i++) {
+            step(x, y, r);
+          }
+
+          // the stick let go, translating and turning at once used to get stuck here
+          for (int i = 0; i < 200; i++) {
+            step(0, 0, 0);
+          }
+
+          Assertions.assertEquals(0, generator.getX(), 1e-9);
+          Assertions.assertEquals(0, generator.getY(), 1e-9);
+          Assertions.assertEquals(0, generator.getRotation(), 1e-9);
+        }
+      }
+    }
+  }
+}
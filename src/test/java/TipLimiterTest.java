@@ -0,0 +1,67 @@
+import frc.robot.Constants.ArmConstants;
+import frc.robot.util.swerve.TipLimiter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author godbrigero
+ * @apiNote wheels 0.25m out, center of gravity 0.25m up stowed (tips at 1 g) and 0.5m up raised (tips at 1/2 g)
+ */
+public class TipLimiterTest {
+
+  TipLimiter limiter = new TipLimiter(
+    0.25,
+    0.25,
+    0.5,
+    6,
+    1,
+    0.5,
+    2,
+    0.1,
+    0.02
+  );
+
+  double settle(double pitch, double roll, double armPosition) {
+    double limit = 0;
+    for (int i = 0; i < 100; i++) {
+      limit = limiter.update(pitch, roll, armPosition);
+    }
+
+    return limit;
+  }
+
+  @Test
+  void raisingTheArmLowersTheLimit() {
+    double stowed = settle(0, 0, ArmConstants.kArmFlatPosition);
+    double raised = settle(0, 0, ArmConstants.kArmScoringPosition);
+
+    Assertions.assertEquals(9.81 * 0.5, stowed, 1e-9);
+    Assertions.assertEquals(9.81 * 0.5 * 0.5, raised, 1e-9);
+    Assertions.assertEquals(0.5, limiter.getCenterOfGravityHeight(0.25), 1e-9);
+    Assertions.assertTrue(
+      limiter.getCenterOfGravityHeight(0.1) > 0.25 &&
+      limiter.getCenterOfGravityHeight(0.1) < 0.5
+    );
+  }
+
+  @Test
+  void leaningLowersTheLimitDownToTheFloor() {
+    double flat = settle(1, -1, ArmConstants.kArmFlatPosition);
+    double leaning = settle(10, 5, ArmConstants.kArmFlatPosition);
+    double tipping = settle(40, 20, ArmConstants.kArmFlatPosition);
+
+    // inside the deadband counts as flat
+    Assertions.assertEquals(9.81 * 0.5, flat, 1e-9);
+    Assertions.assertTrue(leaning < flat && leaning > 1);
+    Assertions.assertEquals(1, tipping, 1e-9);
+  }
+
+  @Test
+  void oneJoltIsFilteredOut() {
+    settle(0, 0, ArmConstants.kArmFlatPosition);
+    double jolt = limiter.update(30, 0, ArmConstants.kArmFlatPosition);
+
+    Assertions.assertTrue(jolt > 9.81 * 0.5 * 0.7);
+    Assertions.assertTrue(limiter.getTiltRadians() < Math.toRadians(5));
+  }
+}
@@ -1,5 +1,7 @@
 package util;
 
+import frc.robot.extern_libs.lidar.LidarScan;
+import frc.robot.util.lidar.FieldWallModel;
 import java.util.Arrays;
 import java.util.Random;
 
@@ -16,6 +18,15 @@ public class TestUtils {
     return scans;
   }
 
+  public static double[][] generateFakeScans(int amount, int amtScansPerRev) {
+    double[][] scans = new double[amount][];
+    for (int i = 0; i < amount; i++) {
+      scans[i] = getLidarScanFake(amtScansPerRev);
+    }
+
+    return scans;
+  }
+
   public static double[] getLidarScanFake(int amtScansPerRev) {
     double[] scans = new double[amtScansPerRev];
     scans[0] = getScanDistance(15);
@@ -61,4 +72,33 @@ public class TestUtils {
     int randomNumber = (int) (Math.random() * (max - min)) + min;
     return randomNumber;
   }
+
+  /**
+   * @apiNote what a lidar at (x, y, heading) would see of the walls, with gaussian noise on every distance. No pose is set
+   */
+  public static LidarScan generateWallScan(
+    FieldWallModel walls,
+    int points,
+    double x,
+    double y,
+    double heading,
+    double noiseMeters
+  ) {
+    LidarScan scan = new LidarScan(points);
+    scan.clear(System.nanoTime());
+    for (int i = 0; i < points; i++) {
+      double angle = 2 * Math.PI * i / points;
+      // lidar angles go clockwise
+      double distance = walls.castRay(x, y, heading - angle, 12);
+      if (distance >= 12) {
+        distance = 0;
+      } else {
+        distance += randomInstance.nextGaussian() * noiseMeters;
+      }
+
+      scan.add((float) angle, (float) distance, (short) 15);
+    }
+
+    return scan;
+  }
 }